@@ -0,0 +1,149 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+package org.owasp.stinger.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.owasp.stinger.BreakChainException;
+import org.owasp.stinger.Category;
+import org.owasp.stinger.Severity;
+import org.owasp.stinger.actions.Encode;
+import org.owasp.stinger.actions.Log;
+import org.owasp.stinger.actions.Scrub;
+import org.owasp.stinger.http.MutableHttpRequest;
+import org.owasp.stinger.rules.Rule;
+import org.owasp.stinger.util.AsyncLogWriter;
+import org.owasp.stinger.violation.Violation;
+
+/**
+ * The cost of handling one violation with the Scrub, Encode and Log
+ * actions, including the MutableHttpRequest the action works on. Log only
+ * measures the request thread: records that do not fit into the buffer
+ * are dropped.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ActionBenchmark {
+	
+	private final static String REGEX = "^[a-zA-Z0-9\\s.\\-]+$";
+	
+	/** clean needs no change, dirty does **/
+	@Param({ "clean", "dirty" })
+	public String value;
+	
+	private Scrub scrub = null;
+	
+	private Encode encode = null;
+	
+	private Log log = null;
+	
+	private Violation violation = null;
+	
+	private HttpServletRequest request = null;
+	
+	private HttpServletResponse response = null;
+	
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		File file = File.createTempFile("stinger-bench-", ".log");
+		String comment = (value.equals("clean") ? "A perfectly harmless comment" : "<img src=x onerror=alert(1)> harmless");
+		Rule rule = new Rule();
+		
+		file.deleteOnExit();
+		
+		rule.setName("comment");
+		rule.setPattern(REGEX);
+		
+		scrub = new Scrub();
+		scrub.init();
+		scrub.init(rule);
+		
+		encode = new Encode();
+		encode.init();
+		
+		log = new Log();
+		log.setParameter("log", file.getPath());
+		log.setParameter("level", "INFO");
+		log.setParameter("message", "%name from %ip is malformed: %encoded_value");
+		log.init();
+		
+		violation = new Violation(new Category(Category.MALFORMED, Severity.CONTINUE), "comment", comment, REGEX, "/app/s0/page.jsp");
+		request = MockServlet.request("POST", "/app/s0/page.jsp", MockServlet.parameters(new String[] { "comment", comment, "id", "42" }), null);
+		response = MockServlet.response();
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		AsyncLogWriter.closeAll();
+	}
+	
+	@Benchmark
+	public MutableHttpRequest scrub() throws BreakChainException {
+		MutableHttpRequest mRequest = new MutableHttpRequest(request);
+		
+		scrub.doAction(violation, mRequest, response);
+		
+		return mRequest;
+	}
+	
+	@Benchmark
+	public MutableHttpRequest encode() throws BreakChainException {
+		MutableHttpRequest mRequest = new MutableHttpRequest(request);
+		
+		encode.doAction(violation, mRequest, response);
+		
+		return mRequest;
+	}
+	
+	@Benchmark
+	public MutableHttpRequest log() throws BreakChainException {
+		MutableHttpRequest mRequest = new MutableHttpRequest(request);
+		
+		log.doAction(violation, mRequest, response);
+		
+		return mRequest;
+	}
+}
@@ -0,0 +1,167 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+package org.owasp.stinger.bench;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Minimal request and response objects for the benchmarks, built with
+ * dynamic proxies so they do not depend on a servlet container. Methods
+ * that are not modelled return null, 0 or false.
+ */
+public class MockServlet {
+	
+	private MockServlet() {
+	
+	}
+	
+	/**
+	 * Parameter map from name, value, name, value, ...
+	 */
+	public static Map parameters(String[] namesAndValues) {
+		LinkedHashMap result = new LinkedHashMap();
+		
+		for(int i=0; i<namesAndValues.length; i+=2) {
+			result.put(namesAndValues[i], new String[] { namesAndValues[i + 1] });
+		}
+		
+		return Collections.unmodifiableMap(result);
+	}
+	
+	public static HttpServletRequest request(String method, String uri, Map parameters, Cookie[] cookies) {
+		return request(method, uri, null, parameters, cookies, "10.0.0.1");
+	}
+	
+	public static HttpServletRequest request(final String method, final String uri, final String query, final Map parameters, final Cookie[] cookies, final String remoteAddr) {
+		final HashMap attributes = new HashMap();
+		
+		return (HttpServletRequest)Proxy.newProxyInstance(MockServlet.class.getClassLoader(), new Class[] { HttpServletRequest.class }, new InvocationHandler() {
+			public Object invoke(Object proxy, Method m, Object[] args) {
+				String name = m.getName();
+				
+				if(name.equals("getMethod")) {
+					return method;
+				} else if(name.equals("getRequestURI")) {
+					return uri;
+				} else if(name.equals("getRequestURL")) {
+					return new StringBuffer("http://localhost").append(uri);
+				} else if(name.equals("getParameterMap")) {
+					return parameters;
+				} else if(name.equals("getParameterNames")) {
+					return Collections.enumeration(parameters.keySet());
+				} else if(name.equals("getParameterValues")) {
+					return parameters.get(args[0]);
+				} else if(name.equals("getParameter")) {
+					String[] values = (String[])parameters.get(args[0]);
+					return (values != null ? values[0] : null);
+				} else if(name.equals("getCookies")) {
+					return cookies;
+				} else if(name.equals("getContentType")) {
+					return (method.equals("POST") ? "application/x-www-form-urlencoded" : null);
+				} else if(name.equals("getHeaderNames") || name.equals("getHeaders")) {
+					return Collections.enumeration(Collections.EMPTY_LIST);
+				} else if(name.equals("getQueryString")) {
+					return query;
+				} else if(name.equals("getRemoteAddr")) {
+					return remoteAddr;
+				} else if(name.equals("getContentLength")) {
+					return new Integer(-1);
+				} else if(name.equals("getAttribute")) {
+					return attributes.get(args[0]);
+				} else if(name.equals("setAttribute")) {
+					attributes.put(args[0], args[1]);
+					return null;
+				} else if(name.equals("hashCode")) {
+					return new Integer(System.identityHashCode(proxy));
+				} else if(name.equals("equals")) {
+					return Boolean.valueOf(proxy == args[0]);
+				} else if(name.equals("toString")) {
+					return "MockServlet request " + uri;
+				}
+				
+				return defaultValue(m.getReturnType());
+			}
+		});
+	}
+	
+	public static HttpServletResponse response() {
+		return response(null);
+	}
+	
+	/**
+	 * A response that swallows whatever is written to it and counts the
+	 * redirects in redirects, if given
+	 */
+	public static HttpServletResponse response(final LongAdder redirects) {
+		final PrintWriter writer = new PrintWriter(new StringWriter() {
+			public void write(String s, int off, int len) {
+			
+			}
+			
+			public void write(char[] c, int off, int len) {
+			
+			}
+			
+			public void write(int c) {
+			
+			}
+		});
+		
+		return (HttpServletResponse)Proxy.newProxyInstance(MockServlet.class.getClassLoader(), new Class[] { HttpServletResponse.class }, new InvocationHandler() {
+			public Object invoke(Object proxy, Method m, Object[] args) {
+				if(m.getName().equals("getWriter")) {
+					return writer;
+				} else if(m.getName().equals("sendRedirect") && redirects != null) {
+					redirects.increment();
+				}
+				
+				return defaultValue(m.getReturnType());
+			}
+		});
+	}
+	
+	private static Object defaultValue(Class type) {
+		if(type == Boolean.TYPE) {
+			return Boolean.FALSE;
+		} else if(type == Integer.TYPE) {
+			return new Integer(0);
+		} else if(type == Long.TYPE) {
+			return new Long(0);
+		}
+		
+		return null;
+	}
+}
@@ -0,0 +1,81 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+package org.owasp.stinger.bench;
+
+import java.util.Map;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * One request of a replay corpus.
+ */
+public class RecordedRequest {
+	
+	private final String method;
+	
+	private final String uri;
+	
+	private final String query;
+	
+	/** String[] values by name **/
+	private final Map parameters;
+	
+	private final Cookie[] cookies;
+	
+	private final String remoteAddr;
+	
+	public RecordedRequest(String method, String uri, String query, Map parameters, Cookie[] cookies, String remoteAddr) {
+		this.method = method;
+		this.uri = uri;
+		this.query = query;
+		this.parameters = parameters;
+		this.cookies = cookies;
+		this.remoteAddr = remoteAddr;
+	}
+	
+	public String getMethod() {
+		return method;
+	}
+	
+	public String getUri() {
+		return uri;
+	}
+	
+	/**
+	 * A fresh mock request. Cookies are copied because actions may change them.
+	 */
+	public HttpServletRequest toRequest() {
+		Cookie[] copy = null;
+		
+		if(cookies != null) {
+			copy = new Cookie[cookies.length];
+			
+			for(int i=0; i<cookies.length; i++) {
+				copy[i] = (Cookie)cookies[i].clone();
+			}
+		}
+		
+		return MockServlet.request(method, uri, query, parameters, copy, remoteAddr);
+	}
+}
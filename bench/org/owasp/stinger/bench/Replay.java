@@ -0,0 +1,306 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+package org.owasp.stinger.bench;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponse;
+
+import org.owasp.stinger.StingerFilter;
+import org.owasp.stinger.metrics.Metrics;
+
+/**
+ * Replays a recorded corpus (see ReplayCorpus) through StingerFilter.doFilter
+ * with mock requests, responses and filter chain, and reports latency
+ * percentiles, throughput, violations and GC activity.
+ *
+ * Usage: Replay -config stinger.xml -corpus requests.log [-threads n] [-repeat n] [-warmup n] [-error-page page]
+ *
+ * -threads - worker threads, default the number of processors
+ * -repeat - passes over the corpus that are measured, default 1
+ * -warmup - passes over the corpus before measuring, default 1
+ */
+public class Replay {
+	
+	private final StingerFilter filter;
+	
+	private final RecordedRequest[] corpus;
+	
+	private final int threads;
+	
+	private final LongAdder passed = new LongAdder();
+	
+	private final LongAdder redirected = new LongAdder();
+	
+	private final FilterChain chain = new FilterChain() {
+		public void doFilter(ServletRequest request, ServletResponse response) {
+			passed.increment();
+		}
+	};
+	
+	private final HttpServletResponse response = MockServlet.response(redirected);
+	
+	public Replay(StingerFilter filter, RecordedRequest[] corpus, int threads) {
+		this.filter = filter;
+		this.corpus = corpus;
+		this.threads = threads;
+	}
+	
+	public static void main(String[] args) throws Exception {
+		Map options = parseOptions(args);
+		String config = (String)options.get("-config");
+		String corpusFile = (String)options.get("-corpus");
+		int threads = getInt(options, "-threads", Runtime.getRuntime().availableProcessors());
+		int repeat = getInt(options, "-repeat", 1);
+		int warmup = getInt(options, "-warmup", 1);
+		RecordedRequest[] corpus = null;
+		StingerFilter filter = new StingerFilter();
+		Replay replay = null;
+		
+		if(config == null || corpusFile == null) {
+			System.out.println("Usage: Replay -config stinger.xml -corpus requests.log [-threads n] [-repeat n] [-warmup n] [-error-page page]");
+			System.exit(1);
+		}
+		
+		corpus = ReplayCorpus.load(corpusFile);
+		
+		if(corpus.length == 0) {
+			System.out.println("[Stinger-Replay] " + corpusFile + " holds no requests");
+			System.exit(1);
+		}
+		
+		filter.init(filterConfig(config, (String)options.get("-error-page")));
+		replay = new Replay(filter, corpus, threads);
+		
+		try {
+			if(warmup > 0) {
+				replay.run((long)corpus.length * warmup);
+			}
+			
+			System.out.println(replay.measure((long)corpus.length * repeat));
+		} finally {
+			filter.destroy();
+		}
+	}
+	
+	private static Map parseOptions(String[] args) {
+		HashMap options = new HashMap();
+		
+		for(int i=0; i + 1<args.length; i+=2) {
+			options.put(args[i], args[i + 1]);
+		}
+		
+		return options;
+	}
+	
+	private static int getInt(Map options, String name, int defaultValue) {
+		String value = (String)options.get(name);
+		
+		return (value != null ? Integer.parseInt(value) : defaultValue);
+	}
+	
+	private static FilterConfig filterConfig(String config, String errorPage) {
+		final HashMap parameters = new HashMap();
+		
+		parameters.put("config", config);
+		parameters.put("error-page", (errorPage != null ? errorPage : "/error.html"));
+		parameters.put("debug", "false");
+		parameters.put("metrics", "true");
+		
+		return (FilterConfig)Proxy.newProxyInstance(Replay.class.getClassLoader(), new Class[] { FilterConfig.class }, new InvocationHandler() {
+			public Object invoke(Object proxy, Method m, Object[] args) {
+				if(m.getName().equals("getInitParameter")) {
+					return parameters.get(args[0]);
+				} else if(m.getName().equals("getInitParameterNames")) {
+					return Collections.enumeration(parameters.keySet());
+				} else if(m.getName().equals("getFilterName")) {
+					return "Stinger-Replay";
+				}
+				
+				return null;
+			}
+		});
+	}
+	
+	/**
+	 * Replay total requests across the threads, returns the latencies of
+	 * each thread and the bytes each thread allocated (-1 if unknown)
+	 */
+	private Worker[] run(long total) throws InterruptedException {
+		AtomicLong next = new AtomicLong();
+		Worker[] workers = new Worker[threads];
+		
+		for(int i=0; i<threads; i++) {
+			workers[i] = new Worker(next, total, (int)(total / threads) + 1);
+			workers[i].start();
+		}
+		
+		for(int i=0; i<threads; i++) {
+			workers[i].join();
+		}
+		
+		return workers;
+	}
+	
+	private String measure(long total) throws InterruptedException {
+		StringBuffer buf = new StringBuffer();
+		List collectors = ManagementFactory.getGarbageCollectorMXBeans();
+		long[] gcCounts = new long[collectors.size()];
+		long[] gcTimes = new long[collectors.size()];
+		long[] latencies = null;
+		long allocated = 0;
+		long start = 0;
+		long elapsed = 0;
+		int count = 0;
+		Worker[] workers = null;
+		
+		Metrics.reset();
+		passed.reset();
+		redirected.reset();
+		
+		for(int i=0; i<gcCounts.length; i++) {
+			gcCounts[i] = ((GarbageCollectorMXBean)collectors.get(i)).getCollectionCount();
+			gcTimes[i] = ((GarbageCollectorMXBean)collectors.get(i)).getCollectionTime();
+		}
+		
+		start = System.nanoTime();
+		workers = run(total);
+		elapsed = System.nanoTime() - start;
+		
+		for(int i=0; i<workers.length; i++) {
+			count += workers[i].count;
+			allocated = (allocated < 0 || workers[i].allocated < 0 ? -1 : allocated + workers[i].allocated);
+		}
+		
+		latencies = new long[count];
+		count = 0;
+		
+		for(int i=0; i<workers.length; i++) {
+			System.arraycopy(workers[i].latencies, 0, latencies, count, workers[i].count);
+			count += workers[i].count;
+		}
+		
+		Arrays.sort(latencies);
+		
+		buf.append("requests: ").append(count).append(" (corpus ").append(corpus.length).append(", threads ").append(threads).append(")\n");
+		buf.append("elapsed: ").append(elapsed / 1000000).append("ms, throughput: ").append((long)(count / (elapsed / 1e9))).append(" requests/s\n");
+		buf.append("latency: p50=").append(micros(percentile(latencies, 0.5))).append("us p99=").append(micros(percentile(latencies, 0.99)));
+		buf.append("us p999=").append(micros(percentile(latencies, 0.999))).append("us max=").append(micros(latencies[count - 1])).append("us\n");
+		buf.append("passed to chain: ").append(passed.sum()).append(", redirected: ").append(redirected.sum()).append("\n");
+		buf.append("violations: ").append(Metrics.getOverall().getViolations()).append("\n");
+		
+		for(int i=0; i<gcCounts.length; i++) {
+			GarbageCollectorMXBean gc = (GarbageCollectorMXBean)collectors.get(i);
+			
+			buf.append("gc ").append(gc.getName()).append(": ").append(gc.getCollectionCount() - gcCounts[i]).append(" collections, ").append(gc.getCollectionTime() - gcTimes[i]).append("ms\n");
+		}
+		
+		if(allocated >= 0) {
+			buf.append("allocated: ").append(allocated / count).append(" bytes/request, ").append((long)(allocated / (elapsed / 1e9)) / (1024 * 1024)).append(" MB/s\n");
+		}
+		
+		return buf.toString();
+	}
+	
+	private static long percentile(long[] sorted, double fraction) {
+		int index = (int)Math.ceil(fraction * sorted.length) - 1;
+		
+		return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+	}
+	
+	private static String micros(long nanos) {
+		return String.valueOf(nanos / 1000.0);
+	}
+	
+	private static long allocatedBytes() {
+		Object bean = ManagementFactory.getThreadMXBean();
+		
+		if(bean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean)bean;
+			
+			if(threadBean.isThreadAllocatedMemorySupported() && threadBean.isThreadAllocatedMemoryEnabled()) {
+				return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		
+		return -1;
+	}
+	
+	private class Worker extends Thread {
+		
+		private final AtomicLong next;
+		
+		private final long total;
+		
+		private long[] latencies;
+		
+		private int count = 0;
+		
+		private long allocated = -1;
+		
+		Worker(AtomicLong next, long total, int expected) {
+			super("Stinger-Replay");
+			this.next = next;
+			this.total = total;
+			this.latencies = new long[expected];
+		}
+		
+		public void run() {
+			long before = allocatedBytes();
+			long i = 0;
+			
+			while((i = next.getAndIncrement()) < total) {
+				ServletRequest request = corpus[(int)(i % corpus.length)].toRequest();
+				long start = System.nanoTime();
+				
+				filter.doFilter(request, response, chain);
+				
+				if(count == latencies.length) {
+					latencies = Arrays.copyOf(latencies, count * 2);
+				}
+				
+				latencies[count++] = System.nanoTime() - start;
+			}
+			
+			/** Includes the mock requests, which are small next to the filter **/
+			if(before >= 0) {
+				allocated = allocatedBytes() - before;
+			}
+		}
+	}
+}
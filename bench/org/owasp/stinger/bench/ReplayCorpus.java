@@ -0,0 +1,374 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+package org.owasp.stinger.bench;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.servlet.http.Cookie;
+
+/**
+ * Loads a replay corpus. Each line is either a JSON object
+ *
+ * {"method":"GET","uri":"/app/x.jsp","params":{"a":"1","b":["2","3"]},"cookies":{"JSESSIONID":"..."},"ip":"10.1.2.3"}
+ *
+ * where everything but uri is optional, or an Apache/Tomcat access log
+ * line in common or combined format, whose parameters are taken from the
+ * query string. Lines that are neither are skipped.
+ */
+public class ReplayCorpus {
+	
+	/** host ident user [time] "METHOD target PROTOCOL" **/
+	private final static Pattern ACCESS_LOG = Pattern.compile("^(\\S+) \\S+ \\S+ \\[[^\\]]*\\] \"(\\S+) (\\S+)[^\"]*\".*");
+	
+	private ReplayCorpus() {
+	
+	}
+	
+	/**
+	 * Returns the RecordedRequests of the file and prints how many lines
+	 * were skipped
+	 */
+	public static RecordedRequest[] load(String file) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		LinkedList requests = new LinkedList();
+		String line = null;
+		int skipped = 0;
+		
+		try {
+			while((line = reader.readLine()) != null) {
+				RecordedRequest request = null;
+				
+				line = line.trim();
+				
+				if(line.length() == 0) {
+					continue;
+				}
+				
+				try {
+					request = (line.charAt(0) == '{' ? parseJson(line) : parseAccessLog(line));
+				} catch (IllegalArgumentException iae) {
+					request = null;
+				}
+				
+				if(request != null) {
+					requests.add(request);
+				} else {
+					skipped++;
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		
+		if(skipped > 0) {
+			System.out.println("[Stinger-Replay] skipped " + skipped + " unreadable lines of " + file);
+		}
+		
+		return (RecordedRequest[])requests.toArray(new RecordedRequest[requests.size()]);
+	}
+	
+	static RecordedRequest parseAccessLog(String line) {
+		Matcher m = ACCESS_LOG.matcher(line);
+		String target = null;
+		String query = null;
+		int mark = 0;
+		
+		if(!m.matches()) {
+			return null;
+		}
+		
+		target = m.group(3);
+		mark = target.indexOf('?');
+		
+		if(mark >= 0) {
+			query = target.substring(mark + 1);
+			target = target.substring(0, mark);
+		}
+		
+		return new RecordedRequest(m.group(2), target, query, parseQuery(query), null, m.group(1));
+	}
+	
+	/**
+	 * String[] values by name from a query string
+	 */
+	static Map parseQuery(String query) {
+		LinkedHashMap lists = new LinkedHashMap();
+		LinkedHashMap result = new LinkedHashMap();
+		String[] pairs = (query != null && query.length() > 0 ? query.split("&") : new String[0]);
+		Iterator itr = null;
+		
+		for(int i=0; i<pairs.length; i++) {
+			int equals = pairs[i].indexOf('=');
+			String name = decode(equals >= 0 ? pairs[i].substring(0, equals) : pairs[i]);
+			String value = (equals >= 0 ? decode(pairs[i].substring(equals + 1)) : "");
+			List values = (List)lists.get(name);
+			
+			if(values == null) {
+				values = new LinkedList();
+				lists.put(name, values);
+			}
+			
+			values.add(value);
+		}
+		
+		itr = lists.entrySet().iterator();
+		
+		while(itr.hasNext()) {
+			Map.Entry entry = (Map.Entry)itr.next();
+			List values = (List)entry.getValue();
+			
+			result.put(entry.getKey(), (String[])values.toArray(new String[values.size()]));
+		}
+		
+		return Collections.unmodifiableMap(result);
+	}
+	
+	/**
+	 * URL decode, keeping the raw text if it is not valid
+	 */
+	private static String decode(String s) {
+		try {
+			return URLDecoder.decode(s, "UTF-8");
+		} catch (IllegalArgumentException iae) {
+			return s;
+		} catch (UnsupportedEncodingException uee) {
+			return s;
+		}
+	}
+	
+	static RecordedRequest parseJson(String line) {
+		Map object = (Map)new JsonReader(line).read();
+		String method = (String)object.get("method");
+		String uri = (String)object.get("uri");
+		String ip = (String)object.get("ip");
+		Map params = (Map)object.get("params");
+		Map cookieMap = (Map)object.get("cookies");
+		LinkedHashMap parameters = new LinkedHashMap();
+		Cookie[] cookies = null;
+		Iterator itr = null;
+		
+		if(uri == null) {
+			return null;
+		}
+		
+		if(params != null) {
+			itr = params.entrySet().iterator();
+			
+			while(itr.hasNext()) {
+				Map.Entry entry = (Map.Entry)itr.next();
+				Object value = entry.getValue();
+				
+				if(value instanceof List) {
+					List values = (List)value;
+					String[] array = new String[values.size()];
+					
+					for(int i=0; i<array.length; i++) {
+						array[i] = String.valueOf(values.get(i));
+					}
+					
+					parameters.put(entry.getKey(), array);
+				} else {
+					parameters.put(entry.getKey(), new String[] { String.valueOf(value) });
+				}
+			}
+		}
+		
+		if(cookieMap != null) {
+			int i = 0;
+			
+			cookies = new Cookie[cookieMap.size()];
+			itr = cookieMap.entrySet().iterator();
+			
+			while(itr.hasNext()) {
+				Map.Entry entry = (Map.Entry)itr.next();
+				
+				cookies[i++] = new Cookie((String)entry.getKey(), String.valueOf(entry.getValue()));
+			}
+		}
+		
+		return new RecordedRequest(method != null ? method : "GET", uri, null, Collections.unmodifiableMap(parameters), cookies, ip != null ? ip : "127.0.0.1");
+	}
+	
+	/**
+	 * Just enough of a JSON reader for corpus lines: objects become
+	 * LinkedHashMaps, arrays LinkedLists, numbers and literals their text.
+	 * Malformed input throws IllegalArgumentException.
+	 */
+	private static class JsonReader {
+		
+		private final String s;
+		
+		private int pos = 0;
+		
+		JsonReader(String s) {
+			this.s = s;
+		}
+		
+		Object read() {
+			Object value = value();
+			
+			skipSpace();
+			
+			if(pos != s.length()) {
+				throw new IllegalArgumentException("trailing data at " + pos);
+			}
+			
+			return value;
+		}
+		
+		private void skipSpace() {
+			while(pos < s.length() && Character.isWhitespace(s.charAt(pos))) {
+				pos++;
+			}
+		}
+		
+		private char next() {
+			skipSpace();
+			
+			if(pos >= s.length()) {
+				throw new IllegalArgumentException("unexpected end");
+			}
+			
+			return s.charAt(pos);
+		}
+		
+		private void expect(char c) {
+			if(next() != c) {
+				throw new IllegalArgumentException("expected " + c + " at " + pos);
+			}
+			
+			pos++;
+		}
+		
+		private Object value() {
+			char c = next();
+			
+			if(c == '{') {
+				LinkedHashMap object = new LinkedHashMap();
+				
+				pos++;
+				
+				if(next() == '}') {
+					pos++;
+					return object;
+				}
+				
+				do {
+					String name = null;
+					
+					if(next() != '"') {
+						throw new IllegalArgumentException("expected name at " + pos);
+					}
+					
+					name = string();
+					expect(':');
+					object.put(name, value());
+				} while(next() == ',' && ++pos > 0);
+				
+				expect('}');
+				
+				return object;
+			} else if(c == '[') {
+				LinkedList array = new LinkedList();
+				
+				pos++;
+				
+				if(next() == ']') {
+					pos++;
+					return array;
+				}
+				
+				do {
+					array.add(value());
+				} while(next() == ',' && ++pos > 0);
+				
+				expect(']');
+				
+				return array;
+			} else if(c == '"') {
+				return string();
+			} else {
+				int start = pos;
+				
+				while(pos < s.length() && ",}] \t".indexOf(s.charAt(pos)) < 0) {
+					pos++;
+				}
+				
+				if(start == pos) {
+					throw new IllegalArgumentException("unexpected " + c + " at " + pos);
+				}
+				
+				return s.substring(start, pos);
+			}
+		}
+		
+		private String string() {
+			StringBuffer buf = new StringBuffer();
+			
+			pos++;
+			
+			while(pos < s.length()) {
+				char c = s.charAt(pos++);
+				
+				if(c == '"') {
+					return buf.toString();
+				} else if(c != '\\') {
+					buf.append(c);
+				} else if(pos < s.length()) {
+					char e = s.charAt(pos++);
+					
+					switch(e) {
+						case 'b': buf.append('\b'); break;
+						case 'f': buf.append('\f'); break;
+						case 'n': buf.append('\n'); break;
+						case 'r': buf.append('\r'); break;
+						case 't': buf.append('\t'); break;
+						case 'u':
+							if(pos + 4 > s.length()) {
+								throw new IllegalArgumentException("bad escape at " + pos);
+							}
+							buf.append((char)Integer.parseInt(s.substring(pos, pos + 4), 16));
+							pos += 4;
+							break;
+						default: buf.append(e);
+					}
+				}
+			}
+			
+			throw new IllegalArgumentException("unterminated string");
+		}
+	}
+}
@@ -0,0 +1,154 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+package org.owasp.stinger.bench;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Writes SVDL files with a given number of parameter rules for the
+ * benchmarks. Rules are spread over rule sets of RULES_PER_SET rules with
+ * the paths /app/s0/.*, /app/s1/.*, ... and parameters named p0, p1, ...
+ * within each rule set. Every rule set also has a uri rule, so a request
+ * with valid values causes no violation. Malformed values are encoded and
+ * logged to a temporary file.
+ */
+public class SyntheticSvdl {
+	
+	public final static int RULES_PER_SET = 10;
+	
+	/** The first PARAMETER_REGEXS regexs are used by the parameter rules **/
+	private final static int PARAMETER_REGEXS = 4;
+	
+	private final static String[][] REGEXS = {
+		{ "safetext", "^[a-zA-Z0-9\\s.\\-]+$" },
+		{ "digits", "^\\d{1,10}$" },
+		{ "email", "^[\\w-]+(?:\\.[\\w-]+)*@(?:[\\w-]+\\.)+[a-zA-Z]{2,7}$" },
+		{ "state", "^(AL|AK|AZ|AR|CA|CO|CT|DE|FL|GA|NY|TX|VA|WA)$" },
+		{ "JSESSIONID", "^[A-F0-9]{32}$" },
+		{ "url", "^https?://[\\w.:\\-]+(/[\\w.\\-]*)*$" }
+	};
+	
+	private SyntheticSvdl() {
+	
+	}
+	
+	/**
+	 * Number of rule sets the given number of rules is spread over
+	 */
+	public static int getRuleSetCount(int rules) {
+		return Math.max(1, (rules + RULES_PER_SET - 1) / RULES_PER_SET);
+	}
+	
+	/**
+	 * The regex name used by rule i of a rule set
+	 */
+	public static String getRegex(int i) {
+		return REGEXS[i % PARAMETER_REGEXS][0];
+	}
+	
+	/**
+	 * A value of parameter i of a rule set that its rule accepts
+	 */
+	public static String getValidValue(int i) {
+		String regex = getRegex(i);
+		
+		if(regex.equals("digits")) {
+			return "12345";
+		} else if(regex.equals("email")) {
+			return "someone@example.org";
+		} else if(regex.equals("state")) {
+			return "VA";
+		}
+		
+		return "Some safe text 42";
+	}
+	
+	public static File write(int rules) throws IOException {
+		File file = File.createTempFile("stinger-bench-" + rules + "-", ".xml");
+		File log = File.createTempFile("stinger-bench-", ".log");
+		PrintWriter out = new PrintWriter(new FileWriter(file));
+		
+		file.deleteOnExit();
+		log.deleteOnExit();
+		
+		try {
+			out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+			out.println("<stinger>");
+			out.println("<exclude-set><exclude>.*\\.(html|css|js|png)</exclude><exclude>/static/.*</exclude></exclude-set>");
+			out.println("<regexset>");
+			
+			for(int i=0; i<REGEXS.length; i++) {
+				out.println("<regex><name>" + REGEXS[i][0] + "</name><pattern>" + REGEXS[i][1] + "</pattern></regex>");
+			}
+			
+			out.println("</regexset>");
+			out.println("<cookie><name>JSESSIONID</name><regex>JSESSIONID</regex><created>/login</created><enforce>/app/.*</enforce>");
+			out.println(category("missing", "continue", null) + category("malformed", "continue", log.getPath()) + "</cookie>");
+			out.println("<ruleset><name>STINGER_DEFAULT</name><path>STINGER_DEFAULT</path>");
+			out.println(rule("STINGER_ALL", "safetext", "ignore", log.getPath()) + "</ruleset>");
+			
+			for(int set=0; set<getRuleSetCount(rules); set++) {
+				out.println("<ruleset><name>s" + set + "</name><path>/app/s" + set + "/.*</path>");
+				out.println(rule("uri", "url", "ignore", log.getPath()));
+				
+				for(int i=0; i<RULES_PER_SET && set * RULES_PER_SET + i < rules; i++) {
+					out.println(rule("p" + i, getRegex(i), "continue", log.getPath()));
+				}
+				
+				out.println("</ruleset>");
+			}
+			
+			out.println("</stinger>");
+		} finally {
+			out.close();
+		}
+		
+		return file;
+	}
+	
+	private static String rule(String name, String regex, String missing, String log) {
+		return "<rule><name>" + name + "</name><regex>" + regex + "</regex>" + category("missing", missing, null) + category("malformed", "continue", log) + "</rule>";
+	}
+	
+	private static String category(String tag, String severity, String log) {
+		StringBuffer buf = new StringBuffer();
+		
+		buf.append("<").append(tag).append("><severity>").append(severity).append("</severity>");
+		
+		if(log != null) {
+			buf.append("<action class=\"org.owasp.stinger.actions.Log\">");
+			buf.append("<parameter><name>log</name><value>").append(log).append("</value></parameter>");
+			buf.append("<parameter><name>level</name><value>INFO</value></parameter>");
+			buf.append("<parameter><name>message</name><value>%name from %ip is malformed: %encoded_value</value></parameter>");
+			buf.append("</action>");
+			buf.append("<action class=\"org.owasp.stinger.actions.Encode\" />");
+		}
+		
+		buf.append("</").append(tag).append(">");
+		
+		return buf.toString();
+	}
+}
@@ -0,0 +1,169 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+package org.owasp.stinger.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.owasp.stinger.BreakChainException;
+import org.owasp.stinger.Stinger;
+import org.owasp.stinger.http.MutableHttpRequest;
+import org.owasp.stinger.metrics.Metrics;
+import org.owasp.stinger.rules.Rule;
+import org.owasp.stinger.rules.RuleSet;
+import org.owasp.stinger.util.AsyncLogWriter;
+
+/**
+ * The request validation hot path against synthetic SVDL files of 10 to
+ * 10,000 rules. Requests go to a rule set in the middle of the file and
+ * carry one valid value per rule of that rule set, the malformed variant
+ * has one bad value that is logged and encoded.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ValidationBenchmark {
+	
+	@Param({ "10", "100", "1000", "10000" })
+	public int rules;
+	
+	@Param({ "true", "false" })
+	public boolean metrics;
+	
+	private RuleSet set = null;
+	
+	private Stinger stinger = null;
+	
+	private String uri = null;
+	
+	private HttpServletRequest validRequest = null;
+	
+	private HttpServletRequest malformedRequest = null;
+	
+	private HttpServletResponse response = null;
+	
+	private Rule rule = null;
+	
+	private String value = null;
+	
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		File svdl = SyntheticSvdl.write(rules);
+		int count = Math.min(rules, SyntheticSvdl.RULES_PER_SET);
+		String[] valid = new String[count * 2];
+		String[] malformed = null;
+		Cookie[] cookies = { new Cookie("JSESSIONID", "0123456789ABCDEF0123456789ABCDEF") };
+		
+		set = new RuleSet(svdl.getPath(), false);
+		stinger = Stinger.getInstance(set, false);
+		Metrics.setEnabled(metrics);
+		
+		uri = "/app/s" + (SyntheticSvdl.getRuleSetCount(rules) / 2) + "/page.jsp";
+		
+		for(int i=0; i<count; i++) {
+			valid[i * 2] = "p" + i;
+			valid[i * 2 + 1] = SyntheticSvdl.getValidValue(i);
+		}
+		
+		malformed = (String[])valid.clone();
+		malformed[1] = "<script>alert(document.cookie)</script>";
+		
+		validRequest = MockServlet.request("GET", uri, MockServlet.parameters(valid), cookies);
+		malformedRequest = MockServlet.request("GET", uri, MockServlet.parameters(malformed), cookies);
+		response = MockServlet.response();
+		
+		rule = set.getParameterRule(uri, "p0");
+		value = SyntheticSvdl.getValidValue(0);
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		AsyncLogWriter.closeAll();
+		Metrics.setEnabled(true);
+	}
+	
+	@Benchmark
+	public MutableHttpRequest validate() throws BreakChainException {
+		MutableHttpRequest request = new MutableHttpRequest(validRequest);
+		
+		stinger.validate(set, request, response);
+		
+		return request;
+	}
+	
+	@Benchmark
+	public MutableHttpRequest validateMalformed() throws BreakChainException {
+		MutableHttpRequest request = new MutableHttpRequest(malformedRequest);
+		
+		stinger.validate(set, request, response);
+		
+		return request;
+	}
+	
+	@Benchmark
+	public Rule getParameterRule() {
+		return set.getParameterRule(uri, "p0");
+	}
+	
+	@Benchmark
+	public boolean isExcluded() {
+		return set.isExcluded(uri);
+	}
+	
+	@Benchmark
+	public boolean isExcludedStatic() {
+		return set.isExcluded("/static/img/logo.png");
+	}
+	
+	@Benchmark
+	public boolean ruleIsValid() {
+		return rule.isValid(value);
+	}
+	
+	@Benchmark
+	public MutableHttpRequest newMutableHttpRequest() {
+		return new MutableHttpRequest(validRequest);
+	}
+}
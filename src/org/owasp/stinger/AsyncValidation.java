@@ -0,0 +1,197 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+package org.owasp.stinger;
+
+import java.io.IOException;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletResponse;
+
+import org.owasp.stinger.http.BodyReader;
+import org.owasp.stinger.http.MutableHttpRequest;
+import org.owasp.stinger.rules.RuleSet;
+
+/**
+ * Validates a request whose body is read with non-blocking IO. The bytes
+ * are fed to the BodyReader whenever the container has some, so no thread
+ * waits for a slow client. Once the body is read the request is validated
+ * and dispatched again; StingerFilter then passes the validated request
+ * down the chain.
+ *
+ * The filter mapping must include the ASYNC dispatcher for the second
+ * pass to reach the filter.
+ */
+class AsyncValidation implements ReadListener, AsyncListener {
+	
+	/** The validated request, kept for the ASYNC dispatch **/
+	public final static String REQUEST_ATTRIBUTE = "org.owasp.stinger.validatedRequest";
+	
+	private final static int READ_SIZE = 8192;
+	
+	private final Stinger stinger;
+	
+	private final RuleSet ruleSet;
+	
+	private final MutableHttpRequest request;
+	
+	private final HttpServletResponse response;
+	
+	private final BodyReader reader;
+	
+	private final String errorPage;
+	
+	private final byte[] buf = new byte[READ_SIZE];
+	
+	private AsyncContext context = null;
+	
+	private ServletInputStream in = null;
+	
+	/** Set once the request was dispatched or rejected **/
+	private boolean done = false;
+	
+	AsyncValidation(Stinger stinger, RuleSet ruleSet, MutableHttpRequest request, HttpServletResponse response, BodyReader reader, String errorPage) {
+		this.stinger = stinger;
+		this.ruleSet = ruleSet;
+		this.request = request;
+		this.response = response;
+		this.reader = reader;
+		this.errorPage = errorPage;
+	}
+	
+	/**
+	 * Put the request in async mode and start reading the body
+	 */
+	void start(AsyncContext context, ServletInputStream in, long timeout) {
+		this.context = context;
+		this.in = in;
+		
+		context.addListener(this);
+		context.setTimeout(timeout);
+		in.setReadListener(this);
+	}
+	
+	public void onDataAvailable() {
+		int read = 0;
+		
+		try {
+			while(!isDone() && !reader.isStopped() && in.isReady() && (read = in.read(buf)) != -1) {
+				reader.update(buf, 0, read);
+			}
+			
+			/** No need to wait for the rest of the body **/
+			if(reader.isStopped()) {
+				validate();
+			}
+		} catch (IOException ioe) {
+			reject(ioe);
+		}
+	}
+	
+	public void onAllDataRead() {
+		validate();
+	}
+	
+	public void onError(Throwable t) {
+		reject(t);
+	}
+	
+	public void onComplete(AsyncEvent event) {
+		/** Spooled files only live as long as the request **/
+		request.deleteUploadedFiles();
+		request.deleteBody();
+	}
+	
+	public void onTimeout(AsyncEvent event) {
+		System.out.println("[Stinger-Filter] request body for " + request.getRequestURI() + " not received in time. Redirected to error page at " + errorPage);
+		reject(null);
+	}
+	
+	public void onError(AsyncEvent event) {
+		reject(event.getThrowable());
+	}
+	
+	public void onStartAsync(AsyncEvent event) {
+	
+	}
+	
+	private synchronized boolean isDone() {
+		return done;
+	}
+	
+	/**
+	 * Returns true for the first caller only, the read callbacks and the
+	 * timeout may race
+	 */
+	private synchronized boolean claim() {
+		boolean first = !done;
+		
+		done = true;
+		
+		return first;
+	}
+	
+	private void validate() {
+		if(!claim()) {
+			return;
+		}
+		
+		try {
+			reader.finish();
+			stinger.validate(ruleSet, request, response);
+			
+			request.setAttribute(REQUEST_ATTRIBUTE, request);
+			context.dispatch();
+		} catch (BreakChainException bce) {
+			bce.printStackTrace();
+			redirect();
+		} catch (Exception e) {
+			e.printStackTrace();
+			redirect();
+		}
+	}
+	
+	private void reject(Throwable t) {
+		if(!claim()) {
+			return;
+		}
+		
+		if(t != null) {
+			t.printStackTrace();
+		}
+		
+		redirect();
+	}
+	
+	private void redirect() {
+		try {
+			response.sendRedirect(errorPage);
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+		}
+		
+		context.complete();
+	}
+}
@@ -32,6 +32,12 @@ public class Category {
 	
 	public final static String MALFORMED = "MALFORMED";
 	
+	/** A size or count limit of the request was exceeded **/
+	public final static String EXCEEDED = "EXCEEDED";
+	
+	/** A value contains a known attack signature **/
+	public final static String SIGNATURE = "SIGNATURE";
+	
 	private String category = null;
 	
 	private Severity severity = null;
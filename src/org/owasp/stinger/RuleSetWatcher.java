@@ -0,0 +1,119 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+package org.owasp.stinger;
+
+import java.io.File;
+
+import org.owasp.stinger.rules.RuleSet;
+
+/**
+ * Polls the SVDL file for changes and publishes a freshly compiled
+ * RuleSet to Stinger. All parsing happens on the watcher thread; request
+ * threads only ever see the last successfully compiled RuleSet.
+ */
+public class RuleSetWatcher implements Runnable {
+	
+	/** Default polling interval in milliseconds **/
+	public final static long DEFAULT_INTERVAL = 5000;
+	
+	private String config = null;
+	
+	private long interval = DEFAULT_INTERVAL;
+	
+	private boolean debug = false;
+	
+	private long lastModified = 0;
+	
+	private long lastLength = 0;
+	
+	private Thread thread = null;
+	
+	private volatile boolean running = false;
+	
+	public RuleSetWatcher(String config, long interval, boolean debug) {
+		this.config = config;
+		this.interval = (interval > 0 ? interval : DEFAULT_INTERVAL);
+		this.debug = debug;
+	}
+	
+	public synchronized void start() {
+		File file = new File(config);
+		
+		/** The filter already loaded the current file, only watch for changes from here on **/
+		lastModified = file.lastModified();
+		lastLength = file.length();
+		
+		running = true;
+		thread = new Thread(this, "Stinger-RuleSetWatcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	public synchronized void shutdown() {
+		running = false;
+		
+		if(thread != null) {
+			thread.interrupt();
+			thread = null;
+		}
+	}
+	
+	public void run() {
+		while(running) {
+			try {
+				Thread.sleep(interval);
+			} catch (InterruptedException ie) {
+				break;
+			}
+			
+			checkForChanges();
+		}
+	}
+	
+	private void checkForChanges() {
+		File file = new File(config);
+		long modified = file.lastModified();
+		long length = file.length();
+		RuleSet ruleSet = null;
+		
+		/** File is missing or has not changed **/
+		if(modified == 0 || (modified == lastModified && length == lastLength)) {
+			return;
+		}
+		
+		/** Remember the attempt so a broken file is not re-parsed on every poll **/
+		lastModified = modified;
+		lastLength = length;
+		
+		try {
+			ruleSet = new RuleSet(config, debug);
+		} catch (Exception e) {
+			System.out.println("[Stinger-Filter] Unable to reload " + config + ", keeping the last known good rule set");
+			e.printStackTrace();
+			return;
+		}
+		
+		Stinger.setRuleSet(ruleSet);
+		System.out.println("[Stinger-Filter] Reloaded rule set from " + config);
+	}
+}
@@ -26,15 +26,22 @@ import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletResponse;
 
 import java.util.Enumeration;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.Iterator;
-import java.util.HashMap;
+import java.util.Map;
 
 import org.owasp.stinger.actions.AbstractAction;
 import org.owasp.stinger.http.MutableHttpRequest;
+import org.owasp.stinger.http.UploadedFile;
+import org.owasp.stinger.metrics.Metrics;
 import org.owasp.stinger.rules.Rule;
 import org.owasp.stinger.rules.CookieRule;
+import org.owasp.stinger.rules.Limits;
 import org.owasp.stinger.rules.RuleSet;
+import org.owasp.stinger.rules.SignatureSet;
+import org.owasp.stinger.rules.ValidationPlan;
+import org.owasp.stinger.util.PercentDecoder;
 import org.owasp.stinger.violation.Violation;
 import org.owasp.stinger.violation.ViolationList;
 
@@ -42,7 +49,7 @@ public class Stinger {
 	
 	private static Stinger instance = new Stinger();
 	
-	private static RuleSet set = null;
+	private static volatile RuleSet set = null;
 	
 	private static boolean debug = false;
 	
@@ -60,6 +67,10 @@ public class Stinger {
 		set = ruleSet;
 	}
 	
+	public static RuleSet getRuleSet() {
+		return set;
+	}
+	
 	public static void setDebug(boolean debugIn) {
 		debug = debugIn;
 	}
@@ -93,126 +104,304 @@ public class Stinger {
 		}
 	}
 	
-	private void checkMissingCookies(MutableHttpRequest request, HttpServletResponse response, ViolationList vList) throws BreakChainException {
+	/**
+	 * Check the missing and malformed cookies in one pass over the cookies.
+	 * Which cookie rules apply to the uri was resolved with the plan.
+	 */
+	private void checkCookies(ValidationPlan plan, MutableHttpRequest request, HttpServletResponse response, ViolationList vList) throws BreakChainException {
 		String uri = request.getRequestURI();
-		String name = null;
 		Cookie[] cookies = null;
+		CookieRule[] enforced = plan.getEnforcedCookies();
+		boolean[] required = plan.getRequiredCookies();
+		boolean[] present = null;
 		CookieRule cRule = null;
-		HashMap cookieMap = null;
-		LinkedList cRules = null;
-		Iterator itr = null;
 		Violation violation = null;
 		
-		/** Check Missing Cookies **/
+		if(enforced.length == 0) {
+			/** There exists no cookie rules for this URI **/
+			if (debug) System.out.println("[Stinger-Filter] Warning: There exists no cookie rules");
+			return;
+		}
+		
 		cookies = request.getCookies();
-		cookieMap = new HashMap();
-		cRules = set.getCookieRules();
+		present = new boolean[enforced.length];
 		
-		if(cookies != null) {
-			for(int i=0; i<cookies.length; i++) {
-				cookieMap.put(cookies[i].getName(), cookies[i]);
+		/** Check Malformed Cookies **/
+		for(int i=0; i<cookies.length; i++) {
+			Cookie cookie = cookies[i];
+			int index = plan.getCookieIndex(cookie.getName());
+			
+			if(index < 0) {
+				continue;
 			}
-			itr = cRules.iterator();
 			
-			while(itr.hasNext()) {
-				cRule = (CookieRule)itr.next();
+			cRule = enforced[index];
+			present[index] = true;
+			
+			if(!cRule.isValid(cookie.getValue())) {
+				violation = new Violation(cRule.getMalformed(), cRule.getName(), cookie.getValue(), cRule.getPattern(), uri);
 				
-				/** The cookie is considered missing if it DNE and we are NOT on the created URI **/
-				/** Only enforce if we are in an enforcing uri **/
+				if (debug) System.out.println("[Stinger-Filter] VIOLATION: Cookie " + cRule.getName() + " is malformed");
 				
-				if(!cookieMap.containsKey(cRule.getName()) && !cRule.isCreatedUri(uri) && cRule.isEnforced(uri)) {
-					violation = new Violation(cRule.getMissing(), name, null, cRule.getPattern(), uri);
-					
-					if (debug) System.out.println("[Stinger-Filter] VIOLATION: Cookie " + cRule.getName() + " is missing");
-					
-					if(violation.getSeverity().equals(Severity.FATAL)) {
-						handleViolationActions(request, response, violation);
-						
-						throw new BreakChainException("Chain broken due to fatal violation");
-					} else if(violation.getSeverity().equals(Severity.CONTINUE)){
-						vList.add(violation);
-					} else {
-						/** Severity == IGNORE **/
-					}					
-				}
+				handleViolation(plan, cRule, request, response, violation, vList);
+			}
+		}
+		
+		/** Check Missing Cookies, only when the request carries cookies at all **/
+		for(int i=0; cookies.length > 0 && i<enforced.length; i++) {
+			/** The cookie is considered missing if it DNE and we are NOT on the created URI **/
+			if(required[i] && !present[i]) {
+				cRule = enforced[i];
+				violation = new Violation(cRule.getMissing(), cRule.getName(), null, cRule.getPattern(), uri);
+				
+				if (debug) System.out.println("[Stinger-Filter] VIOLATION: Cookie " + cRule.getName() + " is missing");
+				
+				handleViolation(plan, cRule, request, response, violation, vList);
 			}
+		}
+	}
+	
+	/**
+	 * Count the violation of the rule, then handle it right away if it is
+	 * fatal or queue it otherwise. The rule is null for a limit or a signature.
+	 */
+	private void handleViolation(ValidationPlan plan, Rule rule, MutableHttpRequest request, HttpServletResponse response, Violation violation, ViolationList vList) throws BreakChainException {
+		if(Metrics.isEnabled()) {
+			Metrics.recordViolation(rule != null ? rule.getStats() : null, plan.getStats(), violation.getCategory().toString(), violation.getSeverity().toString());
+		}
+		
+		if(violation.getSeverity().equals(Severity.FATAL)) {
+			handleViolationActions(request, response, violation);
+			
+			throw new BreakChainException("Chain broken due to fatal violation");
+		} else if(violation.getSeverity().equals(Severity.CONTINUE)){
+			vList.add(violation);
 		} else {
-			/** There exists no rules for this URI **/
-			if (debug) System.out.println("[Stinger-Filter] Warning: There exists no cookie rules");
-		}		
+			/** Severity == IGNORE **/
+		}
 	}
 	
-	private void checkMalformedCookies(MutableHttpRequest request, HttpServletResponse response, ViolationList vList) throws BreakChainException {
-		String uri = null;
-		String name = null;
-		Cookie cookie = null;
+	/**
+	 * Check the size and count limits. The raw query string, Content-Length
+	 * and Cookie headers are checked before the parameters are touched, so
+	 * an oversized form body is never parsed by the container when the
+	 * violation is fatal. Only the first parameter over a name or value
+	 * limit is reported.
+	 */
+	private void checkLimits(ValidationPlan plan, MutableHttpRequest request, HttpServletResponse response, ViolationList vList) throws BreakChainException {
+		Limits limits = plan.getLimits();
+		String query = request.getQueryString();
+		Enumeration e = null;
+		long count = 0;
+		boolean nameReported = false;
+		boolean valueReported = false;
+		
+		if(limits == Limits.UNLIMITED) {
+			return;
+		}
+		
+		if(query != null && Limits.exceeds(query.length(), limits.getMaxQuerySize())) {
+			exceeded(plan, "max-query-size", query.length(), limits.getMaxQuerySize(), request, response, vList);
+		}
+		
+		if(Limits.exceeds(Math.max(request.getContentLength(), request.getBodyLength()), limits.getMaxBodySize())) {
+			/** Always fatal, the body was not read to the end **/
+			exceeded(plan, limits.getBodyExceeded(), "max-body-size", Math.max(request.getContentLength(), request.getBodyLength()), limits.getMaxBodySize(), request, response, vList);
+		}
+		
+		if(Limits.exceeds(countCookies(request), limits.getMaxCookies())) {
+			exceeded(plan, "max-cookies", countCookies(request), limits.getMaxCookies(), request, response, vList);
+		}
+		
+		/** Count the query parameters before the container parses them **/
+		if(query != null && Limits.exceeds(countParameters(query), limits.getMaxParameters())) {
+			exceeded(plan, "max-parameters", countParameters(query), limits.getMaxParameters(), request, response, vList);
+			return;
+		}
+		
+		if(limits.getMaxParameters() == Limits.NONE && limits.getMaxNameLength() == Limits.NONE && limits.getMaxValueLength() == Limits.NONE) {
+			return;
+		}
+		
+		e = request.getParameterNames();
+		
+		while(e.hasMoreElements()) {
+			String name = (String)e.nextElement();
+			String[] values = request.getParameterValues(name);
+			
+			count += (values != null ? values.length : 0);
+			
+			if(!nameReported && Limits.exceeds(name.length(), limits.getMaxNameLength())) {
+				/** The name itself may be huge, report its start only **/
+				exceeded(plan, name.substring(0, (int)limits.getMaxNameLength()), name.length(), limits.getMaxNameLength(), request, response, vList);
+				nameReported = true;
+			}
+			
+			for(int i=0; !valueReported && values != null && i<values.length; i++) {
+				if(Limits.exceeds(values[i].length(), limits.getMaxValueLength())) {
+					exceeded(plan, name, values[i].length(), limits.getMaxValueLength(), request, response, vList);
+					valueReported = true;
+				}
+			}
+		}
+		
+		if(Limits.exceeds(count, limits.getMaxParameters())) {
+			exceeded(plan, "max-parameters", count, limits.getMaxParameters(), request, response, vList);
+		}
+	}
+	
+	/**
+	 * Report a limit. The violation names the limit or the parameter and
+	 * its value is the size found. It has no regex, no rule was broken.
+	 */
+	private void exceeded(ValidationPlan plan, String name, long size, long limit, MutableHttpRequest request, HttpServletResponse response, ViolationList vList) throws BreakChainException {
+		exceeded(plan, plan.getLimits().getExceeded(), name, size, limit, request, response, vList);
+	}
+	
+	private void exceeded(ValidationPlan plan, Category category, String name, long size, long limit, MutableHttpRequest request, HttpServletResponse response, ViolationList vList) throws BreakChainException {
+		Violation violation = new Violation(category, name, String.valueOf(size), null, request.getRequestURI());
+		
+		if (debug) System.out.println("[Stinger-Filter] VIOLATION: " + name + " exceeds " + limit);
+		
+		handleViolation(plan, null, request, response, violation, vList);
+	}
+	
+	private static long countParameters(String query) {
+		long count = 0;
+		int start = 0;
+		
+		while(start <= query.length()) {
+			int end = query.indexOf('&', start);
+			
+			end = (end < 0 ? query.length() : end);
+			
+			/** Empty pairs, as in a&&b, are no parameters **/
+			if(end > start) {
+				count++;
+			}
+			
+			start = end + 1;
+		}
+		
+		return count;
+	}
+	
+	private static long countCookies(MutableHttpRequest request) {
+		Enumeration headers = request.getHeaders("Cookie");
+		long count = 0;
+		
+		while(headers != null && headers.hasMoreElements()) {
+			String header = (String)headers.nextElement();
+			
+			for(int i=0; i<header.length(); i++) {
+				if(header.charAt(i) == ';') {
+					count++;
+				}
+			}
+			
+			count += (header.trim().length() > 0 ? 1 : 0);
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * Scan the URI, every cookie value, every parameter value and the JSON
+	 * values the collector flagged for the attack signatures. The URI is
+	 * scanned URL decoded too, so percent encoding hides no signature.
+	 * Only the first signature of a value is reported.
+	 */
+	private void checkSignatures(ValidationPlan plan, SignatureSet signatures, MutableHttpRequest request, HttpServletResponse response, ViolationList vList) throws BreakChainException {
+		String uri = request.getRequestURI();
+		String path = PercentDecoder.decode(uri);
 		Cookie[] cookies = null;
-		CookieRule cRule = null;
-		Violation violation = null;
+		Enumeration e = null;
+		Map json = null;
+		Iterator itr = null;
+		
+		if(signatures.isEmpty()) {
+			return;
+		}
+		
+		if(!signature(plan, signatures, "uri", uri, request, response, vList) && !path.equals(uri)) {
+			signature(plan, signatures, "uri", path, request, response, vList);
+		}
 		
-		uri = request.getRequestURI();
 		cookies = request.getCookies();
 		
-		if(cookies != null) {
-			for(int i=0; i<cookies.length; i++) {
-				cookie = cookies[i];
-				cRule = set.getCookieRule(cookie.getName());
-				
-				if(cRule != null && cRule.isEnforced(uri)) {
-					if(!cRule.isValid(cookie.getValue())) {
-						violation = new Violation(cRule.getMissing(), name, cookie.getValue(), cRule.getPattern(), uri);
-						
-						if (debug) System.out.println("[Stinger-Filter] VIOLATION: Cookie " + cRule.getName() + " is malformed");
-						
-						if(violation.getSeverity().equals(Severity.FATAL)) {
-							handleViolationActions(request, response, violation);
-							
-							throw new BreakChainException("Chain broken due to fatal violation");
-						} else if(violation.getSeverity().equals(Severity.CONTINUE)){
-							vList.add(violation);
-						} else {
-							/** Severity == IGNORE **/
-						}					
-					}
-				}	
+		for(int i=0; i<cookies.length; i++) {
+			signature(plan, signatures, cookies[i].getName(), cookies[i].getValue(), request, response, vList);
+		}
+		
+		e = request.getParameterNames();
+		
+		while(e.hasMoreElements()) {
+			String name = (String)e.nextElement();
+			String[] values = request.getParameterValues(name);
+			
+			for(int i=0; values != null && i<values.length; i++) {
+				signature(plan, signatures, name, values[i], request, response, vList);
 			}
-		}		
+		}
+		
+		/** JSON values were scanned while parsed, only the hits were kept **/
+		json = request.getJsonSignatures();
+		itr = (json != null ? json.entrySet().iterator() : null);
+		
+		while(itr != null && itr.hasNext()) {
+			Map.Entry entry = (Map.Entry)itr.next();
+			Iterator vItr = ((LinkedList)entry.getValue()).iterator();
+			
+			while(vItr.hasNext()) {
+				signature(plan, signatures, (String)entry.getKey(), (String)vItr.next(), request, response, vList);
+			}
+		}
 	}
 	
-	private void checkMissingParameters(MutableHttpRequest request, HttpServletResponse response, ViolationList vList) throws BreakChainException {
+	/**
+	 * Report the value if it contains a signature and return true. The
+	 * violation has no regex, the signature found is only logged.
+	 */
+	private boolean signature(ValidationPlan plan, SignatureSet signatures, String name, String value, MutableHttpRequest request, HttpServletResponse response, ViolationList vList) throws BreakChainException {
+		String signature = signatures.find(value);
+		Violation violation = null;
+		
+		if(signature != null) {
+			violation = new Violation(signatures.getMatched(), name, value, null, request.getRequestURI());
+			
+			if (debug) System.out.println("[Stinger-Filter] VIOLATION: " + name + " contains the signature " + signature);
+			
+			handleViolation(plan, null, request, response, violation, vList);
+		}
+		
+		return signature != null;
+	}
+	
+	private void checkMissingParameters(ValidationPlan plan, MutableHttpRequest request, HttpServletResponse response, ViolationList vList) throws BreakChainException {
 		String uri = null;
 		String name = null;
+		String value = null;
 		Rule pRule = null;
-		LinkedList pRules = null;
-		Iterator itr = null;
+		Rule[] pRules = null;
 		Violation violation = null;
 		
 		uri = request.getRequestURI();
-		pRules = set.getParameterRules(uri);
+		pRules = plan.getRequired();
 		
-		if(pRules != null) {
-			itr = pRules.iterator();
-			
-			while(itr.hasNext()) {
-				pRule = (Rule)itr.next();
+		if(pRules.length > 0) {
+			for(int i=0; i<pRules.length; i++) {
+				pRule = pRules[i];
 				
 				name = pRule.getName();
+				value = request.getParameter(name);
 				
-				if(!name.equals(RuleSet.STINGER_ALL) && (request.getParameter(name) == null || request.getParameter(name).equals(""))) {
+				/** A file part counts as the parameter being sent **/
+				if((value == null || value.equals("")) && request.getUploadedFile(name) == null) {
 					violation = new Violation(pRule.getMissing(), name, null, pRule.getPattern(), uri);
 					
 					if (debug) System.out.println("[Stinger-Filter] VIOLATION: Parameter " + name + " is missing");
 					
-					if(violation.getSeverity().equals(Severity.FATAL)) {
-						
-						handleViolationActions(request, response, violation);
-						
-						throw new BreakChainException("Chain broken due to fatal violation");
-					} else if(violation.getSeverity().equals(Severity.CONTINUE)){
-						vList.add(violation);
-					} else {
-						/** Severity == IGNORE **/
-					}
+					handleViolation(plan, pRule, request, response, violation, vList);
 				}
 			}
 		} else {
@@ -221,7 +410,7 @@ public class Stinger {
 		}		
 	}
 	
-	private void checkMalformedParameters(MutableHttpRequest request, HttpServletResponse response, ViolationList vList) throws BreakChainException {
+	private void checkMalformedParameters(ValidationPlan plan, MutableHttpRequest request, HttpServletResponse response, ViolationList vList) throws BreakChainException {
 		String uri = null;
 		String name = null;
 		String[] values = null;
@@ -236,7 +425,7 @@ public class Stinger {
 			name = (String)e.nextElement();
 			values = request.getParameterValues(name);
 			
-			pRule = set.getParameterRule(uri, name);
+			pRule = plan.getRule(name);
 			
 			for (int i=0;i<values.length;i++){
 				String value = values[i];
@@ -245,21 +434,109 @@ public class Stinger {
 					
 					if (debug) System.out.println("[Stinger-Filter] VIOLATION: Parameter " + name + " is malformed");
 					
-					if(violation.getSeverity().equals(Severity.FATAL)) {
-						handleViolationActions(request, response, violation);
-						
-						throw new BreakChainException("Chain broken due to fatal violation");
-					} else if(violation.getSeverity().equals(Severity.CONTINUE)){
-						vList.add(violation);
-					} else {
-						/** Severity == IGNORE **/
-					}
+					handleViolation(plan, pRule, request, response, violation, vList);
 				}
 			}
 		}	
 	}
 	
-	private void checkMalformedUri(MutableHttpRequest request, HttpServletResponse response, ViolationList vList) throws BreakChainException {
+	/**
+	 * Check the file parts of a multipart request. The file name is
+	 * validated like a parameter value, plus the size and content type
+	 * limits of the rule.
+	 */
+	private void checkFiles(ValidationPlan plan, MutableHttpRequest request, HttpServletResponse response, ViolationList vList) throws BreakChainException {
+		String uri = request.getRequestURI();
+		Iterator itr = request.getUploadedFiles().iterator();
+		Rule pRule = null;
+		Violation violation = null;
+		
+		while(itr.hasNext()) {
+			UploadedFile file = (UploadedFile)itr.next();
+			
+			pRule = plan.getRule(file.getName());
+			
+			if(pRule != null && !pRule.isValidFile(file.getFilename(), file.getContentType(), file.getSize())) {
+				violation = new Violation(pRule.getMalformed(), file.getName(), file.getFilename(), pRule.getPattern(), uri);
+				
+				if (debug) System.out.println("[Stinger-Filter] VIOLATION: File " + file.getName() + " is malformed");
+				
+				handleViolation(plan, pRule, request, response, violation, vList);
+			}
+		}
+	}
+	
+	/**
+	 * Check the values of a JSON body against the JSON pointer rules. A
+	 * value is missing if it is absent, null or empty, as for parameters.
+	 */
+	private void checkJson(ValidationPlan plan, MutableHttpRequest request, HttpServletResponse response, ViolationList vList) throws BreakChainException {
+		String uri = request.getRequestURI();
+		Map values = request.getJsonValues();
+		Rule[] required = plan.getJsonRequired();
+		IdentityHashMap present = new IdentityHashMap();
+		Iterator itr = null;
+		Rule pRule = null;
+		Violation violation = null;
+		
+		if(values == null) {
+			return;
+		}
+		
+		itr = values.entrySet().iterator();
+		
+		while(itr.hasNext()) {
+			Map.Entry entry = (Map.Entry)itr.next();
+			Iterator vItr = ((LinkedList)entry.getValue()).iterator();
+			
+			pRule = plan.getJsonRule((String)entry.getKey());
+			
+			while(vItr.hasNext()) {
+				String value = (String)vItr.next();
+				
+				if(value != null && !value.equals("")) {
+					present.put(pRule, pRule);
+				}
+			}
+		}
+		
+		/** Check Missing Values **/
+		for(int i=0; i<required.length; i++) {
+			if(!present.containsKey(required[i])) {
+				pRule = required[i];
+				violation = new Violation(pRule.getMissing(), pRule.getName(), null, pRule.getPattern(), uri);
+				
+				if (debug) System.out.println("[Stinger-Filter] VIOLATION: JSON value " + pRule.getName() + " is missing");
+				
+				handleViolation(plan, pRule, request, response, violation, vList);
+			}
+		}
+		
+		/** Check Malformed Values **/
+		itr = values.entrySet().iterator();
+		
+		while(itr.hasNext()) {
+			Map.Entry entry = (Map.Entry)itr.next();
+			String pointer = (String)entry.getKey();
+			Iterator vItr = ((LinkedList)entry.getValue()).iterator();
+			
+			pRule = plan.getJsonRule(pointer);
+			
+			while(vItr.hasNext()) {
+				String value = (String)vItr.next();
+				
+				if(value != null && !pRule.isValid(value)) {
+					violation = new Violation(pRule.getMalformed(), pointer, value, pRule.getPattern(), uri);
+					
+					if (debug) System.out.println("[Stinger-Filter] VIOLATION: JSON value " + pointer + " is malformed");
+					
+					handleViolation(plan, pRule, request, response, violation, vList);
+				}
+			}
+		}
+	}
+	
+	private void checkMalformedUri(ValidationPlan plan, MutableHttpRequest request, HttpServletResponse response, ViolationList vList) throws BreakChainException {
 		String uri = null;
 		String name = null;
 		String[] values = null;
@@ -269,39 +546,53 @@ public class Stinger {
 		
 		uri = request.getRequestURI();
 
-		pRule = set.getParameterRule(uri, "uri");
-		System.out.println("Checking uri: " + uri);
+		pRule = plan.getRule("uri");
+		if (debug) System.out.println("Checking uri: " + uri);
 		String value = new String(request.getRequestURL());
 		if(pRule != null && !pRule.isValid(value)) {
 			violation = new Violation(pRule.getMalformed(), name, value, pRule.getPattern(), uri);
 					
 			if (debug) System.out.println("[Stinger-Filter] VIOLATION: Parameter " + name + " is malformed");
 					
-			if(violation.getSeverity().equals(Severity.FATAL)) {
-				handleViolationActions(request, response, violation);
-				
-				throw new BreakChainException("Chain broken due to fatal violation");
-			} else if(violation.getSeverity().equals(Severity.CONTINUE)){
-				vList.add(violation);
-			} else {
-				/** Severity == IGNORE **/
-			}
+			handleViolation(plan, pRule, request, response, violation, vList);
 		}
 	}
 	
 	public void validate(MutableHttpRequest request, HttpServletResponse response) throws BreakChainException {
+		validate(set, request, response);
+	}
+	
+	/**
+	 * Validate the request against a single RuleSet snapshot. Callers that
+	 * already read the current RuleSet should pass it in so that one request
+	 * is never validated against two different rule sets.
+	 */
+	public void validate(RuleSet set, MutableHttpRequest request, HttpServletResponse response) throws BreakChainException {
 		ViolationList vList = new ViolationList();
+		/** Resolve the rules for this uri once for all checks **/
+		ValidationPlan plan = set.getPlan(request.getRequestURI());
+		boolean timed = Metrics.isEnabled();
+		long start = (timed ? System.nanoTime() : 0);
 		
-		vList = new ViolationList();
-		
-		checkMalformedUri(request, response, vList);
-		checkMissingCookies(request, response, vList);
-		checkMalformedCookies(request, response, vList);
-		checkMissingParameters(request, response, vList);
-		checkMalformedParameters(request, response, vList);
-		
-		/** No fatal violations, process actions for non-fatal violations **/
-		if (debug)System.out.println("Now handle any stinger violations");
-		handleViolations(request, response, vList);
+		try {
+			/** Limits go first so no regex runs on an oversized request **/
+			checkLimits(plan, request, response, vList);
+			checkSignatures(plan, set.getSignatures(), request, response, vList);
+			checkMalformedUri(plan, request, response, vList);
+			checkCookies(plan, request, response, vList);
+			checkMissingParameters(plan, request, response, vList);
+			checkMalformedParameters(plan, request, response, vList);
+			checkFiles(plan, request, response, vList);
+			checkJson(plan, request, response, vList);
+			
+			/** No fatal violations, process actions for non-fatal violations **/
+			if (debug)System.out.println("Now handle any stinger violations");
+			handleViolations(request, response, vList);
+		} finally {
+			/** Fatal violations are timed too **/
+			if(timed) {
+				Metrics.recordValidation(plan.getStats(), System.nanoTime() - start);
+			}
+		}
 	}
 }
@@ -22,8 +22,10 @@
 
 package org.owasp.stinger;
 
+import java.io.File;
 import java.io.IOException;
 
+import javax.servlet.DispatcherType;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
@@ -32,8 +34,23 @@ import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.owasp.stinger.actions.Aggregate;
+import org.owasp.stinger.http.BodyReader;
+import org.owasp.stinger.http.FormCollector;
+import org.owasp.stinger.http.FormParser;
+import org.owasp.stinger.http.JsonCollector;
+import org.owasp.stinger.http.JsonParser;
+import org.owasp.stinger.http.MalformedRequestException;
+import org.owasp.stinger.http.MultipartCollector;
+import org.owasp.stinger.http.MultipartParser;
 import org.owasp.stinger.http.MutableHttpRequest;
+import org.owasp.stinger.http.SpoolBuffer;
+import org.owasp.stinger.journal.JournalWriter;
+import org.owasp.stinger.metrics.Metrics;
+import org.owasp.stinger.rules.Limits;
 import org.owasp.stinger.rules.RuleSet;
+import org.owasp.stinger.rules.ValidationPlan;
+import org.owasp.stinger.util.AsyncLogWriter;
 
 
 public class StingerFilter implements Filter {
@@ -41,6 +58,15 @@ public class StingerFilter implements Filter {
 	private final static String POST = "POST";
 	
 	private final static String URL_FORM_ENCODING = "application/x-www-form-urlencoded";
+	
+	private final static String MULTIPART_FORM_DATA = "multipart/form-data";
+	
+	private final static String JSON = "application/json";
+	
+	/** Encoding of form bodies that do not name one **/
+	private final static String FORM_ENCODING = "ISO-8859-1";
+	
+	public final static int DEFAULT_ASYNC_TIMEOUT = 30000;
 
         private Stinger stinger = null;
 	
@@ -48,10 +74,32 @@ public class StingerFilter implements Filter {
 
 	private boolean reload = false;
 	
-	private RuleSet ruleSet = null;
+	private RuleSetWatcher watcher = null;
 	
 	private String errorPage = null;
 	
+	/** Bytes of an uploaded file kept in memory before it is spooled to disk **/
+	private int multipartThreshold = MultipartCollector.DEFAULT_THRESHOLD;
+	
+	/** Longest text field of a multipart request **/
+	private int multipartMaxField = MultipartCollector.DEFAULT_MAX_FIELD;
+	
+	/** Where uploaded files are spooled, null for java.io.tmpdir **/
+	private File multipartDirectory = null;
+	
+	/** Limits of a JSON body **/
+	private int jsonMaxDepth = JsonParser.DEFAULT_MAX_DEPTH;
+	
+	private int jsonMaxKeys = JsonParser.DEFAULT_MAX_KEYS;
+	
+	private int jsonMaxSize = JsonParser.DEFAULT_MAX_SIZE;
+	
+	/** Read request bodies with non-blocking IO where the request supports it **/
+	private boolean async = false;
+	
+	/** How long a client may take to send the body in async mode **/
+	private long asyncTimeout = DEFAULT_ASYNC_TIMEOUT;
+	
 	public boolean debug = false;
 	
 	
@@ -62,7 +110,8 @@ public class StingerFilter implements Filter {
 		System.out.println("Debugging set to " + String.valueOf(debug));
 		/** Pull config location from Filter init parameter **/
 		config = filterConfig.getInitParameter("config");
-		ruleSet = new RuleSet(config, debug);
+		RuleSet ruleSet = new RuleSet(config, debug);
+		System.out.println("[Stinger-Filter] " + ruleSet.getEngineReport());
 		/** Error page to display when exceptions are thrown **/
 		errorPage = filterConfig.getInitParameter("error-page");
 		/** Should we dynamically load the ruleset? **/
@@ -70,35 +119,112 @@ public class StingerFilter implements Filter {
 		if (debug) System.out.println("Reload parm is: " + String.valueOf(reload));
 		/** Get the stinger instance **/
 		stinger = Stinger.getInstance(ruleSet, debug);
+		/** Multipart requests are parsed by Stinger, large files are spooled to disk **/
+		multipartThreshold = getIntParameter(filterConfig, "multipart-threshold", MultipartCollector.DEFAULT_THRESHOLD);
+		multipartMaxField = getIntParameter(filterConfig, "multipart-max-field", MultipartCollector.DEFAULT_MAX_FIELD);
+		
+		if(filterConfig.getInitParameter("multipart-directory") != null) {
+			multipartDirectory = new File(filterConfig.getInitParameter("multipart-directory"));
+		}
+		/** JSON bodies are parsed by Stinger and spooled like uploaded files **/
+		jsonMaxDepth = getIntParameter(filterConfig, "json-max-depth", JsonParser.DEFAULT_MAX_DEPTH);
+		jsonMaxKeys = getIntParameter(filterConfig, "json-max-keys", JsonParser.DEFAULT_MAX_KEYS);
+		jsonMaxSize = getIntParameter(filterConfig, "json-max-size", JsonParser.DEFAULT_MAX_SIZE);
+		/** Bodies are read without holding a thread while the client sends them **/
+		async = Boolean.valueOf(filterConfig.getInitParameter("async")).booleanValue();
+		asyncTimeout = getIntParameter(filterConfig, "async-timeout", DEFAULT_ASYNC_TIMEOUT);
+		/** Runtime counters are on unless metrics is false, and are exposed over JMX **/
+		Metrics.setEnabled(!"false".equalsIgnoreCase(filterConfig.getInitParameter("metrics")));
+		Metrics.register(filterConfig.getFilterName());
+		/** Watch the config file in the background rather than re-parsing per request **/
+		if(reload) {
+			watcher = new RuleSetWatcher(config, getReloadInterval(filterConfig), debug);
+			watcher.start();
+		}
+	}
+	
+	private long getReloadInterval(FilterConfig filterConfig) {
+		long interval = RuleSetWatcher.DEFAULT_INTERVAL;
+		String value = filterConfig.getInitParameter("reload-interval");
+		
+		if(value != null) {
+			try {
+				interval = Long.parseLong(value.trim());
+			} catch (NumberFormatException nfe) {
+				System.out.println("[Stinger-Filter] Invalid reload-interval " + value + ", using " + interval + "ms");
+			}
+		}
+		
+		return interval;
+	}
+	
+	private int getIntParameter(FilterConfig filterConfig, String name, int defaultValue) {
+		int result = defaultValue;
+		String value = filterConfig.getInitParameter(name);
+		
+		if(value != null) {
+			try {
+				result = Integer.parseInt(value.trim());
+			} catch (NumberFormatException nfe) {
+				System.out.println("[Stinger-Filter] Invalid " + name + " " + value + ", using " + result);
+			}
+		}
+		
+		return result;
 	}
 	
 	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) {
+		HttpServletRequest hRequest = null;
 		MutableHttpRequest mRequest = null;
 		HttpServletResponse hResponse = null;
-		
+		/** Use one rule set for the whole request even if a reload happens meanwhile **/
+		RuleSet ruleSet = Stinger.getRuleSet();
 		
 		if(request instanceof HttpServletRequest && response instanceof HttpServletResponse) {
-			mRequest = new MutableHttpRequest((HttpServletRequest)request);
+			hRequest = (HttpServletRequest)request;
 			hResponse = (HttpServletResponse)response;
 			
-			
-			if(reload) {
-				initRuleSet();
-			}
-			
 			try {
 				
-				if(isValidRequest(mRequest)) {
-                                    if(!ruleSet.isExcluded(mRequest.getRequestURI())) {
-                                            stinger.validate(mRequest, hResponse);
+				/** Excluded requests are passed on as-is, without wrapping or parsing parameters **/
+				if(ruleSet.isExcluded(hRequest.getRequestURI())) {
+					chain.doFilter(hRequest, hResponse);
+				} else if(isValidated(hRequest)) {
+					/** Second pass of a request validated in async mode **/
+					mRequest = (MutableHttpRequest)hRequest.getAttribute(AsyncValidation.REQUEST_ATTRIBUTE);
+					hRequest.removeAttribute(AsyncValidation.REQUEST_ATTRIBUTE);
+					chain.doFilter(mRequest, hResponse);
+				} else if(isValidRequest(hRequest)) {
+                                    boolean nonBlocking = async && hRequest.isAsyncSupported();
+                                    BodyReader reader = null;
+                                    
+                                    mRequest = new MutableHttpRequest(hRequest);
+                                    reader = createBodyReader(ruleSet, mRequest, nonBlocking);
+                                    
+                                    if(nonBlocking && reader != null) {
+                                        /** The chain goes on once the body is read, see AsyncValidation **/
+                                        new AsyncValidation(stinger, ruleSet, mRequest, hResponse, reader, errorPage).start(hRequest.startAsync(), hRequest.getInputStream(), asyncTimeout);
+                                        return;
                                     }
+                                    
+                                    try {
+                                        if(reader != null) {
+                                            reader.read(hRequest.getInputStream());
+                                        }
+                                        
+                                        stinger.validate(ruleSet, mRequest, hResponse);
 
-                                    if (debug)System.out.println("We're done processing, so do next filter in the chain");
-                                    //mRequest.loadWLRequest(wlRequest);
-                                    //wlRequest.setParameter("blah", "blah");
-                                    chain.doFilter(mRequest, hResponse);
+                                        if (debug)System.out.println("We're done processing, so do next filter in the chain");
+                                        //mRequest.loadWLRequest(wlRequest);
+                                        //wlRequest.setParameter("blah", "blah");
+                                        chain.doFilter(mRequest, hResponse);
+                                    } finally {
+                                        /** Spooled files only live as long as the request **/
+                                        mRequest.deleteUploadedFiles();
+                                        mRequest.deleteBody();
+                                    }
                                 } else {
-					System.out.println("[Stinger-Filter] caught a POST request with an incorrect content type header (" + mRequest.getContentType() + ") . Redirected to error page at " + errorPage);
+					System.out.println("[Stinger-Filter] caught a POST request with an incorrect content type header (" + hRequest.getContentType() + ") . Redirected to error page at " + errorPage);
 					hResponse.sendRedirect(errorPage);
 				} 
                         }
@@ -127,32 +253,111 @@ public class StingerFilter implements Filter {
 	 * The Stinger validation relies on the J2EE servlet framework.
 	 * By default, the framework only supports standard url-form-encoding
 	 * for POST requests. If a multipart request comes through, however,
-	 * request.getParameterNames() will return an empty enumeration. As a
-	 * quick fix, we do not currently accept multipart-form-encoded post
-	 * requests.
+	 * request.getParameterNames() will return an empty enumeration. Such
+	 * requests are therefore parsed by Stinger itself, as are JSON bodies
+	 * (see createBodyReader). Any other content type is rejected.
 	 * @param request
 	 * @return
 	 */
-	private boolean isValidRequest(MutableHttpRequest request)
+	private boolean isValidRequest(HttpServletRequest request)
 	{
 		boolean valid = true;
 		String method = request.getMethod();
 		String header = request.getContentType();
 		
-		if(POST.equalsIgnoreCase(method) && !URL_FORM_ENCODING.equalsIgnoreCase(header))
+		if(POST.equalsIgnoreCase(method) && !URL_FORM_ENCODING.equalsIgnoreCase(header) && !isMultipart(request) && !isJson(request))
 		{
 			valid = false;
 		}
 		
 		return valid;
 	}
-        
-	public void destroy() {
+	
+	private boolean isValidated(HttpServletRequest request) {
+		return request.getDispatcherType() == DispatcherType.ASYNC && request.getAttribute(AsyncValidation.REQUEST_ATTRIBUTE) != null;
+	}
+	
+	private boolean isMultipart(HttpServletRequest request) {
+		String header = request.getContentType();
+		
+		return POST.equalsIgnoreCase(request.getMethod()) && header != null && header.toLowerCase().startsWith(MULTIPART_FORM_DATA);
+	}
+	
+	private boolean isJson(HttpServletRequest request) {
+		String header = request.getContentType();
 		
+		return POST.equalsIgnoreCase(request.getMethod()) && header != null && header.toLowerCase().startsWith(JSON);
 	}
 	
-	private synchronized void initRuleSet() {
-		ruleSet = new RuleSet(config, debug);
-		Stinger.setRuleSet(ruleSet);
+	private boolean isForm(HttpServletRequest request) {
+		return POST.equalsIgnoreCase(request.getMethod()) && URL_FORM_ENCODING.equalsIgnoreCase(request.getContentType());
+	}
+	
+	/**
+	 * Returns the reader for a body Stinger parses itself, or null if the
+	 * body is left to the container. Multipart text fields and form
+	 * parameters become parameters of the request and files are spooled,
+	 * so downstream servlets read the validated values without parsing the
+	 * body again. A JSON or multipart body is copied so the servlet can read it again.
+	 * @param forms true to parse form bodies too, which the container does
+	 * with blocking reads otherwise
+	 */
+	private BodyReader createBodyReader(RuleSet ruleSet, MutableHttpRequest request, boolean forms) throws IOException {
+		ValidationPlan plan = ruleSet.getPlan(request.getRequestURI());
+		
+		/** Leave an oversized body unread, Stinger.validate stops the request **/
+		if(Limits.exceeds(request.getContentLength(), plan.getLimits().getMaxBodySize())) {
+			return null;
+		}
+		
+		if(isMultipart(request)) {
+			String boundary = MultipartParser.getBoundary(request.getContentType());
+			MultipartCollector collector = null;
+			
+			if(boundary == null) {
+				throw new MalformedRequestException("Multipart request without a boundary");
+			}
+			
+			SpoolBuffer body = new SpoolBuffer(multipartThreshold, multipartDirectory);
+			
+			collector = new MultipartCollector(request, plan, multipartThreshold, multipartMaxField, multipartDirectory);
+			request.setMultipartBody(body);
+			
+			return new BodyReader(new MultipartParser(boundary, collector), collector, body);
+		} else if(isJson(request)) {
+			SpoolBuffer body = new SpoolBuffer(multipartThreshold, multipartDirectory);
+			JsonCollector collector = new JsonCollector(request, plan, ruleSet.getSignatures());
+			
+			/** Reject a body that announces its size up front without reading it **/
+			if(request.getContentLength() > jsonMaxSize) {
+				throw new MalformedRequestException("JSON body exceeds " + jsonMaxSize + " bytes");
+			}
+			
+			request.setJsonBody(body);
+			
+			return new BodyReader(new JsonParser(collector, jsonMaxDepth, jsonMaxKeys, jsonMaxSize), collector, body);
+		} else if(forms && isForm(request)) {
+			String encoding = request.getCharacterEncoding();
+			FormCollector collector = new FormCollector(request, plan);
+			
+			/** Form fields are limited like multipart text fields **/
+			return new BodyReader(new FormParser(collector, encoding != null ? encoding : FORM_ENCODING, multipartMaxField), collector, null);
+		}
+		
+		return null;
+	}
+        
+	public void destroy() {
+		if(watcher != null) {
+			watcher.shutdown();
+			watcher = null;
+		}
+		
+		Metrics.unregister();
+		
+		/** Log the open aggregate windows, then write out the log records still queued **/
+		Aggregate.shutdown();
+		AsyncLogWriter.closeAll();
+		JournalWriter.closeAll();
 	}
 }
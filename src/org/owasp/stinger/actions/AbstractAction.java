@@ -28,6 +28,7 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.owasp.stinger.BreakChainException;
 import org.owasp.stinger.http.MutableHttpRequest;
+import org.owasp.stinger.rules.Rule;
 import org.owasp.stinger.violation.Violation;
 
 public abstract class AbstractAction {
@@ -43,5 +44,23 @@ public abstract class AbstractAction {
 		parameters.put(name, value);
 	}
 	
+	/**
+	 * Called once all parameters are set, before the first doAction.
+	 * Actions override this to do their setup up front instead of per
+	 * violation.
+	 */
+	public void init() {
+		
+	}
+	
+	/**
+	 * Called after init when the action belongs to the missing or
+	 * malformed category of a rule, so the action can prepare whatever it
+	 * needs for that rule while the SVDL file is loaded.
+	 */
+	public void init(Rule rule) {
+		
+	}
+	
 	public abstract void doAction(Violation violation, MutableHttpRequest request, HttpServletResponse response) throws BreakChainException;
 }
@@ -0,0 +1,335 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+
+package org.owasp.stinger.actions;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.owasp.stinger.Stinger;
+import org.owasp.stinger.http.MutableHttpRequest;
+import org.owasp.stinger.rules.RuleSet;
+import org.owasp.stinger.util.AsyncLogWriter;
+import org.owasp.stinger.violation.Violation;
+
+/**
+ * Counts violations per rule, category, remote IP and rule set path and
+ * logs one summary record per key and window instead of one record per
+ * violation. The first few violations of each key and window are also
+ * logged as samples. Parameters:
+ *
+ * log - the log file, written through the shared AsyncLogWriter
+ * level - log level, default INFO
+ * window - window length in milliseconds, default 60000
+ * samples - raw samples per key and window, default 3
+ * max-keys - distinct keys tracked, further violations count under *, default 10000
+ * message - MessageTemplate for the samples
+ */
+public class Aggregate extends AbstractAction {
+	
+	public final static long DEFAULT_WINDOW = 60000;
+	
+	public final static int DEFAULT_SAMPLES = 3;
+	
+	public final static int DEFAULT_MAX_KEYS = 10000;
+	
+	private final static String DEFAULT_MESSAGE = "%name from %ip: %encoded_value";
+	
+	private final static String ANY = "*";
+	
+	/** One thread runs the windows of every Aggregate action **/
+	private static ScheduledExecutorService timer = null;
+	
+	/** Windows scheduled on the timer, guarded by Aggregate.class **/
+	private final static LinkedList windows = new LinkedList();
+	
+	private final ConcurrentHashMap counters = new ConcurrentHashMap();
+	
+	private final Counter overflow = new Counter(ANY, ANY, ANY, ANY);
+	
+	private AsyncLogWriter writer = null;
+	
+	private Level level = Level.INFO;
+	
+	private MessageTemplate message = null;
+	
+	private long window = DEFAULT_WINDOW;
+	
+	private int samples = DEFAULT_SAMPLES;
+	
+	private int maxKeys = DEFAULT_MAX_KEYS;
+	
+	/** Counts of one key **/
+	private static class Counter {
+		
+		private final String rule;
+		
+		private final String category;
+		
+		private final String ip;
+		
+		private final String path;
+		
+		/** Striped, so concurrent violations of one key do not contend **/
+		private final LongAdder count = new LongAdder();
+		
+		private final AtomicInteger sampled = new AtomicInteger();
+		
+		/** Windows in a row without violations **/
+		private int idle = 0;
+		
+		private Counter(String rule, String category, String ip, String path) {
+			this.rule = rule;
+			this.category = category;
+			this.ip = ip;
+			this.path = path;
+		}
+	}
+	
+	/**
+	 * Closes a window of an action. Holds the action weakly so that
+	 * actions of a replaced RuleSet can be collected; the task then
+	 * cancels itself.
+	 */
+	private static class Window implements Runnable {
+		
+		private final WeakReference action;
+		
+		private volatile ScheduledFuture future = null;
+		
+		private Window(Aggregate action) {
+			this.action = new WeakReference(action);
+		}
+		
+		public void run() {
+			Aggregate aggregate = (Aggregate)action.get();
+			
+			if(aggregate == null) {
+				future.cancel(false);
+				
+				synchronized(Aggregate.class) {
+					windows.remove(this);
+				}
+			} else {
+				aggregate.closeWindow();
+			}
+		}
+	}
+	
+	public Aggregate() {
+	
+	}
+	
+	public void init() {
+		String log = getParameter("log");
+		String template = getParameter("message");
+		Window task = null;
+		
+		try {
+			level = Level.parse(getParameter("level").toUpperCase());
+		} catch (RuntimeException re) {
+			level = Level.INFO;
+		}
+		
+		window = getLong("window", DEFAULT_WINDOW);
+		samples = (int)getLong("samples", DEFAULT_SAMPLES);
+		maxKeys = (int)getLong("max-keys", DEFAULT_MAX_KEYS);
+		message = new MessageTemplate(template != null ? template : DEFAULT_MESSAGE);
+		
+		if(log == null) {
+			System.out.println("[Stinger-Filter] Aggregate action without a log file, violations will not be logged");
+			return;
+		}
+		
+		try {
+			writer = AsyncLogWriter.getWriter(log, 1024 * 1024, 1, false, AsyncLogWriter.DEFAULT_CAPACITY, AsyncLogWriter.DROP, AsyncLogWriter.DEFAULT_FLUSH_SIZE, AsyncLogWriter.DEFAULT_FLUSH_INTERVAL);
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+			return;
+		}
+		
+		task = new Window(this);
+		
+		synchronized(Aggregate.class) {
+			task.future = getTimer().scheduleAtFixedRate(task, window, window, TimeUnit.MILLISECONDS);
+			windows.add(task);
+		}
+	}
+	
+	/**
+	 * Stop the timer thread and log the window every action has open, so
+	 * no counts are lost. Call before AsyncLogWriter.closeAll when the
+	 * filter is destroyed; actions created afterwards start a new timer.
+	 */
+	public static void shutdown() {
+		ScheduledExecutorService stopped = null;
+		Window[] open = null;
+		
+		synchronized(Aggregate.class) {
+			stopped = timer;
+			open = (Window[])windows.toArray(new Window[windows.size()]);
+			timer = null;
+			windows.clear();
+		}
+		
+		if(stopped == null) {
+			return;
+		}
+		
+		/** Periodic tasks are cancelled, wait for a window being closed right now **/
+		stopped.shutdown();
+		
+		try {
+			stopped.awaitTermination(5, TimeUnit.SECONDS);
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+		
+		for(int i=0; i<open.length; i++) {
+			Aggregate aggregate = (Aggregate)open[i].action.get();
+			
+			if(aggregate != null) {
+				aggregate.closeWindow();
+			}
+		}
+	}
+	
+	private static ScheduledExecutorService getTimer() {
+		if(timer == null) {
+			timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "Stinger-Aggregate");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		
+		return timer;
+	}
+	
+	private long getLong(String name, long defaultValue) {
+		String value = getParameter(name);
+		long result = defaultValue;
+		
+		if(value != null) {
+			try {
+				result = Long.parseLong(value.trim());
+			} catch (NumberFormatException nfe) {
+				System.out.println("[Stinger-Filter] Invalid Aggregate " + name + " " + value + ", using " + defaultValue);
+			}
+		}
+		
+		return (result > 0 ? result : defaultValue);
+	}
+	
+	public void doAction(Violation violation, MutableHttpRequest request, HttpServletResponse response) {
+		String rule = null;
+		String category = null;
+		String ip = null;
+		String path = null;
+		String key = null;
+		Counter counter = null;
+		RuleSet set = Stinger.getRuleSet();
+		
+		if(writer == null) {
+			return;
+		}
+		
+		rule = String.valueOf(violation.getName());
+		category = String.valueOf(violation.getCategory());
+		ip = String.valueOf(request.getRemoteAddr());
+		/** The rule set path rather than the uri keeps the number of keys bounded **/
+		path = (set != null && violation.getUri() != null ? set.getPlan(violation.getUri()).getPath() : ANY);
+		key = rule + '\n' + category + '\n' + ip + '\n' + path;
+		counter = (Counter)counters.get(key);
+		
+		if(counter == null) {
+			if(counters.size() >= maxKeys) {
+				counter = overflow;
+			} else {
+				Counter created = new Counter(rule, category, ip, path);
+				
+				counter = (Counter)counters.putIfAbsent(key, created);
+				counter = (counter != null ? counter : created);
+			}
+		}
+		
+		counter.count.increment();
+		
+		if(counter.sampled.get() < samples && counter.sampled.incrementAndGet() <= samples) {
+			writer.write(new LogRecord(level, "Aggregate sample: " + message.render(violation, request)));
+		}
+	}
+	
+	/**
+	 * Log the summary of every key seen in the window that just ended
+	 */
+	private void closeWindow() {
+		Iterator itr = counters.entrySet().iterator();
+		
+		while(itr.hasNext()) {
+			Map.Entry entry = (Map.Entry)itr.next();
+			Counter counter = (Counter)entry.getValue();
+			
+			if(!summarize(counter)) {
+				/** Forget keys that stayed quiet for a whole window **/
+				if(++counter.idle > 1) {
+					counters.remove(entry.getKey(), counter);
+				}
+			}
+		}
+		
+		summarize(overflow);
+	}
+	
+	private boolean summarize(Counter counter) {
+		long count = counter.count.sumThenReset();
+		
+		counter.sampled.set(0);
+		
+		if(count == 0) {
+			return false;
+		}
+		
+		counter.idle = 0;
+		writer.write(new LogRecord(level, "Aggregate: " + count + " violation(s) in " + window + "ms rule=" + counter.rule + " category=" + counter.category + " ip=" + counter.ip + " path=" + counter.path));
+		
+		return true;
+	}
+}
@@ -30,17 +30,30 @@ import javax.servlet.http.HttpServletResponse;
 import org.owasp.stinger.http.MutableHttpRequest;
 import org.owasp.stinger.violation.Violation;
 
+/**
+ * Writes a message box into the response. The message parameter is a
+ * MessageTemplate whose placeholders are always HTML entity encoded.
+ */
 public class DisplayMessage extends AbstractAction {
 	
+	private final static String SUFFIX = "</div>\n</td></tr></table>\n";
+	
+	/** The markup before the message, with the bgcolor filled in **/
+	private String prefix = null;
+	
+	private MessageTemplate message = null;
+	
+	public void init() {
+		prefix = formatPrefix(getParameter("bgcolor"));
+		message = new MessageTemplate(getParameter("message"));
+	}
+	
+	private static String formatPrefix(String bgcolor) {
+		return "<table width=300 border=1 align=center bgcolor=" + bgcolor + " cellpadding=2>\n<tr><td>\n<div align=\"center\" >";
+	}
+	
 	public String formatMessage(String message, String bgcolor) {
-		StringBuffer buffer = new StringBuffer();
-		
-		buffer.append("<table width=300 border=1 align=center bgcolor=" + bgcolor + " cellpadding=2\n");
-		buffer.append("<tr><td>\n");
-		buffer.append("<div align=\"center\" >" + message + "</div>\n");
-		buffer.append("</td></tr></table>\n");
-		
-		return buffer.toString();
+		return formatPrefix(bgcolor) + message + SUFFIX;
 	}
 	
 	public void displayMessage(HttpServletResponse response, String message, String bgcolor) {
@@ -56,9 +69,16 @@ public class DisplayMessage extends AbstractAction {
 	}
 	
 	public void doAction(Violation violation, MutableHttpRequest request, HttpServletResponse response) {
-		String message = getParameter("message");
-		String bgcolor = getParameter("bgcolor");
+		StringBuilder buf = MessageTemplate.getBuilder();
+		
+		buf.append(prefix);
+		message.render(buf, violation, request, true);
+		buf.append(SUFFIX);
 		
-		displayMessage(response, message, bgcolor);
+		try {
+			response.getWriter().append(buf);
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+		}
 	}
 }
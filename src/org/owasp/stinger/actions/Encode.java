@@ -28,15 +28,37 @@ import org.owasp.stinger.util.EntityEncoder;
 import org.owasp.stinger.violation.Violation;
 import org.owasp.stinger.http.MutableHttpRequest;
 
+/**
+ * Encodes the offending value in place. The "context" parameter picks
+ * the encoding: html (the default), attribute, javascript or url.
+ */
 public class Encode extends AbstractAction {
 	
+	private int context = EntityEncoder.HTML;
+	
+	public void init() {
+		String name = getParameter("context");
+		
+		if(name != null) {
+			context = EntityEncoder.getContext(name);
+			
+			if(context < 0) {
+				System.out.println("[Stinger-Filter] unknown encode context " + name + ", using html");
+				context = EntityEncoder.HTML;
+			}
+		}
+	}
+	
 	private void entityEncode(MutableHttpRequest request, String name, String value) {
 		String result = null;
 		
 		if(value != null) {
-			result = EntityEncoder.HTMLEntityEncode(value);
+			result = EntityEncoder.encode(value, context);
 			
-			request.replaceParameterValue(name, value, result);
+			/** encode returns the same instance if nothing had to change **/
+			if(result != value) {
+				request.replaceParameterValue(name, value, result);
+			}
 		}
 	}
 	
@@ -0,0 +1,112 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+
+package org.owasp.stinger.actions;
+
+import java.io.IOException;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+
+import org.owasp.stinger.Stinger;
+import org.owasp.stinger.http.MutableHttpRequest;
+import org.owasp.stinger.journal.JournalDictionary;
+import org.owasp.stinger.journal.JournalReader;
+import org.owasp.stinger.journal.JournalWriter;
+import org.owasp.stinger.rules.RuleSet;
+import org.owasp.stinger.violation.Violation;
+
+/**
+ * Appends a fixed layout record for each violation to a memory-mapped
+ * journal, see JournalFormat. Parameters:
+ *
+ * directory - where the journal lives, default the working directory
+ * prefix - file name prefix, default stinger-journal
+ * segment-size - bytes per segment file, default 64MB
+ *
+ * Records name the rule set path rather than the request URI. Parameter
+ * names that have no rule are recorded as JournalDictionary.OTHER, the
+ * value excerpt still shows what was sent.
+ *
+ * The journal is queried with org.owasp.stinger.journal.JournalReader.
+ */
+public class Journal extends AbstractAction {
+	
+	private JournalWriter writer = null;
+	
+	public Journal() {
+	
+	}
+	
+	public void init() {
+		String directory = getParameter("directory");
+		String prefix = getParameter("prefix");
+		String segmentSize = getParameter("segment-size");
+		long size = JournalWriter.DEFAULT_SEGMENT_SIZE;
+		
+		if(segmentSize != null) {
+			try {
+				size = Long.parseLong(segmentSize.trim());
+			} catch (NumberFormatException nfe) {
+				System.out.println("[Stinger-Filter] Invalid Journal segment-size " + segmentSize + ", using " + size);
+			}
+		}
+		
+		try {
+			writer = JournalWriter.getWriter((directory != null ? directory : "."), (prefix != null ? prefix : JournalReader.DEFAULT_PREFIX), size);
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+		}
+	}
+	
+	public void doAction(Violation violation, MutableHttpRequest request, HttpServletResponse response) {
+		Cookie session = null;
+		RuleSet set = Stinger.getRuleSet();
+		String rule = null;
+		String path = null;
+		
+		if(writer == null) {
+			return;
+		}
+		
+		session = request.getCookie("JSESSIONID");
+		
+		/** Only strings of the SVDL file are interned, so requests cannot grow the dictionary **/
+		if(violation.getName() != null) {
+			rule = (set != null && set.isRuleName(violation.getName()) ? violation.getName() : JournalDictionary.OTHER);
+		}
+		
+		if(violation.getUri() != null) {
+			path = (set != null ? set.getPlan(violation.getUri()).getPath() : JournalDictionary.OTHER);
+		}
+		
+		writer.append(System.currentTimeMillis(),
+				rule,
+				(violation.getCategory() != null ? violation.getCategory().toString() : null),
+				(violation.getCategory() != null && violation.getSeverity() != null ? violation.getSeverity().toString() : null),
+				path,
+				request.getRemoteAddr(),
+				(session != null ? session.getValue() : null),
+				violation.getValue());
+	}
+}
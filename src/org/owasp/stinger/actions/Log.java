@@ -24,106 +24,85 @@ package org.owasp.stinger.actions;
 
 import java.io.IOException;
 
-import java.util.logging.Logger;
 import java.util.logging.LogRecord;
 import java.util.logging.Level;
-import java.util.logging.FileHandler;
 
 import javax.servlet.http.HttpServletResponse;
 
 import org.owasp.stinger.http.MutableHttpRequest;
+import org.owasp.stinger.util.AsyncLogWriter;
 import org.owasp.stinger.violation.Violation;
 
+/**
+ * Logs violations to a file. Records are queued to the shared
+ * AsyncLogWriter of the file and written on its background thread, so
+ * the request thread never waits on disk I/O. The optional buffer,
+ * policy (drop or block), flush-size and flush-interval parameters tune
+ * the writer; the first Log action for a file decides them. The message
+ * parameter is a MessageTemplate.
+ */
 public class Log extends AbstractAction {
 	
-	private static Logger logger = Logger.getLogger("org.owasp.stinger.actions.Log");
+	private AsyncLogWriter writer = null;
+	
+	private Level level = Level.INFO;
 	
-	private static FileHandler handler = null;
+	private MessageTemplate message = null;
 	
 	public Log() {
 		
 	}
 	
-	public void doAction(Violation violation, MutableHttpRequest request, HttpServletResponse response) {
-		FileHandler handler = null;
+	public void init() {
 		String log = getParameter("log");
-		String level = getParameter("level");
-		String message = getParameter("message");
-		String limit = getParameter("limit");
-		String count = getParameter("count");
-		String append = getParameter("append");
-		
-		/** Offender's IP **/
-		message = message.replaceAll("%ip", request.getRemoteAddr());
 		
-		/** Offender's Port **/
-//		message = message.replaceAll("%port", String.valueOf(request.getRemotePort()));
+		message = new MessageTemplate(getParameter("message"));
 		
-		/** Offending parameter name **/
-		if(violation.getName() != null) {
-			message = message.replaceAll("%name", violation.getName());
-		} else {
-			message = message.replaceAll("%name", "NULL");
-		}
-		
-		/** Offending parameter value **/
-		if(violation.getValue() != null) {
-			message = message.replaceAll("%value", violation.getValue());
-		} else {
-			message = message.replaceAll("%value", "NULL");
-		}
-		
-		/** Offending parameter value HTML Encoded **/
-		if(violation.getValue() != null) {
-			message = message.replaceAll("%encoded_value", violation.getValue());
-		} else {
-			message = message.replaceAll("%encoded_value", "NULL");
+		try {
+			level = Level.parse(getParameter("level").toUpperCase());
+		} catch (RuntimeException re) {
+			System.out.println("[Stinger-Filter] Invalid log level " + getParameter("level") + ", using INFO");
 		}
 		
-		/** Offender's JSESSIONID **/
-		if(request.getCookie("JSESSIONID") != null) {
-			message = message.replaceAll("%js", request.getCookie("JSESSIONID").getValue());
-		} else {
-			message = message.replaceAll("%js", "NULL");
+		if(log == null) {
+			System.out.println("[Stinger-Filter] Log action without a log file, violations will not be logged");
+			return;
 		}
 		
-		if(handler == null) {
-			handler = getHandler(log, limit, count, append);
-			logger.addHandler(handler);
+		try {
+			writer = AsyncLogWriter.getWriter(log,
+					getInt("limit", 1024 * 1024),
+					getInt("count", 1),
+					Boolean.valueOf(getParameter("append")).booleanValue(),
+					getInt("buffer", AsyncLogWriter.DEFAULT_CAPACITY),
+					getParameter("policy"),
+					getInt("flush-size", AsyncLogWriter.DEFAULT_FLUSH_SIZE),
+					getInt("flush-interval", (int)AsyncLogWriter.DEFAULT_FLUSH_INTERVAL));
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
 		}
-		
-		logger.log(new LogRecord(Level.parse(level.toUpperCase()), message));
-		handler.flush();
-		//handler.close();
 	}
 	
-	private synchronized FileHandler getHandler(String log, String limit, String count, String append) {
-		int l = -1;
-		int c = -1;
-		boolean a = false;
+	private int getInt(String name, int defaultValue) {
+		String value = getParameter(name);
+		int result = defaultValue;
 		
-		try {
-			l = Integer.parseInt(limit);
-			c = Integer.parseInt(count);
-			a = Boolean.getBoolean(append);
-		} catch (NumberFormatException nfe) {
-			nfe.printStackTrace();
-			l = 1024 * 1024;
-			c = 1;
-			return getHandler(log, l, c, a);
+		if(value != null) {
+			try {
+				result = Integer.parseInt(value.trim());
+			} catch (NumberFormatException nfe) {
+				System.out.println("[Stinger-Filter] Invalid Log " + name + " " + value + ", using " + defaultValue);
+			}
 		}
 		
-		return getHandler(log, l, c, a);
+		return result;
 	}
 	
-	private synchronized FileHandler getHandler(String log, int limit, int count, boolean append) {
-		
-		try {
-			handler = new FileHandler(log, limit, count, append);
-		} catch (IOException ioe) {
-			ioe.printStackTrace();
+	public void doAction(Violation violation, MutableHttpRequest request, HttpServletResponse response) {
+		if(writer == null) {
+			return;
 		}
 		
-		return handler;
+		writer.write(new LogRecord(level, message.render(violation, request)));
 	}
 }
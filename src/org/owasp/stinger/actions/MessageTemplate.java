@@ -0,0 +1,183 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+
+package org.owasp.stinger.actions;
+
+import java.util.LinkedList;
+
+import javax.servlet.http.Cookie;
+
+import org.owasp.stinger.http.MutableHttpRequest;
+import org.owasp.stinger.util.EntityEncoder;
+import org.owasp.stinger.violation.Violation;
+
+/**
+ * A violation message parsed once into literal text and placeholders:
+ *
+ * %ip - the offender's IP address
+ * %name - the offending parameter or cookie name
+ * %value - the offending value
+ * %encoded_value - the offending value, HTML entity encoded
+ * %js - the offender's JSESSIONID
+ *
+ * Missing values render as NULL. Anything else after a '%' is literal.
+ */
+public class MessageTemplate {
+	
+	private final static String[] NAMES = { "%encoded_value", "%value", "%name", "%ip", "%js" };
+	
+	private final static int ENCODED_VALUE = 0;
+	
+	private final static int VALUE = 1;
+	
+	private final static int NAME = 2;
+	
+	private final static int IP = 3;
+	
+	private final static int JS = 4;
+	
+	private final static String NULL = "NULL";
+	
+	/** Builders above this size are not kept for reuse **/
+	private final static int MAX_BUILDER = 8192;
+	
+	private final static ThreadLocal builders = new ThreadLocal() {
+		protected Object initialValue() {
+			return new StringBuilder(256);
+		}
+	};
+	
+	/** Literal text as a String, placeholders as an Integer **/
+	private final Object[] segments;
+	
+	public MessageTemplate(String message) {
+		LinkedList list = new LinkedList();
+		int start = 0;
+		int pos = 0;
+		
+		if(message == null) {
+			message = "";
+		}
+		
+		while((pos = message.indexOf('%', pos)) >= 0) {
+			int placeholder = -1;
+			
+			for(int i=0; i<NAMES.length && placeholder < 0; i++) {
+				if(message.startsWith(NAMES[i], pos)) {
+					placeholder = i;
+				}
+			}
+			
+			if(placeholder < 0) {
+				pos++;
+				continue;
+			}
+			
+			if(pos > start) {
+				list.add(message.substring(start, pos));
+			}
+			
+			list.add(Integer.valueOf(placeholder));
+			pos += NAMES[placeholder].length();
+			start = pos;
+		}
+		
+		if(start < message.length()) {
+			list.add(message.substring(start));
+		}
+		
+		segments = list.toArray();
+	}
+	
+	/**
+	 * Returns an empty builder of the calling thread
+	 */
+	public static StringBuilder getBuilder() {
+		StringBuilder buf = (StringBuilder)builders.get();
+		
+		if(buf.capacity() > MAX_BUILDER) {
+			buf = new StringBuilder(256);
+			builders.set(buf);
+		}
+		
+		buf.setLength(0);
+		
+		return buf;
+	}
+	
+	/**
+	 * Render the message for the violation
+	 */
+	public String render(Violation violation, MutableHttpRequest request) {
+		StringBuilder buf = getBuilder();
+		
+		render(buf, violation, request, false);
+		
+		return buf.toString();
+	}
+	
+	/**
+	 * Append the message for the violation to buf. With encodeAll every
+	 * placeholder is HTML entity encoded, for messages that end up in a page.
+	 */
+	public void render(StringBuilder buf, Violation violation, MutableHttpRequest request, boolean encodeAll) {
+		for(int i=0; i<segments.length; i++) {
+			Object segment = segments[i];
+			String value = null;
+			boolean encode = encodeAll;
+			
+			if(segment instanceof String) {
+				buf.append((String)segment);
+				continue;
+			}
+			
+			switch(((Integer)segment).intValue()) {
+				case ENCODED_VALUE:
+					value = violation.getValue();
+					encode = true;
+					break;
+				case VALUE:
+					value = violation.getValue();
+					break;
+				case NAME:
+					value = violation.getName();
+					break;
+				case IP:
+					value = request.getRemoteAddr();
+					break;
+				case JS:
+					Cookie cookie = request.getCookie("JSESSIONID");
+					value = (cookie != null ? cookie.getValue() : null);
+					break;
+			}
+			
+			if(value == null) {
+				buf.append(NULL);
+			} else if(encode) {
+				EntityEncoder.HTMLEntityEncode(value, buf);
+			} else {
+				buf.append(value);
+			}
+		}
+	}
+}
@@ -23,27 +23,79 @@
 package org.owasp.stinger.actions;
 
 import java.util.regex.Pattern;
+
 import javax.servlet.http.HttpServletResponse;
 
-import org.owasp.stinger.util.EntityEncoder;
+import org.owasp.stinger.regex.MatcherFactory;
+import org.owasp.stinger.rules.Rule;
 import org.owasp.stinger.violation.Violation;
 import org.owasp.stinger.http.MutableHttpRequest;
 
+/**
+ * Removes every char from the offending value that the rule's regex does
+ * not accept on its own. The chars the regex accepts are worked out into
+ * a bitset over all 65536 chars when the SVDL file is loaded, so
+ * scrubbing is a single pass over the value.
+ *
+ * Only violations of the rule the action belongs to are scrubbed; under
+ * a limits or signature-set element the action does nothing.
+ */
 public class Scrub extends AbstractAction {
 	
-	private void scrubString(MutableHttpRequest request, String name, String value, String regex) {
-		StringBuffer result = new StringBuffer();
-		
-		if(value != null && !"".equals(value)) {
-			Pattern pattern = Pattern.compile(regex);
-			for (int i=0;i<value.length(); i++){
-				
-				if (pattern.matcher(value.substring(i,i+1)).matches()){
-					result.append(value.substring(i,i+1));
-				}
+	/** long[1024] bitset of the rule, null if the action has no rule **/
+	private long[] whitelist = null;
+	
+	public void init(Rule rule) {
+		whitelist = MatcherFactory.acceptedChars(Pattern.compile(rule.getPattern()));
+	}
+	
+	private static boolean isAllowed(long[] bits, char c) {
+		return (bits[c >> 6] & (1L << c)) != 0;
+	}
+	
+	/**
+	 * Returns value without the chars the whitelist rejects, or value
+	 * itself if it has none
+	 */
+	static String scrub(String value, long[] bits) {
+		int length = value.length();
+		int i = 0;
+		char[] result = null;
+		int count = 0;
+		
+		while(i < length && isAllowed(bits, value.charAt(i))) {
+			i++;
+		}
+		
+		if(i == length) {
+			return value;
+		}
+		
+		result = new char[length - 1];
+		value.getChars(0, i, result, 0);
+		count = i;
+		
+		for(i++; i<length; i++) {
+			char c = value.charAt(i);
+			
+			if(isAllowed(bits, c)) {
+				result[count++] = c;
+			}
+		}
+		
+		return new String(result, 0, count);
+	}
+	
+	private void scrubString(MutableHttpRequest request, String name, String value) {
+		String result = null;
+		
+		if(value != null && !"".equals(value) && whitelist != null) {
+			result = scrub(value, whitelist);
+			
+			if(result != value) {
+				request.replaceParameterValue(name, value, result);
+				System.out.println("Scrubbed " + name + ", from value: " + value + " to: " + result);
 			}
-			request.replaceParameterValue(name, value, new String(result));
-			System.out.println("Scrubbed " + name + ", from value: " + value + " to: " + new String(result));
 		}
 	}
 	
@@ -53,8 +105,7 @@ public class Scrub extends AbstractAction {
 		
 		name = violation.getName();
 		value = violation.getValue();
-		String regex = violation.getRegEx();
 		
-		scrubString(request, name, value, regex);
+		scrubString(request, name, value);
 	}
 }
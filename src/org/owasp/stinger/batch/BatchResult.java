@@ -0,0 +1,200 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+package org.owasp.stinger.batch;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts of one chunk of a batch run, or of several merged chunks:
+ * violations per rule, category and severity with a few sample lines
+ * each.
+ */
+public class BatchResult {
+	
+	long lines = 0;
+	
+	long unparseable = 0;
+	
+	long excluded = 0;
+	
+	long violating = 0;
+	
+	long blocked = 0;
+	
+	/** Entry by "path name CATEGORY/SEVERITY" **/
+	private final HashMap entries = new HashMap();
+	
+	private final int maxSamples;
+	
+	BatchResult(int maxSamples) {
+		this.maxSamples = maxSamples;
+	}
+	
+	void add(String key, long offset, String line) {
+		Entry entry = (Entry)entries.get(key);
+		
+		if(entry == null) {
+			entry = new Entry(key);
+			entries.put(key, entry);
+		}
+		
+		entry.count++;
+		
+		if(entry.samples.size() < maxSamples) {
+			entry.samples.add(new Sample(offset, line));
+		}
+	}
+	
+	/**
+	 * Add the counts of a result for the chunk right after this one. Samples
+	 * stay the earliest ones in the file.
+	 */
+	void merge(BatchResult other) {
+		Iterator itr = other.entries.values().iterator();
+		
+		lines += other.lines;
+		unparseable += other.unparseable;
+		excluded += other.excluded;
+		violating += other.violating;
+		blocked += other.blocked;
+		
+		while(itr.hasNext()) {
+			Entry theirs = (Entry)itr.next();
+			Entry mine = (Entry)entries.get(theirs.key);
+			
+			if(mine == null) {
+				entries.put(theirs.key, theirs);
+			} else {
+				Iterator samples = theirs.samples.iterator();
+				
+				mine.count += theirs.count;
+				
+				while(samples.hasNext() && mine.samples.size() < maxSamples) {
+					mine.samples.add(samples.next());
+				}
+			}
+		}
+	}
+	
+	public long getLines() {
+		return lines;
+	}
+	
+	public long getUnparseable() {
+		return unparseable;
+	}
+	
+	public long getExcluded() {
+		return excluded;
+	}
+	
+	/**
+	 * Lines with at least one violation that is not ignored
+	 */
+	public long getViolating() {
+		return violating;
+	}
+	
+	/**
+	 * Lines with at least one fatal violation
+	 */
+	public long getBlocked() {
+		return blocked;
+	}
+	
+	/**
+	 * The entries, most frequent first
+	 */
+	public List getEntries() {
+		LinkedList result = new LinkedList(entries.values());
+		
+		Collections.sort(result, new Comparator() {
+			public int compare(Object o1, Object o2) {
+				Entry e1 = (Entry)o1;
+				Entry e2 = (Entry)o2;
+				
+				if(e1.count != e2.count) {
+					return (e1.count > e2.count ? -1 : 1);
+				}
+				
+				return e1.key.compareTo(e2.key);
+			}
+		});
+		
+		return result;
+	}
+	
+	public static class Entry {
+		
+		private final String key;
+		
+		private long count = 0;
+		
+		private final LinkedList samples = new LinkedList();
+		
+		Entry(String key) {
+			this.key = key;
+		}
+		
+		public String getKey() {
+			return key;
+		}
+		
+		public long getCount() {
+			return count;
+		}
+		
+		/**
+		 * The Samples in file order
+		 */
+		public List getSamples() {
+			return samples;
+		}
+	}
+	
+	public static class Sample {
+		
+		private final long offset;
+		
+		private final String line;
+		
+		Sample(long offset, String line) {
+			this.offset = offset;
+			this.line = line;
+		}
+		
+		public long getOffset() {
+			return offset;
+		}
+		
+		public String getLine() {
+			return line;
+		}
+	}
+}
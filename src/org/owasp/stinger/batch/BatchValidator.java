@@ -0,0 +1,208 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+package org.owasp.stinger.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+
+import org.owasp.stinger.metrics.Metrics;
+import org.owasp.stinger.rules.RuleSet;
+
+/**
+ * Validates every request of an access log against an SVDL file offline,
+ * to see what a rule set would have flagged. The log is memory-mapped in
+ * chunks that are validated in parallel with fork-join; the URI and query
+ * string of each line are checked against the limits, signatures and
+ * rules with the same rule resolution as Stinger.validate. Cookies and
+ * bodies are not logged and therefore not checked.
+ *
+ * Usage: BatchValidator config.xml access.log [options]
+ *
+ *   -samples n         sample lines per rule and category, default 3
+ *   -chunk bytes       bytes per chunk, default 16777216
+ *   -threads n         parallelism, default the number of processors
+ *   -base url          prefix of the URL the uri rule sees, default http://localhost
+ *
+ * Lines are expected in Apache/Tomcat common or combined format.
+ */
+public class BatchValidator {
+	
+	public final static int DEFAULT_SAMPLES = 3;
+	
+	public final static long DEFAULT_CHUNK_SIZE = 16 * 1024 * 1024;
+	
+	public final static String DEFAULT_BASE = "http://localhost";
+	
+	/** Longest sample line printed **/
+	private final static int MAX_SAMPLE = 200;
+	
+	private String config = null;
+	
+	private File log = null;
+	
+	private int samples = DEFAULT_SAMPLES;
+	
+	private long chunkSize = DEFAULT_CHUNK_SIZE;
+	
+	private int threads = Runtime.getRuntime().availableProcessors();
+	
+	private String base = DEFAULT_BASE;
+	
+	private RuleSet ruleSet = null;
+	
+	public static void main(String[] args) {
+		BatchValidator validator = new BatchValidator();
+		
+		try {
+			validator.parseArguments(args);
+			validator.run();
+		} catch (IllegalArgumentException iae) {
+			System.err.println(iae.getMessage());
+			System.err.println("Usage: BatchValidator config.xml access.log [-samples n] [-chunk bytes] [-threads n] [-base url]");
+			System.exit(1);
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+			System.exit(2);
+		}
+	}
+	
+	private void parseArguments(String[] args) {
+		for(int i=0; i<args.length; i++) {
+			String arg = args[i];
+			
+			if(arg.startsWith("-")) {
+				if(i + 1 >= args.length) {
+					throw new IllegalArgumentException("Missing value for " + arg);
+				}
+				
+				String value = args[++i];
+				
+				if(arg.equals("-samples")) {
+					samples = Integer.parseInt(value);
+				} else if(arg.equals("-chunk")) {
+					chunkSize = Math.max(4096, Long.parseLong(value));
+				} else if(arg.equals("-threads")) {
+					threads = Math.max(1, Integer.parseInt(value));
+				} else if(arg.equals("-base")) {
+					base = value;
+				} else {
+					throw new IllegalArgumentException("Unknown option " + arg);
+				}
+			} else if(config == null) {
+				config = arg;
+			} else if(log == null) {
+				log = new File(arg);
+			} else {
+				throw new IllegalArgumentException("Unexpected argument " + arg);
+			}
+		}
+		
+		if(config == null || log == null) {
+			throw new IllegalArgumentException("No SVDL file or access log given");
+		}
+	}
+	
+	private void run() throws IOException {
+		long started = 0;
+		BatchResult result = null;
+		
+		/** Rules would otherwise contend on their runtime counters **/
+		Metrics.setEnabled(false);
+		ruleSet = new RuleSet(config, false);
+		
+		started = System.currentTimeMillis();
+		result = validate(log);
+		
+		print(result, System.currentTimeMillis() - started);
+	}
+	
+	/**
+	 * Validate the whole file with the loaded rule set
+	 */
+	public BatchResult validate(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		
+		try {
+			FileChannel channel = raf.getChannel();
+			long size = channel.size();
+			
+			if(size == 0) {
+				return new BatchResult(samples);
+			}
+			
+			return (BatchResult)pool.invoke(new ChunkTask(this, channel, size, 0, size));
+		} finally {
+			pool.shutdown();
+			raf.close();
+		}
+	}
+	
+	private void print(BatchResult result, long elapsed) {
+		Iterator itr = result.getEntries().iterator();
+		
+		System.out.println("lines: " + result.getLines() + ", unparseable: " + result.getUnparseable() + ", excluded: " + result.getExcluded());
+		System.out.println("lines with violations: " + result.getViolating() + ", blocked by fatal violations: " + result.getBlocked());
+		System.out.println("elapsed: " + elapsed + "ms, " + (log.length() * 1000 / Math.max(elapsed, 1) / (1024 * 1024)) + " MB/s");
+		System.out.println();
+		System.out.println("violations per rule:");
+		
+		while(itr.hasNext()) {
+			BatchResult.Entry entry = (BatchResult.Entry)itr.next();
+			Iterator samples = entry.getSamples().iterator();
+			
+			System.out.println("  " + entry.getCount() + "  " + entry.getKey());
+			
+			while(samples.hasNext()) {
+				BatchResult.Sample sample = (BatchResult.Sample)samples.next();
+				String line = sample.getLine();
+				
+				if(line.length() > MAX_SAMPLE) {
+					line = line.substring(0, MAX_SAMPLE) + "...";
+				}
+				
+				System.out.println("      @" + sample.getOffset() + ": " + line);
+			}
+		}
+	}
+	
+	RuleSet getRuleSet() {
+		return ruleSet;
+	}
+	
+	int getSamples() {
+		return samples;
+	}
+	
+	long getChunkSize() {
+		return chunkSize;
+	}
+	
+	String getBase() {
+		return base;
+	}
+}
@@ -0,0 +1,332 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+package org.owasp.stinger.batch;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashSet;
+import java.util.concurrent.RecursiveTask;
+
+import org.owasp.stinger.Category;
+import org.owasp.stinger.Severity;
+import org.owasp.stinger.rules.Limits;
+import org.owasp.stinger.rules.Rule;
+import org.owasp.stinger.rules.RuleSet;
+import org.owasp.stinger.rules.SignatureSet;
+import org.owasp.stinger.rules.ValidationPlan;
+import org.owasp.stinger.util.PercentDecoder;
+
+/**
+ * Validates the access log lines that start in [start, end) of the file.
+ * Ranges larger than the chunk size are split in halves and validated in
+ * parallel. A line belongs to the chunk it starts in, so each chunk skips
+ * its partial first line and reads its last line past the end.
+ */
+class ChunkTask extends RecursiveTask {
+	
+	private final static long serialVersionUID = 0x0B0D0002;
+	
+	/** Longer lines are counted as unparseable **/
+	final static int MAX_LINE = 64 * 1024;
+	
+	private final BatchValidator validator;
+	
+	private final FileChannel channel;
+	
+	private final long size;
+	
+	private final long start;
+	
+	private final long end;
+	
+	ChunkTask(BatchValidator validator, FileChannel channel, long size, long start, long end) {
+		this.validator = validator;
+		this.channel = channel;
+		this.size = size;
+		this.start = start;
+		this.end = end;
+	}
+	
+	protected Object compute() {
+		if(end - start > validator.getChunkSize()) {
+			long middle = start + (end - start) / 2;
+			ChunkTask left = new ChunkTask(validator, channel, size, start, middle);
+			ChunkTask right = new ChunkTask(validator, channel, size, middle, end);
+			BatchResult result = null;
+			
+			left.fork();
+			result = (BatchResult)right.compute();
+			
+			BatchResult leftResult = (BatchResult)left.join();
+			leftResult.merge(result);
+			
+			return leftResult;
+		}
+		
+		try {
+			return scan();
+		} catch (IOException ioe) {
+			throw new RuntimeException("Unable to read " + start + "-" + end + ": " + ioe.getMessage(), ioe);
+		}
+	}
+	
+	private BatchResult scan() throws IOException {
+		BatchResult result = new BatchResult(validator.getSamples());
+		/** Map one byte early to see whether the chunk starts a line **/
+		long base = (start > 0 ? start - 1 : 0);
+		long mapEnd = Math.min(size, end + MAX_LINE);
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, base, mapEnd - base);
+		/** For bulk copies of whole lines **/
+		ByteBuffer view = buffer.duplicate();
+		int limit = buffer.limit();
+		int last = (int)(end - base);
+		byte[] line = new byte[256];
+		int pos = 0;
+		
+		if(start > 0) {
+			while(pos < limit && buffer.get(pos) != '\n') {
+				pos++;
+			}
+			
+			pos++;
+		}
+		
+		while(pos < last) {
+			int newline = pos;
+			int length = 0;
+			
+			while(newline < limit && buffer.get(newline) != '\n') {
+				newline++;
+			}
+			
+			if(newline == limit && mapEnd < size) {
+				/** No end of line within MAX_LINE bytes **/
+				result.lines++;
+				result.unparseable++;
+				break;
+			}
+			
+			length = newline - pos;
+			
+			if(length > 0 && buffer.get(newline - 1) == '\r') {
+				length--;
+			}
+			
+			if(length > line.length) {
+				line = new byte[Math.max(length, line.length * 2)];
+			}
+			
+			view.position(pos);
+			view.get(line, 0, length);
+			
+			if(length > 0) {
+				result.lines++;
+				validate(new String(line, 0, length, "ISO-8859-1"), base + pos, result);
+			}
+			
+			pos = newline + 1;
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Check the request of one access log line the way Stinger.validate
+	 * checks a request, without the cookie checks and the body and cookie
+	 * limits since access logs carry no cookies or body
+	 */
+	private void validate(String line, long offset, BatchResult result) {
+		RuleSet set = validator.getRuleSet();
+		int quote = line.indexOf('"');
+		int methodEnd = (quote >= 0 ? line.indexOf(' ', quote + 1) : -1);
+		int targetEnd = -1;
+		String target = null;
+		String uri = null;
+		String query = null;
+		String[] pairs = null;
+		ValidationPlan plan = null;
+		Limits limits = null;
+		SignatureSet signatures = set.getSignatures();
+		Rule[] required = null;
+		HashSet names = new HashSet();
+		Status status = new Status();
+		boolean nameReported = false;
+		boolean valueReported = false;
+		
+		if(methodEnd < 0) {
+			result.unparseable++;
+			return;
+		}
+		
+		targetEnd = line.indexOf(' ', methodEnd + 1);
+		
+		if(targetEnd < 0 || line.indexOf('"', methodEnd + 1) < targetEnd) {
+			targetEnd = line.indexOf('"', methodEnd + 1);
+		}
+		
+		if(targetEnd < 0) {
+			result.unparseable++;
+			return;
+		}
+		
+		target = line.substring(methodEnd + 1, targetEnd);
+		uri = target;
+		
+		if(target.indexOf('?') >= 0) {
+			uri = target.substring(0, target.indexOf('?'));
+			query = target.substring(target.indexOf('?') + 1);
+		}
+		
+		if(set.isExcluded(uri)) {
+			result.excluded++;
+			return;
+		}
+		
+		plan = set.getPlan(uri);
+		limits = plan.getLimits();
+		pairs = (query != null && query.length() > 0 ? query.split("&") : new String[0]);
+		
+		if(query != null && Limits.exceeds(query.length(), limits.getMaxQuerySize())) {
+			record(plan.getPath(), "max-query-size", limits.getExceeded(), status, offset, line, result);
+		}
+		
+		if(Limits.exceeds(countParameters(pairs), limits.getMaxParameters())) {
+			record(plan.getPath(), "max-parameters", limits.getExceeded(), status, offset, line, result);
+		}
+		
+		/** Signatures, in the raw URI or else the URL decoded one **/
+		if(!signatures.isEmpty() && !scan(plan, signatures, "uri", uri, status, offset, line, result)) {
+			scan(plan, signatures, "uri", PercentDecoder.decode(uri), status, offset, line, result);
+		}
+		
+		/** Malformed URI, against the URL the filter would have seen **/
+		check(plan.getRule("uri"), validator.getBase() + uri, status, offset, line, result);
+		
+		/** Limits, signatures and malformed parameters **/
+		for(int i=0; i<pairs.length; i++) {
+			int equals = pairs[i].indexOf('=');
+			String name = PercentDecoder.decode(equals >= 0 ? pairs[i].substring(0, equals) : pairs[i]);
+			String value = (equals >= 0 ? PercentDecoder.decode(pairs[i].substring(equals + 1)) : "");
+			
+			if(value.length() > 0) {
+				names.add(name);
+			}
+			
+			if(!nameReported && Limits.exceeds(name.length(), limits.getMaxNameLength())) {
+				record(plan.getPath(), "max-name-length", limits.getExceeded(), status, offset, line, result);
+				nameReported = true;
+			}
+			
+			if(!valueReported && Limits.exceeds(value.length(), limits.getMaxValueLength())) {
+				record(plan.getPath(), "max-value-length", limits.getExceeded(), status, offset, line, result);
+				valueReported = true;
+			}
+			
+			if(!signatures.isEmpty()) {
+				scan(plan, signatures, name, value, status, offset, line, result);
+			}
+			
+			check(plan.getRule(name), value, status, offset, line, result);
+		}
+		
+		/** Missing parameters **/
+		required = plan.getRequired();
+		
+		for(int i=0; i<required.length; i++) {
+			if(!names.contains(required[i].getName())) {
+				record(required[i], required[i].getMissing(), status, offset, line, result);
+			}
+		}
+		
+		if(status.violating) {
+			result.violating++;
+		}
+		
+		if(status.fatal) {
+			result.blocked++;
+		}
+	}
+	
+	private void check(Rule rule, String value, Status status, long offset, String line, BatchResult result) {
+		if(rule != null && !rule.isValid(value)) {
+			record(rule, rule.getMalformed(), status, offset, line, result);
+		}
+	}
+	
+	/**
+	 * Record the value if it contains a signature and return true
+	 */
+	private boolean scan(ValidationPlan plan, SignatureSet signatures, String name, String value, Status status, long offset, String line, BatchResult result) {
+		if(signatures.find(value) == null) {
+			return false;
+		}
+		
+		record(plan.getPath(), name, signatures.getMatched(), status, offset, line, result);
+		
+		return true;
+	}
+	
+	private void record(Rule rule, Category category, Status status, long offset, String line, BatchResult result) {
+		record(rule.getStats() != null ? rule.getStats().getPath() : "?", rule.getName(), category, status, offset, line, result);
+	}
+	
+	/**
+	 * Count a violation of the rule, limit or signature set under name
+	 */
+	private void record(String path, String name, Category category, Status status, long offset, String line, BatchResult result) {
+		Severity severity = category.getSeverity();
+		
+		if(severity == null || severity.equals(Severity.IGNORE)) {
+			return;
+		}
+		
+		result.add(path + " " + name + " " + category + "/" + severity, offset, line);
+		status.violating = true;
+		status.fatal |= severity.equals(Severity.FATAL);
+	}
+	
+	/**
+	 * Empty pairs, as in a&&b, are no parameters, as in Stinger
+	 */
+	private static long countParameters(String[] pairs) {
+		long count = 0;
+		
+		for(int i=0; i<pairs.length; i++) {
+			count += (pairs[i].length() > 0 ? 1 : 0);
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * What one line has violated so far
+	 */
+	private static class Status {
+		
+		boolean violating = false;
+		
+		boolean fatal = false;
+	}
+}
@@ -0,0 +1,39 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+package org.owasp.stinger.http;
+
+import java.io.IOException;
+
+/**
+ * A push-based parser of a request body. Bytes are passed in as they are
+ * read, in chunks that may end anywhere, so the body can be read with
+ * blocking or non-blocking IO alike.
+ */
+public interface BodyParser {
+	
+	public void update(byte[] b, int off, int len) throws IOException;
+	
+	/**
+	 * Call once the whole body was passed to update
+	 */
+	public void finish() throws IOException;
+}
@@ -0,0 +1,111 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+package org.owasp.stinger.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.owasp.stinger.rules.Limits;
+
+/**
+ * Feeds a request body to a BodyParser, optionally keeping a copy for the
+ * servlet, and stops once the collector found a fatal violation or the
+ * body grew past the max-body-size limit. A body stopped at the limit is
+ * never passed on: Stinger.validate reports it as a fatal violation. The
+ * bytes may come from blocking reads (see read) or from a ReadListener.
+ */
+public class BodyReader {
+	
+	private final static int READ_SIZE = 8192;
+	
+	private final BodyParser parser;
+	
+	private final ValueCollector collector;
+	
+	private final SpoolBuffer copy;
+	
+	private final long maxLength;
+	
+	private long length = 0;
+	
+	/**
+	 * @param copy where the body is copied to, or null
+	 */
+	public BodyReader(BodyParser parser, ValueCollector collector, SpoolBuffer copy) {
+		this.parser = parser;
+		this.collector = collector;
+		this.copy = copy;
+		this.maxLength = collector.plan.getLimits().getMaxBodySize();
+	}
+	
+	public void update(byte[] b, int off, int len) throws IOException {
+		length += len;
+		
+		/** Stinger.validate stops the request once the length is known **/
+		if(Limits.exceeds(length, maxLength)) {
+			return;
+		}
+		
+		if(copy != null) {
+			copy.write(b, off, len);
+		}
+		
+		parser.update(b, off, len);
+	}
+	
+	/**
+	 * True once there is no point in reading the rest of the body
+	 */
+	public boolean isStopped() {
+		return collector.isStopped() || Limits.exceeds(length, maxLength);
+	}
+	
+	/**
+	 * Call once the whole body was read, or reading stopped
+	 */
+	public void finish() throws IOException {
+		collector.request.setBodyLength(length);
+		
+		if(copy != null) {
+			copy.close();
+		}
+		
+		/** A stopped body is incomplete on purpose **/
+		if(!isStopped()) {
+			parser.finish();
+		}
+	}
+	
+	/**
+	 * Read the body with blocking reads
+	 */
+	public void read(InputStream in) throws IOException {
+		byte[] buf = new byte[READ_SIZE];
+		int read = 0;
+		
+		while(!isStopped() && (read = in.read(buf)) != -1) {
+			update(buf, 0, read);
+		}
+		
+		finish();
+	}
+}
@@ -0,0 +1,123 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+package org.owasp.stinger.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Push parser for application/x-www-form-urlencoded bodies, for when the
+ * body is read by Stinger rather than by the container. Names and values
+ * are percent-decoded as the bytes arrive, so an escape may be split
+ * across chunks.
+ */
+public class FormParser implements BodyParser {
+	
+	private final FormHandler handler;
+	
+	private final String charset;
+	
+	private final int maxField;
+	
+	private final ByteArrayOutputStream name = new ByteArrayOutputStream();
+	
+	private final ByteArrayOutputStream value = new ByteArrayOutputStream();
+	
+	/** The field being read, name or value **/
+	private ByteArrayOutputStream field = name;
+	
+	/** Hex digits of a percent escape read so far, -1 outside an escape **/
+	private int escapeDigits = -1;
+	
+	private int escape = 0;
+	
+	/**
+	 * @param charset the encoding of the decoded bytes
+	 * @param maxField longest name or value in bytes
+	 */
+	public FormParser(FormHandler handler, String charset, int maxField) {
+		this.handler = handler;
+		this.charset = charset;
+		this.maxField = maxField;
+	}
+	
+	public void update(byte[] b, int off, int len) throws IOException {
+		int end = off + len;
+		
+		for(int i=off; i<end; i++) {
+			int c = b[i] & 0xFF;
+			
+			if(escapeDigits >= 0) {
+				int digit = Character.digit((char)c, 16);
+				
+				if(digit < 0) {
+					throw new MalformedRequestException("Malformed escape in form body");
+				}
+				
+				escape = escape * 16 + digit;
+				
+				if(++escapeDigits == 2) {
+					write(escape);
+					escapeDigits = -1;
+				}
+			} else if(c == '&') {
+				parameter();
+			} else if(c == '=' && field == name) {
+				field = value;
+			} else if(c == '%') {
+				escape = 0;
+				escapeDigits = 0;
+			} else if(c == '+') {
+				write(' ');
+			} else {
+				write(c);
+			}
+		}
+	}
+	
+	public void finish() throws IOException {
+		if(escapeDigits >= 0) {
+			throw new MalformedRequestException("Malformed escape in form body");
+		}
+		
+		parameter();
+	}
+	
+	private void write(int c) throws IOException {
+		if(field.size() >= maxField) {
+			throw new MalformedRequestException("Form field exceeds " + maxField + " bytes");
+		}
+		
+		field.write(c);
+	}
+	
+	private void parameter() throws IOException {
+		/** Parameters without a name, e.g. from a&&b, are dropped as the containers do **/
+		if(name.size() > 0) {
+			handler.parameter(name.toString(charset), value.toString(charset));
+		}
+		
+		name.reset();
+		value.reset();
+		field = name;
+	}
+}
@@ -0,0 +1,56 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+package org.owasp.stinger.http;
+
+import java.io.IOException;
+
+import org.owasp.stinger.rules.Rule;
+import org.owasp.stinger.rules.SignatureSet;
+import org.owasp.stinger.rules.ValidationPlan;
+
+/**
+ * Keeps the values of a JSON body in the request, so that Stinger.validate
+ * can check them like parameters. Values without a pointer rule are
+ * checked against the fallback rule of the plan. Every value is scanned
+ * for the attack signatures as it is parsed, the ones containing one are
+ * kept apart as well.
+ */
+public class JsonCollector extends ValueCollector implements JsonHandler {
+	
+	private final SignatureSet signatures;
+	
+	public JsonCollector(MutableHttpRequest request, ValidationPlan plan, SignatureSet signatures) {
+		super(request, plan);
+		this.signatures = signatures;
+	}
+	
+	public void value(String pointer, String value) throws IOException {
+		Rule rule = plan.getJsonRule(pointer);
+		
+		if(value != null && scan(signatures, value)) {
+			request.addJsonSignature(pointer, value);
+		}
+		
+		request.addJsonValue(pointer, value);
+		check(rule, value == null || rule.isValid(value));
+	}
+}
@@ -0,0 +1,437 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+package org.owasp.stinger.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.regex.Pattern;
+
+/**
+ * A push-based JSON tokenizer. Bytes are passed in as they are read, in
+ * chunks that may end anywhere, and every scalar value is handed to a
+ * JsonHandler with its JSON pointer. No tree is built; only the keys and
+ * indexes of the open objects and arrays are kept.
+ *
+ * Nesting depth, the number of object keys and the body size are limited
+ * while parsing, so an oversized or deeply nested body fails as soon as
+ * it crosses a limit.
+ */
+public class JsonParser implements BodyParser {
+	
+	public final static int DEFAULT_MAX_DEPTH = 32;
+	
+	public final static int DEFAULT_MAX_KEYS = 10000;
+	
+	public final static int DEFAULT_MAX_SIZE = 1024 * 1024;
+	
+	private final static Pattern NUMBER_PATTERN = Pattern.compile("-?(0|[1-9][0-9]*)(\\.[0-9]+)?([eE][+-]?[0-9]+)?");
+	
+	/** Expecting a value, or the end of an array that was just opened **/
+	private final static int VALUE = 0;
+	
+	/** After a value: a comma, the end of the container or the end of the body **/
+	private final static int AFTER_VALUE = 1;
+	
+	/** Expecting a key, or the end of an object that was just opened **/
+	private final static int KEY = 2;
+	
+	private final static int COLON = 3;
+	
+	private final static int STRING = 4;
+	
+	/** After a backslash in a string **/
+	private final static int ESCAPE = 5;
+	
+	/** In the four hex digits of a unicode escape **/
+	private final static int UNICODE = 6;
+	
+	private final static int NUMBER = 7;
+	
+	/** true, false or null **/
+	private final static int LITERAL = 8;
+	
+	/** After the top level value, only white space may follow **/
+	private final static int DONE = 9;
+	
+	private final static byte OBJECT = 1;
+	
+	private final static byte ARRAY = 2;
+	
+	private final JsonHandler handler;
+	
+	private final int maxDepth;
+	
+	private final int maxKeys;
+	
+	private final long maxSize;
+	
+	/** The open containers, their current key or index **/
+	private final byte[] containers;
+	
+	private final String[] keys;
+	
+	private final int[] indexes;
+	
+	private int depth = 0;
+	
+	private int state = VALUE;
+	
+	/** True right after { or [, where the container may be closed at once **/
+	private boolean empty = false;
+	
+	/** True while the string being read is an object key **/
+	private boolean key = false;
+	
+	private int keyCount = 0;
+	
+	private long size = 0;
+	
+	/** The token being read **/
+	private final StringBuffer text = new StringBuffer();
+	
+	/** String bytes not yet decoded, decoded at escapes and at the closing quote **/
+	private final ByteArrayOutputStream raw = new ByteArrayOutputStream();
+	
+	private int unicode = 0;
+	
+	private int unicodeDigits = 0;
+	
+	public JsonParser(JsonHandler handler, int maxDepth, int maxKeys, long maxSize) {
+		this.handler = handler;
+		this.maxDepth = maxDepth;
+		this.maxKeys = maxKeys;
+		this.maxSize = maxSize;
+		this.containers = new byte[maxDepth];
+		this.keys = new String[maxDepth];
+		this.indexes = new int[maxDepth];
+	}
+	
+	public void update(byte[] b, int off, int len) throws IOException {
+		int end = off + len;
+		
+		size += len;
+		
+		if(size > maxSize) {
+			throw new MalformedRequestException("JSON body exceeds " + maxSize + " bytes");
+		}
+		
+		for(int i=off; i<end; i++) {
+			if(state == STRING) {
+				/** Copy the plain bytes of a string in one go **/
+				int start = i;
+				
+				while(i < end && b[i] != '"' && b[i] != '\\' && (b[i] & 0xFF) >= 0x20) {
+					i++;
+				}
+				
+				raw.write(b, start, i - start);
+				
+				if(i == end) {
+					break;
+				}
+			}
+			
+			/** A number or literal ends at the byte after it, which is then read again **/
+			while(!step(b[i] & 0xFF)) {
+			
+			}
+		}
+	}
+	
+	/**
+	 * Call once the whole body was passed to update
+	 */
+	public void finish() throws IOException {
+		if(state == NUMBER) {
+			endNumber();
+		} else if(state == LITERAL) {
+			endLiteral();
+		}
+		
+		if(state != DONE) {
+			throw new MalformedRequestException("JSON body ends before its last value");
+		}
+	}
+	
+	public boolean isComplete() {
+		return state == DONE;
+	}
+	
+	/**
+	 * Returns false if c ended a token and has to be read again
+	 */
+	private boolean step(int c) throws IOException {
+		switch(state) {
+			case VALUE:
+				if(isWhitespace(c)) {
+					break;
+				} else if(c == '{') {
+					open(OBJECT);
+					state = KEY;
+				} else if(c == '[') {
+					open(ARRAY);
+					state = VALUE;
+				} else if(c == ']' && empty && containers[depth - 1] == ARRAY) {
+					close();
+				} else if(c == '"') {
+					startString(false);
+				} else if(c == '-' || (c >= '0' && c <= '9')) {
+					startToken(NUMBER, c);
+				} else if(c == 't' || c == 'f' || c == 'n') {
+					startToken(LITERAL, c);
+				} else {
+					throw unexpected(c);
+				}
+				break;
+			case KEY:
+				if(isWhitespace(c)) {
+					break;
+				} else if(c == '"') {
+					startString(true);
+				} else if(c == '}' && empty) {
+					close();
+				} else {
+					throw unexpected(c);
+				}
+				break;
+			case COLON:
+				if(isWhitespace(c)) {
+					break;
+				} else if(c == ':') {
+					state = VALUE;
+					empty = false;
+				} else {
+					throw unexpected(c);
+				}
+				break;
+			case AFTER_VALUE:
+				if(isWhitespace(c)) {
+					break;
+				} else if(c == ',') {
+					if(containers[depth - 1] == ARRAY) {
+						indexes[depth - 1]++;
+						state = VALUE;
+					} else {
+						state = KEY;
+					}
+					
+					empty = false;
+				} else if((c == '}' && containers[depth - 1] == OBJECT) || (c == ']' && containers[depth - 1] == ARRAY)) {
+					close();
+				} else {
+					throw unexpected(c);
+				}
+				break;
+			case STRING:
+				if(c == '"') {
+					endString();
+				} else if(c == '\\') {
+					decode();
+					state = ESCAPE;
+				} else {
+					throw new MalformedRequestException("Control character in JSON string");
+				}
+				break;
+			case ESCAPE:
+				state = STRING;
+				
+				switch(c) {
+					case '"': text.append('"'); break;
+					case '\\': text.append('\\'); break;
+					case '/': text.append('/'); break;
+					case 'b': text.append('\b'); break;
+					case 'f': text.append('\f'); break;
+					case 'n': text.append('\n'); break;
+					case 'r': text.append('\r'); break;
+					case 't': text.append('\t'); break;
+					case 'u':
+						unicode = 0;
+						unicodeDigits = 0;
+						state = UNICODE;
+						break;
+					default:
+						throw unexpected(c);
+				}
+				break;
+			case UNICODE:
+				if(Character.digit((char)c, 16) < 0) {
+					throw unexpected(c);
+				}
+				
+				unicode = unicode * 16 + Character.digit((char)c, 16);
+				
+				/** Surrogate pairs come as two escapes and simply end up next to each other **/
+				if(++unicodeDigits == 4) {
+					text.append((char)unicode);
+					state = STRING;
+				}
+				break;
+			case NUMBER:
+				if((c >= '0' && c <= '9') || c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+					text.append((char)c);
+					break;
+				}
+				
+				endNumber();
+				return false;
+			case LITERAL:
+				if(c >= 'a' && c <= 'z' && text.length() < 5) {
+					text.append((char)c);
+					break;
+				}
+				
+				endLiteral();
+				return false;
+			case DONE:
+				if(!isWhitespace(c)) {
+					throw unexpected(c);
+				}
+				break;
+		}
+		
+		return true;
+	}
+	
+	private static boolean isWhitespace(int c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+	}
+	
+	private MalformedRequestException unexpected(int c) {
+		return new MalformedRequestException("Unexpected character 0x" + Integer.toHexString(c) + " in JSON body");
+	}
+	
+	private void open(byte type) throws IOException {
+		if(depth == maxDepth) {
+			throw new MalformedRequestException("JSON body nests deeper than " + maxDepth + " levels");
+		}
+		
+		containers[depth] = type;
+		keys[depth] = null;
+		indexes[depth] = 0;
+		depth++;
+		empty = true;
+	}
+	
+	private void close() {
+		depth--;
+		endValue();
+	}
+	
+	private void endValue() {
+		state = (depth == 0 ? DONE : AFTER_VALUE);
+	}
+	
+	private void startString(boolean isKey) {
+		key = isKey;
+		text.setLength(0);
+		raw.reset();
+		state = STRING;
+	}
+	
+	private void startToken(int type, int c) {
+		text.setLength(0);
+		text.append((char)c);
+		state = type;
+	}
+	
+	/**
+	 * Move the bytes read so far to the text. They never end in the middle
+	 * of a UTF-8 sequence, as those contain no quotes or backslashes.
+	 */
+	private void decode() throws IOException {
+		if(raw.size() > 0) {
+			text.append(raw.toString("UTF-8"));
+			raw.reset();
+		}
+	}
+	
+	private void endString() throws IOException {
+		decode();
+		
+		if(key) {
+			if(++keyCount > maxKeys) {
+				throw new MalformedRequestException("JSON body has more than " + maxKeys + " keys");
+			}
+			
+			keys[depth - 1] = text.toString();
+			state = COLON;
+		} else {
+			value(text.toString());
+		}
+	}
+	
+	private void endNumber() throws IOException {
+		if(!NUMBER_PATTERN.matcher(text).matches()) {
+			throw new MalformedRequestException("Malformed number in JSON body");
+		}
+		
+		value(text.toString());
+	}
+	
+	private void endLiteral() throws IOException {
+		String literal = text.toString();
+		
+		if(literal.equals("true") || literal.equals("false")) {
+			value(literal);
+		} else if(literal.equals("null")) {
+			value(null);
+		} else {
+			throw new MalformedRequestException("Unknown literal in JSON body");
+		}
+	}
+	
+	private void value(String value) throws IOException {
+		handler.value(pointer(), value);
+		endValue();
+	}
+	
+	/**
+	 * The JSON pointer of the current value, see RFC 6901
+	 */
+	private String pointer() {
+		StringBuffer buf = new StringBuffer();
+		
+		for(int i=0; i<depth; i++) {
+			buf.append('/');
+			
+			if(containers[i] == ARRAY) {
+				buf.append(indexes[i]);
+			} else {
+				String k = keys[i];
+				
+				for(int j=0; j<k.length(); j++) {
+					char c = k.charAt(j);
+					
+					if(c == '~') {
+						buf.append("~0");
+					} else if(c == '/') {
+						buf.append("~1");
+					} else {
+						buf.append(c);
+					}
+				}
+			}
+		}
+		
+		return buf.toString();
+	}
+}
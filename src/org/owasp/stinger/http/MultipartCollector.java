@@ -0,0 +1,153 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+package org.owasp.stinger.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import org.owasp.stinger.rules.Rule;
+import org.owasp.stinger.rules.ValidationPlan;
+
+/**
+ * Turns the parts of a multipart body into request parameters and
+ * uploaded files. Text fields become parameters of the MutableHttpRequest;
+ * file parts are spooled to disk above a threshold and registered as
+ * UploadedFiles. Every part, text fields included, is added to the parts
+ * of the request for servlets that use getParts.
+ *
+ * Each field is checked against its rule as soon as it is complete, and
+ * file names, content types and sizes as they arrive.
+ */
+public class MultipartCollector extends ValueCollector implements MultipartHandler {
+	
+	/** Bytes of a file part kept in memory before it is spooled to disk **/
+	public final static int DEFAULT_THRESHOLD = 64 * 1024;
+	
+	/** Longest text field **/
+	public final static int DEFAULT_MAX_FIELD = 1024 * 1024;
+	
+	private final String charset;
+	
+	private final int threshold;
+	
+	private final int maxField;
+	
+	private final File directory;
+	
+	/** The current part **/
+	private String name = null;
+	
+	private Rule rule = null;
+	
+	private ByteArrayOutputStream field = null;
+	
+	/** The current part's content type and headers, kept for a text field **/
+	private String contentType = null;
+	
+	private Map headers = null;
+	
+	private UploadedFile file = null;
+	
+	private SpoolBuffer spool = null;
+	
+	/**
+	 * @param directory where large file parts are spooled, null for java.io.tmpdir
+	 */
+	public MultipartCollector(MutableHttpRequest request, ValidationPlan plan, int threshold, int maxField, File directory) {
+		super(request, plan);
+		
+		String encoding = request.getCharacterEncoding();
+		
+		this.charset = (encoding != null ? encoding : "UTF-8");
+		this.threshold = threshold;
+		this.maxField = maxField;
+		this.directory = directory;
+	}
+	
+	public void startPart(String name, String filename, String contentType, Map headers) throws IOException {
+		this.name = name;
+		this.rule = plan.getRule(name);
+		this.contentType = contentType;
+		this.headers = headers;
+		
+		if(filename == null) {
+			field = new ByteArrayOutputStream();
+		} else {
+			spool = new SpoolBuffer(threshold, directory);
+			file = new UploadedFile(name, filename, contentType, headers, spool);
+			
+			/** Registered right away so a partly read file is still validated **/
+			request.addUploadedFile(file);
+			request.addPart(file);
+			checkFile();
+		}
+	}
+	
+	public void partData(byte[] b, int off, int len) throws IOException {
+		if(field != null) {
+			if(field.size() + len > maxField) {
+				throw new MalformedRequestException("Multipart field " + name + " exceeds " + maxField + " bytes");
+			}
+			
+			field.write(b, off, len);
+		} else {
+			spool.write(b, off, len);
+			
+			if(rule != null && rule.getMaxSize() >= 0 && spool.size() > rule.getMaxSize()) {
+				checkFile();
+			}
+		}
+	}
+	
+	public void endPart() throws IOException {
+		if(field != null) {
+			String value = field.toString(charset);
+			/** Fields are at most maxField bytes and stay in memory **/
+			SpoolBuffer content = new SpoolBuffer(maxField, directory);
+			
+			content.write(field.toByteArray(), 0, field.size());
+			request.addParameter(name, value);
+			request.addPart(new UploadedFile(name, null, contentType, headers, content));
+			
+			if(accept(name, value)) {
+				check(rule, rule == null || rule.isValid(value));
+			}
+		} else {
+			spool.close();
+		}
+		
+		name = null;
+		rule = null;
+		contentType = null;
+		headers = null;
+		field = null;
+		file = null;
+		spool = null;
+	}
+	
+	private void checkFile() {
+		check(rule, rule == null || rule.isValidFile(file.getFilename(), file.getContentType(), file.getSize()));
+	}
+}
@@ -0,0 +1,48 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+package org.owasp.stinger.http;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Receives the parts of a multipart body from a MultipartParser as they
+ * are parsed.
+ */
+public interface MultipartHandler {
+	
+	/**
+	 * @param name the form field name
+	 * @param filename the file name, null for a text field
+	 * @param contentType the part's content type or null
+	 * @param headers all part headers by lower case name
+	 */
+	public void startPart(String name, String filename, String contentType, Map headers) throws IOException;
+	
+	/**
+	 * The next bytes of the current part's body. The array is reused.
+	 */
+	public void partData(byte[] b, int off, int len) throws IOException;
+	
+	public void endPart() throws IOException;
+}
@@ -0,0 +1,366 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+package org.owasp.stinger.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
+
+/**
+ * Push parser for multipart/form-data bodies. Bytes are handed to update
+ * as they are read, in chunks of any size, and the parts are passed on to
+ * a MultipartHandler. Part bodies are never buffered: only the bytes that
+ * might start the next boundary are held back between chunks.
+ */
+public class MultipartParser implements BodyParser {
+	
+	/** Longest header block of a part **/
+	public final static int MAX_HEADER_SIZE = 16 * 1024;
+	
+	private final static int PREAMBLE = 0;
+	
+	private final static int DELIMITER = 1;
+	
+	private final static int HEADERS = 2;
+	
+	private final static int BODY = 3;
+	
+	private final static int EPILOGUE = 4;
+	
+	private final MultipartHandler handler;
+	
+	/** CRLF--boundary **/
+	private final byte[] delimiter;
+	
+	/** KMP failure function of the delimiter **/
+	private final int[] fail;
+	
+	private int state = PREAMBLE;
+	
+	/** Delimiter bytes matched so far. The body starts with a virtual CRLF, so a leading boundary matches as well **/
+	private int matched = 2;
+	
+	/** After a delimiter: 0 nothing yet, 1 after '-', 2 after CR **/
+	private int suffix = 0;
+	
+	private final ByteArrayOutputStream header = new ByteArrayOutputStream();
+	
+	/** Bytes of the current header line, without its LF **/
+	private int lineLength = 0;
+	
+	private byte previous = 0;
+	
+	public MultipartParser(String boundary, MultipartHandler handler) {
+		this.handler = handler;
+		this.delimiter = toBytes("\r\n--" + boundary);
+		this.fail = new int[delimiter.length];
+		
+		for(int i=1, k=0; i<delimiter.length; i++) {
+			while(k > 0 && delimiter[i] != delimiter[k]) {
+				k = fail[k - 1];
+			}
+			
+			if(delimiter[i] == delimiter[k]) {
+				k++;
+			}
+			
+			fail[i] = k;
+		}
+	}
+	
+	/**
+	 * The boundary parameter of a multipart content type, or null
+	 */
+	public static String getBoundary(String contentType) {
+		int index = (contentType != null ? contentType.toLowerCase().indexOf("boundary=") : -1);
+		String boundary = null;
+		
+		if(index < 0) {
+			return null;
+		}
+		
+		boundary = contentType.substring(index + "boundary=".length()).trim();
+		
+		if(boundary.startsWith("\"")) {
+			int end = boundary.indexOf('"', 1);
+			boundary = (end > 0 ? boundary.substring(1, end) : null);
+		} else if(boundary.indexOf(';') >= 0) {
+			boundary = boundary.substring(0, boundary.indexOf(';')).trim();
+		}
+		
+		/** RFC 2046 allows 1 to 70 chars **/
+		return (boundary != null && boundary.length() > 0 && boundary.length() <= 70 ? boundary : null);
+	}
+	
+	private static byte[] toBytes(String s) {
+		try {
+			return s.getBytes("ISO-8859-1");
+		} catch (UnsupportedEncodingException uee) {
+			throw new IllegalStateException(uee.getMessage());
+		}
+	}
+	
+	public void update(byte[] b, int off, int len) throws IOException {
+		int end = off + len;
+		
+		while(off < end && state != EPILOGUE) {
+			switch(state) {
+				case PREAMBLE:
+				case BODY:
+					off = scan(b, off, end);
+					break;
+				case DELIMITER:
+					off = suffix(b, off, end);
+					break;
+				case HEADERS:
+					off = headers(b, off, end);
+					break;
+			}
+		}
+	}
+	
+	/**
+	 * Call once the whole body was passed to update
+	 */
+	public void finish() throws IOException {
+		if(state != EPILOGUE) {
+			throw new MalformedRequestException("Multipart body ends before its closing boundary");
+		}
+	}
+	
+	public boolean isComplete() {
+		return state == EPILOGUE;
+	}
+	
+	/**
+	 * Look for the next delimiter, passing the bytes before it on as part
+	 * data. Returns the offset after the delimiter or end.
+	 */
+	private int scan(byte[] b, int off, int end) throws IOException {
+		int run = off;
+		
+		for(int i=off; i<end; i++) {
+			byte c = b[i];
+			
+			if(matched == 0) {
+				if(c != delimiter[0]) {
+					continue;
+				}
+				
+				data(b, run, i - run);
+				matched = 1;
+			} else if(c == delimiter[matched]) {
+				matched++;
+			} else {
+				int k = matched;
+				int next = 0;
+				
+				while(k > 0 && delimiter[k] != c) {
+					k = fail[k - 1];
+				}
+				
+				next = (delimiter[k] == c ? k + 1 : 0);
+				
+				if(next == 0) {
+					/** None of the held bytes start a delimiter, c is data too **/
+					data(delimiter, 0, matched);
+					matched = 0;
+					run = i;
+					continue;
+				}
+				
+				/** Held bytes plus c, except for the last next bytes, were data **/
+				data(delimiter, 0, matched + 1 - next);
+				matched = next;
+			}
+			
+			run = i + 1;
+			
+			if(matched == delimiter.length) {
+				matched = 0;
+				
+				if(state == BODY) {
+					handler.endPart();
+				}
+				
+				state = DELIMITER;
+				suffix = 0;
+				
+				return i + 1;
+			}
+		}
+		
+		if(matched == 0) {
+			data(b, run, end - run);
+		}
+		
+		return end;
+	}
+	
+	private void data(byte[] b, int off, int len) throws IOException {
+		if(len > 0 && state == BODY) {
+			handler.partData(b, off, len);
+		}
+	}
+	
+	/**
+	 * After a delimiter: -- closes the body, otherwise optional white space
+	 * and CRLF start the next part
+	 */
+	private int suffix(byte[] b, int off, int end) throws IOException {
+		while(off < end) {
+			byte c = b[off++];
+			
+			if(suffix == 0 && (c == ' ' || c == '\t')) {
+				continue;
+			} else if(suffix == 0 && c == '-') {
+				suffix = 1;
+			} else if(suffix == 0 && c == '\r') {
+				suffix = 2;
+			} else if(suffix == 1 && c == '-') {
+				state = EPILOGUE;
+				return end;
+			} else if(suffix == 2 && c == '\n') {
+				state = HEADERS;
+				header.reset();
+				lineLength = 0;
+				return off;
+			} else {
+				throw new MalformedRequestException("Malformed multipart boundary");
+			}
+		}
+		
+		return off;
+	}
+	
+	/**
+	 * Collect the part headers up to the empty line
+	 */
+	private int headers(byte[] b, int off, int end) throws IOException {
+		while(off < end) {
+			byte c = b[off++];
+			
+			if(c == '\n') {
+				if(lineLength == 0 || (lineLength == 1 && previous == '\r')) {
+					startPart();
+					state = BODY;
+					return off;
+				}
+				
+				lineLength = 0;
+			} else {
+				lineLength++;
+			}
+			
+			header.write(c);
+			previous = c;
+			
+			if(header.size() > MAX_HEADER_SIZE) {
+				throw new MalformedRequestException("Multipart headers exceed " + MAX_HEADER_SIZE + " bytes");
+			}
+		}
+		
+		return off;
+	}
+	
+	private void startPart() throws IOException {
+		HashMap headers = new HashMap();
+		String[] lines = header.toString("UTF-8").split("\r?\n");
+		String last = null;
+		String disposition = null;
+		String name = null;
+		
+		for(int i=0; i<lines.length; i++) {
+			String line = lines[i];
+			int colon = line.indexOf(':');
+			
+			if(line.trim().length() == 0) {
+				continue;
+			} else if((line.charAt(0) == ' ' || line.charAt(0) == '\t') && last != null) {
+				/** Folded header line **/
+				headers.put(last, headers.get(last) + " " + line.trim());
+			} else if(colon > 0) {
+				last = line.substring(0, colon).trim().toLowerCase();
+				headers.put(last, line.substring(colon + 1).trim());
+			} else {
+				throw new MalformedRequestException("Malformed multipart header");
+			}
+		}
+		
+		disposition = (String)headers.get("content-disposition");
+		name = getParameter(disposition, "name");
+		
+		if(name == null) {
+			throw new MalformedRequestException("Multipart part without a form field name");
+		}
+		
+		handler.startPart(name, getParameter(disposition, "filename"), (String)headers.get("content-type"), headers);
+	}
+	
+	/**
+	 * A parameter of a header value such as form-data; name="a"; filename="b"
+	 */
+	static String getParameter(String value, String parameter) {
+		int pos = (value != null ? value.indexOf(';') : -1);
+		
+		while(pos >= 0 && pos < value.length()) {
+			int equals = value.indexOf('=', pos);
+			String key = null;
+			StringBuffer buf = new StringBuffer();
+			
+			if(equals < 0) {
+				break;
+			}
+			
+			key = value.substring(pos + 1, equals).trim();
+			pos = equals + 1;
+			
+			while(pos < value.length() && value.charAt(pos) == ' ') {
+				pos++;
+			}
+			
+			if(pos < value.length() && value.charAt(pos) == '"') {
+				/** Browsers send Windows paths with plain backslashes, so nothing is unescaped **/
+				pos++;
+				
+				while(pos < value.length() && value.charAt(pos) != '"') {
+					buf.append(value.charAt(pos++));
+				}
+				
+				pos = value.indexOf(';', pos);
+			} else {
+				int semicolon = value.indexOf(';', pos);
+				
+				buf.append(value.substring(pos, semicolon >= 0 ? semicolon : value.length()).trim());
+				pos = semicolon;
+			}
+			
+			if(key.equalsIgnoreCase(parameter)) {
+				return buf.toString();
+			}
+		}
+		
+		return null;
+	}
+}
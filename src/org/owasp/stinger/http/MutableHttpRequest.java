@@ -22,163 +22,442 @@
 
 package org.owasp.stinger.http;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
-import java.util.Map;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
 import javax.servlet.ServletRequest;
-import javax.servlet.ServletRequestWrapper;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.Part;
 
+/**
+ * A request whose parameters, cookies and headers can be changed by the
+ * actions. Reads go straight to the wrapped request until something is
+ * changed; only the changed parameter, cookie or header is then copied.
+ */
 public class MutableHttpRequest extends HttpServletRequestWrapper {
 	
+	private final static Cookie[] NO_COOKIES = new Cookie[0];
+	
 	private HttpServletRequest request = null;
-	private ServletRequestWrapper srw = null;
 	
+	/** Changed parameters, a null value marks a removed one. Null until the first change **/
+	private Map parameters = null;
+	
+	/** True once clearParameters() hid every parameter of the wrapped request **/
+	private boolean cleared = false;
 	
-	private Map headers = new HashMap();
+	/** All cookies by name, null until the first change **/
+	private Map cookies = null;
 	
-	private LinkedList headerNames = new LinkedList();
+	/** Changed headers by lower case name, null until the first change **/
+	private Map headers = null;
 	
-	private Map cookies = new HashMap();
+	/** Names of headers added by setHeader **/
+	private LinkedList headerNames = null;
 	
-	private Map parameters = new HashMap();
+	/** File parts of a multipart body, null if there are none **/
+	private LinkedList uploadedFiles = null;
+	
+	/** All parts of a multipart body, text fields included. Null unless Stinger parsed the body **/
+	private LinkedList parts = null;
+	
+	/** A JSON or multipart body read by Stinger, served again by getInputStream **/
+	private SpoolBuffer body = null;
+	
+	/** Values of the JSON body by JSON pointer. Null unless the body is JSON **/
+	private LinkedHashMap jsonValues = null;
+	
+	/** Values of the JSON body that contain a signature, by JSON pointer. Null if there are none **/
+	private LinkedHashMap jsonSignatures = null;
+	
+	/** Bytes of the body read by Stinger, -1 if Stinger did not read it **/
+	private long bodyLength = -1;
 	
 	public MutableHttpRequest(HttpServletRequest request) {
 		super(request);
 		this.request = request;
+	}
+	
+	public ServletRequest getRequest() {
+		return request;
+	}
+	
+	private boolean isChanged(String name) {
+		return parameters != null && parameters.containsKey(name);
+	}
+	
+	public String getParameter(String name) {
+		String[] values = null;
 		
-		Enumeration e = request.getHeaderNames();
+		if(!isChanged(name)) {
+			return (cleared ? null : request.getParameter(name));
+		}
 		
-		while(e.hasMoreElements()) {
-			String name = (String)e.nextElement();
-			Enumeration values = request.getHeaders(name);
-			headerNames.add(name);
-			String lowerName = name.toLowerCase();
-			LinkedList list = (LinkedList)headers.get(lowerName);
-			
-			while (values.hasMoreElements()){
-				String value = (String)values.nextElement();
-				if(list != null) {
-					list.add(value);
-				} else {
-					list = new LinkedList();
-					list.add(value);
-					headers.put(lowerName, list);
+		values = (String[])parameters.get(name);
+		
+		return (values != null && values.length > 0 ? values[0] : null);
+	}
+	
+	public String[] getParameterValues(String name) {
+		if(!isChanged(name)) {
+			return (cleared ? null : request.getParameterValues(name));
+		}
+		
+		return (String[])parameters.get(name);
+	}
+	
+	private void setParameterValues(String name, String[] values) {
+		if(parameters == null) {
+			parameters = new HashMap();
+		}
+		
+		parameters.put(name, values);
+	}
+	
+	public void addParameter(String name, String value) {
+		String[] values = getParameterValues(name);
+		String[] newValues = null;
+		
+		if(values == null) {
+			newValues = new String[] { value };
+		} else {
+			newValues = new String[values.length + 1];
+			System.arraycopy(values, 0, newValues, 0, values.length);
+			newValues[values.length] = value;
+		}
+		
+		setParameterValues(name, newValues);
+	}
+	
+	public void replaceParameterValue(String name, String oldValue, String newValue) {
+		if (name == null || oldValue == null || newValue == null) return;
+		String[] values = getParameterValues(name);
+		String[] newValues = null;
+		
+		if(values == null) {
+			return;
+		}
+		
+		for(int i=0; i<values.length; i++) {
+			if(oldValue.equals(values[i])) {
+				/** Copy on the first replacement only **/
+				if(newValues == null) {
+					newValues = values.clone();
 				}
+				
+				newValues[i] = newValue;
 			}
 		}
 		
-			
-		Cookie[] c = request.getCookies();
+		if(newValues != null) {
+			setParameterValues(name, newValues);
+		}
+	}
+	
+	public void removeParameter(String name) {
+		setParameterValues(name, null);
+	}
+	
+	public void clearParameters() {
+		parameters = new HashMap();
+		cleared = true;
+	}
+	
+	public Map getParameterMap() {
+		Map result = null;
+		Enumeration e = null;
 		
-		if(c != null) {
-			for(int i=0; i<c.length; i++) {
-				cookies.put(c[i].getName(), c[i]);
-			}
+		if(parameters == null) {
+			return request.getParameterMap();
 		}
 		
-		e = request.getParameterNames();
+		result = new HashMap();
+		e = getParameterNames();
 		
 		while(e.hasMoreElements()) {
 			String name = (String)e.nextElement();
-			String[] values = request.getParameterValues(name);
 			
-			parameters.put(name, values);
+			result.put(name, getParameterValues(name));
 		}
+		
+		return Collections.unmodifiableMap(result);
 	}
 	
-	public ServletRequest getRequest() {
-		return request;
+	public Enumeration getParameterNames() {
+		LinkedHashSet names = new LinkedHashSet();
+		Iterator itr = null;
+		
+		if(parameters == null) {
+			return request.getParameterNames();
+		}
+		
+		if(!cleared) {
+			names.addAll(Collections.list(request.getParameterNames()));
+		}
+		
+		itr = parameters.entrySet().iterator();
+		
+		while(itr.hasNext()) {
+			Map.Entry entry = (Map.Entry)itr.next();
+			
+			if(entry.getValue() == null) {
+				names.remove(entry.getKey());
+			} else {
+				names.add(entry.getKey());
+			}
+		}
+		
+		return Collections.enumeration(names);
 	}
 	
-	public String getParameter(String name) {
-		String[] values = (String[])parameters.get(name);
-		return values!=null? values[0]:null;
+	public void addUploadedFile(UploadedFile file) {
+		if(uploadedFiles == null) {
+			uploadedFiles = new LinkedList();
+		}
+		
+		uploadedFiles.add(file);
 	}
 	
-	public void addParameter(String name, String value) {
-		String[] values = (String[])parameters.get(name);
-		String[] newValues = new String[values.length+1];
-		int i=0;
-		for (i=0;i<values.length;i++){
-			newValues[i] = values[i];
-		}
-		newValues[i] = value;
-		parameters.put(name, newValues);
+	/**
+	 * The file parts of a multipart body in the order they were sent
+	 */
+	public List getUploadedFiles() {
+		return (uploadedFiles != null ? Collections.unmodifiableList(uploadedFiles) : Collections.EMPTY_LIST);
 	}
 	
-	public void replaceParameterValue(String name, String oldValue, String newValue) {
-		if (name == null || oldValue == null || newValue == null) return;
-		String[] values = (String[])parameters.get(name);
-		String[] newValues = new String[values.length];
-		int i=0;
-		for (i=0;i<values.length;i++){
-			if (oldValue.equals(values[i])) {
-				newValues[i] = newValue;
+	/**
+	 * The first file part of the form field, or null
+	 */
+	public UploadedFile getUploadedFile(String name) {
+		Iterator itr = getUploadedFiles().iterator();
+		
+		while(itr.hasNext()) {
+			UploadedFile file = (UploadedFile)itr.next();
+			
+			if(file.getName().equals(name)) {
+				return file;
 			}
-			else {
-				newValues[i] = values[i];
+		}
+		
+		return null;
+	}
+	
+	public void addPart(UploadedFile part) {
+		parts.add(part);
+	}
+	
+	/**
+	 * The parts Stinger parsed, in the order they were sent, as the
+	 * container would have returned them. Bodies Stinger left unread are
+	 * still parsed by the container.
+	 */
+	public Collection getParts() throws IOException, ServletException {
+		if(parts == null) {
+			return request.getParts();
+		}
+		
+		return Collections.unmodifiableList(parts);
+	}
+	
+	/**
+	 * The first part of the form field, or null
+	 */
+	public Part getPart(String name) throws IOException, ServletException {
+		Iterator itr = null;
+		
+		if(parts == null) {
+			return request.getPart(name);
+		}
+		
+		itr = parts.iterator();
+		
+		while(itr.hasNext()) {
+			Part part = (Part)itr.next();
+			
+			if(part.getName().equals(name)) {
+				return part;
 			}
 		}
-		parameters.put(name, newValues);
+		
+		return null;
 	}
 	
-	public void removeParameter(String name) {
-		parameters.remove(name);
+	/**
+	 * Remove the spooled content of all parts
+	 */
+	public void deleteUploadedFiles() {
+		Iterator itr = (parts != null ? parts : getUploadedFiles()).iterator();
+		
+		while(itr.hasNext()) {
+			((UploadedFile)itr.next()).delete();
+		}
 	}
 	
-	public void clearParameters() {
-		parameters = new HashMap();
+	/**
+	 * Keep the JSON body that is about to be read, so getInputStream and
+	 * getReader return it from the start
+	 */
+	public void setJsonBody(SpoolBuffer body) {
+		this.body = body;
+		this.jsonValues = new LinkedHashMap();
 	}
 	
-	public Map getParameterMap() {
-		return new HashMap(parameters);
+	/**
+	 * Keep the multipart body that is about to be read, so getInputStream
+	 * returns it from the start for servlets that parse it themselves, and
+	 * getParts returns the parts Stinger parsed
+	 */
+	public void setMultipartBody(SpoolBuffer body) {
+		this.body = body;
+		this.parts = new LinkedList();
 	}
 	
-	public Enumeration getParameterNames() {
-		return Collections.enumeration(parameters.keySet());
+	public long getBodyLength() {
+		return bodyLength;
 	}
 	
-	public String[] getParameterValues(String name) {
+	public void setBodyLength(long bodyLength) {
+		this.bodyLength = bodyLength;
+	}
+	
+	public boolean isJson() {
+		return jsonValues != null;
+	}
+	
+	public void addJsonValue(String pointer, String value) {
+		add(jsonValues, pointer, value);
+	}
+	
+	public void addJsonSignature(String pointer, String value) {
+		if(jsonSignatures == null) {
+			jsonSignatures = new LinkedHashMap();
+		}
 		
-		String[] myVals = (String[])parameters.get(name);
-		String[] values = new String[myVals.length];
+		add(jsonSignatures, pointer, value);
+	}
+	
+	private static void add(LinkedHashMap map, String pointer, String value) {
+		LinkedList values = (LinkedList)map.get(pointer);
 		
-		for(int i=0; i<values.length; i++) {
-			values[i] = new String(myVals[i]);
+		if(values == null) {
+			values = new LinkedList();
+			map.put(pointer, values);
 		}
 		
-		return values;
+		values.add(value);
+	}
+	
+	/**
+	 * The JSON values, as lists by JSON pointer in the order they were
+	 * sent. A JSON null is a null element. Null unless the body is JSON.
+	 */
+	public Map getJsonValues() {
+		return (jsonValues != null ? Collections.unmodifiableMap(jsonValues) : null);
+	}
+	
+	/**
+	 * The JSON values that contain an attack signature, as lists by
+	 * JSON pointer. Null if there are none.
+	 */
+	public Map getJsonSignatures() {
+		return (jsonSignatures != null ? Collections.unmodifiableMap(jsonSignatures) : null);
+	}
+	
+	/**
+	 * Remove the spooled copy of the body
+	 */
+	public void deleteBody() {
+		if(body != null) {
+			body.delete();
+		}
+	}
+	
+	public ServletInputStream getInputStream() throws IOException {
+		if(body == null) {
+			return request.getInputStream();
+		}
+		
+		return new ReplayInputStream(body.getInputStream());
+	}
+	
+	public BufferedReader getReader() throws IOException {
+		String encoding = getCharacterEncoding();
+		
+		if(body == null) {
+			return request.getReader();
+		}
+		
+		/** The body is read as UTF-8 unless the request says otherwise **/
+		return new BufferedReader(new InputStreamReader(getInputStream(), encoding != null ? encoding : "UTF-8"));
 	}
 	
 	public Cookie[] getCookies() {
-		Collection c = cookies.values();
-		Enumeration e = Collections.enumeration(c);
-		Cookie[] theCookies = new Cookie[c.size()];
+		Cookie[] c = null;
 		
-		for(int i=0; i<theCookies.length; i++) {
-			theCookies[i] = (Cookie)e.nextElement();
+		if(cookies != null) {
+			return (Cookie[])cookies.values().toArray(new Cookie[cookies.size()]);
 		}
 		
-		return theCookies;
+		c = request.getCookies();
+		
+		return (c == null ? NO_COOKIES : c);
 	}
 	
 	public Cookie getCookie(String name) {
-		return (Cookie)cookies.get(name);
+		Cookie[] c = null;
+		Cookie cookie = null;
+		
+		if(cookies != null) {
+			return (Cookie)cookies.get(name);
+		}
+		
+		c = getCookies();
+		
+		/** The last cookie of a name wins, as when they are put in a map **/
+		for(int i=0; i<c.length; i++) {
+			if(c[i].getName().equals(name)) {
+				cookie = c[i];
+			}
+		}
+		
+		return cookie;
 	}
 	
 	public void setCookie(Cookie cookie) {
+		if(cookies == null) {
+			Cookie[] c = getCookies();
+			
+			cookies = new LinkedHashMap();
+			
+			for(int i=0; i<c.length; i++) {
+				cookies.put(c[i].getName(), c[i]);
+			}
+		}
+		
 		cookies.put(cookie.getName(), cookie);
 	}
 	
 	public void addCookie(Cookie cookie) {
-		cookies.put(cookie.getName(), cookie);
+		setCookie(cookie);
+	}
+	
+	private LinkedList getChangedHeader(String name) {
+		return (headers == null ? null : (LinkedList)headers.get(name.toLowerCase()));
 	}
 	
 	public long getDateHeader(String name) {
@@ -187,46 +466,72 @@ public class MutableHttpRequest extends HttpServletRequestWrapper {
 	}
 	
 	public String getHeader(String name) {
-		String header = null;
-		LinkedList values = (LinkedList)headers.get(name.toLowerCase());
+		LinkedList values = getChangedHeader(name);
 		
-		if(values != null) {
-			header = (String)values.getFirst();
+		if(values == null) {
+			return request.getHeader(name);
 		}
 		
-		return header;
+		return (String)values.getFirst();
 	}
 	
 	public void setHeader(String name, String value) {
-		LinkedList values = (LinkedList)headers.get(name);
+		LinkedList values = getChangedHeader(name);
 		
-		if(values != null) {
-			values.add(value);
-		} else {
+		if(values == null) {
+			Enumeration e = request.getHeaders(name);
+			
 			values = new LinkedList();
-			values.add(value);
-			headers.put(name, values);
+			
+			if(e != null) {
+				values.addAll(Collections.list(e));
+			}
+			
+			if(values.isEmpty() && request.getHeader(name) == null) {
+				if(headerNames == null) {
+					headerNames = new LinkedList();
+				}
+				
+				headerNames.add(name);
+			}
+			
+			if(headers == null) {
+				headers = new HashMap();
+			}
+			
+			headers.put(name.toLowerCase(), values);
 		}
+		
+		values.add(value);
 	}
 	
 	public Enumeration getHeaderNames() {
-		return Collections.enumeration(headerNames);
+		LinkedList names = null;
+		
+		if(headerNames == null) {
+			return request.getHeaderNames();
+		}
+		
+		names = new LinkedList(Collections.list(request.getHeaderNames()));
+		names.addAll(headerNames);
+		
+		return Collections.enumeration(names);
 	}
 	
 	public Enumeration getHeaders(String name) {
-		return Collections.enumeration((Collection)headers.get(name.toLowerCase()));
+		LinkedList values = getChangedHeader(name);
+		
+		if(values == null) {
+			return request.getHeaders(name);
+		}
+		
+		return Collections.enumeration(values);
 	}
 	
 	public int getIntHeader(String name) throws NumberFormatException {
-		int result = -1;
-		LinkedList values = (LinkedList)headers.get(name);
-		
-		if(values != null) {
-			String value = (String)values.getFirst();
-			result = Integer.parseInt(value);
-		}
+		String value = getHeader(name);
 		
-		return result;
+		return (value == null ? -1 : Integer.parseInt(value));
 	}
 	
 }
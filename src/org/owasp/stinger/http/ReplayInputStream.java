@@ -0,0 +1,85 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+package org.owasp.stinger.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+
+/**
+ * Serves a body that Stinger already read, so the servlet can read it
+ * once more. All bytes are available, so a ReadListener is told so at
+ * once.
+ */
+class ReplayInputStream extends ServletInputStream {
+	
+	private final InputStream in;
+	
+	private boolean finished = false;
+	
+	ReplayInputStream(InputStream in) {
+		this.in = in;
+	}
+	
+	public int read() throws IOException {
+		int c = in.read();
+		
+		finished = (c == -1);
+		
+		return c;
+	}
+	
+	public int read(byte[] b, int off, int len) throws IOException {
+		int read = in.read(b, off, len);
+		
+		finished = (read == -1);
+		
+		return read;
+	}
+	
+	public int available() throws IOException {
+		return in.available();
+	}
+	
+	public void close() throws IOException {
+		in.close();
+	}
+	
+	public boolean isFinished() {
+		return finished;
+	}
+	
+	public boolean isReady() {
+		return true;
+	}
+	
+	public void setReadListener(ReadListener listener) {
+		try {
+			listener.onDataAvailable();
+			listener.onAllDataRead();
+		} catch (Throwable t) {
+			listener.onError(t);
+		}
+	}
+}
@@ -0,0 +1,144 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+package org.owasp.stinger.http;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Bytes kept in memory up to a threshold and in a temporary file beyond
+ * it, so a large body is never held in the heap. The bytes can be read
+ * back any number of times.
+ */
+public class SpoolBuffer {
+	
+	private final int threshold;
+	
+	private final File directory;
+	
+	private byte[] memory = new byte[256];
+	
+	private int count = 0;
+	
+	private File file = null;
+	
+	private OutputStream out = null;
+	
+	private long size = 0;
+	
+	/**
+	 * @param threshold bytes kept in memory
+	 * @param directory where the temporary file goes, null for java.io.tmpdir
+	 */
+	public SpoolBuffer(int threshold, File directory) {
+		this.threshold = threshold;
+		this.directory = directory;
+	}
+	
+	public void write(byte[] b, int off, int len) throws IOException {
+		if(file == null && count + len <= threshold) {
+			if(count + len > memory.length) {
+				byte[] grown = new byte[Math.min(threshold, Math.max(count + len, memory.length * 2))];
+				
+				System.arraycopy(memory, 0, grown, 0, count);
+				memory = grown;
+			}
+			
+			System.arraycopy(b, off, memory, count, len);
+			count += len;
+		} else {
+			if(file == null) {
+				file = File.createTempFile("stinger-", ".spool", directory);
+				out = new BufferedOutputStream(new FileOutputStream(file));
+				out.write(memory, 0, count);
+				memory = null;
+			}
+			
+			out.write(b, off, len);
+		}
+		
+		size += len;
+	}
+	
+	/**
+	 * Finish writing, flushing the temporary file
+	 */
+	public void close() throws IOException {
+		if(out != null) {
+			out.close();
+			out = null;
+		}
+	}
+	
+	public InputStream getInputStream() throws IOException {
+		if(file == null) {
+			return new ByteArrayInputStream(memory, 0, count);
+		}
+		
+		close();
+		
+		return new FileInputStream(file);
+	}
+	
+	public long size() {
+		return size;
+	}
+	
+	public boolean isInMemory() {
+		return file == null;
+	}
+	
+	/**
+	 * The temporary file, null while the bytes are in memory
+	 */
+	public File getFile() {
+		return file;
+	}
+	
+	/**
+	 * Where the temporary file goes
+	 */
+	public File getDirectory() {
+		return (directory != null ? directory : new File(System.getProperty("java.io.tmpdir")));
+	}
+	
+	public void delete() {
+		try {
+			close();
+		} catch (IOException ioe) {
+			/** Deleting anyway **/
+		}
+		
+		if(file != null) {
+			file.delete();
+		}
+		
+		memory = null;
+	}
+}
@@ -0,0 +1,157 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+package org.owasp.stinger.http;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+import javax.servlet.http.Part;
+
+/**
+ * A part of a multipart request, spooled while it was read. File parts
+ * have a filename and are validated by Stinger; text fields are kept as
+ * parts only so that MutableHttpRequest.getParts returns the whole body.
+ */
+public class UploadedFile implements Part {
+	
+	private final String name;
+	
+	private final String filename;
+	
+	private final String contentType;
+	
+	/** Part headers by lower case name **/
+	private final Map headers;
+	
+	private final SpoolBuffer spool;
+	
+	/**
+	 * @param filename the file name, null for a text field
+	 * @param headers the part headers by lower case name
+	 */
+	public UploadedFile(String name, String filename, String contentType, Map headers, SpoolBuffer spool) {
+		this.name = name;
+		this.filename = filename;
+		this.contentType = contentType;
+		this.headers = headers;
+		this.spool = spool;
+	}
+	
+	/**
+	 * The form field name
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	public String getFilename() {
+		return filename;
+	}
+	
+	public String getSubmittedFileName() {
+		return filename;
+	}
+	
+	public String getContentType() {
+		return contentType;
+	}
+	
+	public String getHeader(String name) {
+		return (String)headers.get(name.toLowerCase());
+	}
+	
+	/**
+	 * The parser keeps one value per header name, the last one sent
+	 */
+	public Collection getHeaders(String name) {
+		String value = getHeader(name);
+		
+		return (value != null ? Collections.singletonList(value) : Collections.EMPTY_LIST);
+	}
+	
+	public Collection getHeaderNames() {
+		return Collections.unmodifiableSet(headers.keySet());
+	}
+	
+	/**
+	 * Bytes read so far; the full size once the part was read completely
+	 */
+	public long getSize() {
+		return spool.size();
+	}
+	
+	public InputStream getInputStream() throws IOException {
+		return spool.getInputStream();
+	}
+	
+	/**
+	 * The temporary file holding the content, null if it is small enough
+	 * to be kept in memory
+	 */
+	public File getFile() {
+		return spool.getFile();
+	}
+	
+	/**
+	 * Copy the content to a file. A relative name is resolved against the
+	 * directory parts are spooled to.
+	 */
+	public void write(String fileName) throws IOException {
+		File target = new File(fileName);
+		InputStream in = null;
+		OutputStream out = null;
+		byte[] buffer = new byte[8192];
+		int read = 0;
+		
+		if(!target.isAbsolute()) {
+			target = new File(spool.getDirectory(), fileName);
+		}
+		
+		try {
+			in = spool.getInputStream();
+			out = new FileOutputStream(target);
+			
+			while((read = in.read(buffer)) > 0) {
+				out.write(buffer, 0, read);
+			}
+		} finally {
+			if(in != null) {
+				in.close();
+			}
+			
+			if(out != null) {
+				out.close();
+			}
+		}
+	}
+	
+	public void delete() {
+		spool.delete();
+	}
+}
@@ -0,0 +1,104 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+package org.owasp.stinger.http;
+
+import org.owasp.stinger.Severity;
+import org.owasp.stinger.rules.Limits;
+import org.owasp.stinger.rules.Rule;
+import org.owasp.stinger.rules.SignatureSet;
+import org.owasp.stinger.rules.ValidationPlan;
+
+/**
+ * Base of the handlers that move parsed body values into the request.
+ * Values are checked as soon as they are parsed, and a fatal violation
+ * stops the collector so the caller can stop reading the body; the
+ * violation itself is then reported by Stinger.validate as usual.
+ */
+public abstract class ValueCollector {
+	
+	protected final MutableHttpRequest request;
+	
+	protected final ValidationPlan plan;
+	
+	private boolean stopped = false;
+	
+	/** Parameters collected so far **/
+	private long count = 0;
+	
+	protected ValueCollector(MutableHttpRequest request, ValidationPlan plan) {
+		this.request = request;
+		this.plan = plan;
+	}
+	
+	/**
+	 * True once a fatal violation was found and there is no point in
+	 * reading the rest of the body
+	 */
+	public boolean isStopped() {
+		return stopped;
+	}
+	
+	/**
+	 * Count a parameter against the limits. Returns false if it exceeds one,
+	 * in which case no regex should run on it; if the limit is fatal the
+	 * collector stops as well. The parameter is still added to the request,
+	 * so Stinger.validate reports the violation.
+	 */
+	protected boolean accept(String name, String value) {
+		Limits limits = plan.getLimits();
+		
+		if(Limits.exceeds(++count, limits.getMaxParameters()) || Limits.exceeds(name.length(), limits.getMaxNameLength()) || Limits.exceeds(value.length(), limits.getMaxValueLength())) {
+			if(Severity.FATAL.equals(limits.getExceeded().getSeverity())) {
+				stopped = true;
+			}
+			
+			return false;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Returns true if the value contains a signature, and stops if that is
+	 * fatal
+	 */
+	protected boolean scan(SignatureSet signatures, String value) {
+		if(signatures.isEmpty() || signatures.find(value) == null) {
+			return false;
+		}
+		
+		if(Severity.FATAL.equals(signatures.getMatched().getSeverity())) {
+			stopped = true;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Stop if the value broke the rule and that is fatal
+	 */
+	protected void check(Rule rule, boolean valid) {
+		if(rule != null && !valid && Severity.FATAL.equals(rule.getMalformed().getSeverity())) {
+			stopped = true;
+		}
+	}
+}
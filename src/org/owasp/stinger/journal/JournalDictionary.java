@@ -0,0 +1,303 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+
+package org.owasp.stinger.journal;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Maps the strings of a journal, rule names and rule set paths, to int
+ * ids, so records only store the id. A new string gets its id right away;
+ * the "id TAB string" line for the dictionary file is queued and written
+ * by a background thread, so request threads never wait on disk I/O.
+ */
+public class JournalDictionary implements Runnable {
+	
+	/** Strings beyond this many get the OVERFLOW id **/
+	public final static int MAX_ENTRIES = 100000;
+	
+	/** Stands for the strings a journal does not intern, stored as OVERFLOW **/
+	public final static String OTHER = "<other>";
+	
+	/** How long the writer sleeps when there is nothing to write **/
+	private final static long IDLE_NANOS = 100L * 1000 * 1000;
+	
+	private final ConcurrentHashMap ids = new ConcurrentHashMap();
+	
+	/** Strings by id, ids that lost a race to add the same string stay empty **/
+	private final ConcurrentHashMap strings = new ConcurrentHashMap();
+	
+	private final AtomicInteger next = new AtomicInteger();
+	
+	/** Lines not yet written, at most MAX_ENTRIES **/
+	private final ConcurrentLinkedQueue pending = new ConcurrentLinkedQueue();
+	
+	private volatile Writer out = null;
+	
+	private Thread thread = null;
+	
+	private volatile boolean running = false;
+	
+	private JournalDictionary() {
+		strings.put(Integer.valueOf(JournalFormat.OVERFLOW), OTHER);
+		strings.put(Integer.valueOf(JournalFormat.NONE), "NULL");
+		ids.put(OTHER, Integer.valueOf(JournalFormat.OVERFLOW));
+		next.set(JournalFormat.NONE + 1);
+	}
+	
+	/**
+	 * Load the dictionary file if it exists and start writing new strings
+	 * to its end
+	 */
+	public static JournalDictionary open(File file) throws IOException {
+		JournalDictionary dictionary = load(file);
+		
+		dictionary.out = new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8");
+		dictionary.running = true;
+		dictionary.thread = new Thread(dictionary, "Stinger-JournalDictionary " + file);
+		dictionary.thread.setDaemon(true);
+		dictionary.thread.start();
+		
+		return dictionary;
+	}
+	
+	/**
+	 * Load the dictionary file read-only
+	 */
+	public static JournalDictionary load(File file) throws IOException {
+		JournalDictionary dictionary = new JournalDictionary();
+		BufferedReader in = null;
+		String line = null;
+		
+		if(!file.exists()) {
+			return dictionary;
+		}
+		
+		try {
+			in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+			
+			while((line = in.readLine()) != null) {
+				int tab = line.indexOf('\t');
+				
+				if(tab > 0) {
+					int id = Integer.parseInt(line.substring(0, tab));
+					String s = unescape(line.substring(tab + 1));
+					
+					dictionary.strings.put(Integer.valueOf(id), s);
+					dictionary.ids.put(s, Integer.valueOf(id));
+					dictionary.next.set(Math.max(dictionary.next.get(), id + 1));
+				}
+			}
+		} finally {
+			if(in != null) {
+				in.close();
+			}
+		}
+		
+		return dictionary;
+	}
+	
+	/**
+	 * Returns the id of s, adding it to the dictionary if it is new. Never
+	 * blocks: the file is written later by the background thread.
+	 */
+	public int getId(String s) {
+		Integer id = null;
+		Integer previous = null;
+		int candidate = 0;
+		
+		if(s == null) {
+			return JournalFormat.NONE;
+		}
+		
+		id = (Integer)ids.get(s);
+		
+		if(id != null) {
+			return id.intValue();
+		}
+		
+		if(out == null || next.get() >= MAX_ENTRIES) {
+			return JournalFormat.OVERFLOW;
+		}
+		
+		candidate = next.getAndIncrement();
+		
+		if(candidate >= MAX_ENTRIES) {
+			return JournalFormat.OVERFLOW;
+		}
+		
+		id = Integer.valueOf(candidate);
+		
+		/** The string is in strings before any thread can see its id **/
+		strings.put(id, s);
+		previous = (Integer)ids.putIfAbsent(s, id);
+		
+		if(previous != null) {
+			/** Another thread added s first, the candidate id stays unused **/
+			strings.remove(id);
+			return previous.intValue();
+		}
+		
+		pending.add(id + "\t" + escape(s) + "\n");
+		
+		return candidate;
+	}
+	
+	public void run() {
+		while(running) {
+			if(!drain()) {
+				LockSupport.parkNanos(IDLE_NANOS);
+			}
+		}
+	}
+	
+	/**
+	 * Write and flush the queued lines, returns false if there were none
+	 */
+	private synchronized boolean drain() {
+		String line = null;
+		boolean written = false;
+		
+		if(out == null) {
+			return false;
+		}
+		
+		try {
+			while((line = (String)pending.poll()) != null) {
+				out.write(line);
+				written = true;
+			}
+			
+			if(written) {
+				out.flush();
+			}
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+		}
+		
+		return written;
+	}
+	
+	/**
+	 * Returns the id of s without adding it, or -1
+	 */
+	public int find(String s) {
+		Integer id = (Integer)ids.get(s);
+		
+		return (id != null ? id.intValue() : -1);
+	}
+	
+	public String getString(int id) {
+		return (String)strings.get(Integer.valueOf(id));
+	}
+	
+	/**
+	 * One more than the highest id handed out
+	 */
+	public int size() {
+		return Math.min(next.get(), MAX_ENTRIES);
+	}
+	
+	/**
+	 * Stop the background thread and write what is left
+	 */
+	public void close() throws IOException {
+		running = false;
+		
+		if(thread != null) {
+			LockSupport.unpark(thread);
+			
+			try {
+				thread.join();
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		
+		synchronized(this) {
+			drain();
+			
+			if(out != null) {
+				out.close();
+				out = null;
+			}
+		}
+	}
+	
+	private static String escape(String s) {
+		StringBuffer buf = new StringBuffer(s.length());
+		
+		for(int i=0; i<s.length(); i++) {
+			char c = s.charAt(i);
+			
+			if(c == '\\') {
+				buf.append("\\\\");
+			} else if(c == '\n') {
+				buf.append("\\n");
+			} else if(c == '\r') {
+				buf.append("\\r");
+			} else if(c == '\t') {
+				buf.append("\\t");
+			} else {
+				buf.append(c);
+			}
+		}
+		
+		return buf.toString();
+	}
+	
+	private static String unescape(String s) {
+		StringBuffer buf = new StringBuffer(s.length());
+		
+		for(int i=0; i<s.length(); i++) {
+			char c = s.charAt(i);
+			
+			if(c == '\\' && i + 1 < s.length()) {
+				c = s.charAt(++i);
+				
+				if(c == 'n') {
+					c = '\n';
+				} else if(c == 'r') {
+					c = '\r';
+				} else if(c == 't') {
+					c = '\t';
+				}
+			}
+			
+			buf.append(c);
+		}
+		
+		return buf.toString();
+	}
+}
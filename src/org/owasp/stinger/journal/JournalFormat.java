@@ -0,0 +1,150 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+
+package org.owasp.stinger.journal;
+
+/**
+ * Layout of the violation journal. A journal is a directory holding a
+ * string dictionary, prefix.dict, and segments named prefix-NNNNNN.sj.
+ *
+ * A segment starts with a HEADER_SIZE byte header followed by fixed size
+ * records. All numbers are big endian.
+ *
+ * Header:
+ *   0  long  MAGIC
+ *   8  int   VERSION
+ *   12 int   RECORD_SIZE
+ *   16 long  creation time
+ *
+ * Record:
+ *   0  int   COMMITTED once the record is complete, 0 before
+ *   4  int   rule id, the dictionary id of the rule, cookie or limit name
+ *   8  long  timestamp in milliseconds
+ *   16 int   uri id, the dictionary id of the rule set path
+ *   20 byte  category, see CATEGORIES
+ *   21 byte  severity, see SEVERITIES
+ *   22 byte  length of the IP address, 4 or 16
+ *   23 byte  length of the value excerpt in bytes
+ *   24 16    IP address
+ *   40 long  FNV-1a hash of the session id, 0 without one
+ *   48 80    value excerpt, UTF-8
+ */
+public class JournalFormat {
+	
+	public final static long MAGIC = 0x5354494E474A524EL;
+	
+	public final static int VERSION = 1;
+	
+	public final static int HEADER_SIZE = 64;
+	
+	public final static int RECORD_SIZE = 128;
+	
+	public final static int COMMITTED = 0x56494F4C;
+	
+	public final static int OFFSET_MARKER = 0;
+	
+	public final static int OFFSET_RULE = 4;
+	
+	public final static int OFFSET_TIME = 8;
+	
+	public final static int OFFSET_URI = 16;
+	
+	public final static int OFFSET_CATEGORY = 20;
+	
+	public final static int OFFSET_SEVERITY = 21;
+	
+	public final static int OFFSET_IP_LENGTH = 22;
+	
+	public final static int OFFSET_VALUE_LENGTH = 23;
+	
+	public final static int OFFSET_IP = 24;
+	
+	public final static int OFFSET_SESSION = 40;
+	
+	public final static int OFFSET_VALUE = 48;
+	
+	public final static int IP_SIZE = 16;
+	
+	public final static int VALUE_SIZE = RECORD_SIZE - OFFSET_VALUE;
+	
+	/** Dictionary id of strings that are not interned or did not fit into the dictionary **/
+	public final static int OVERFLOW = 0;
+	
+	/** Dictionary id of null **/
+	public final static int NONE = 1;
+	
+	/** Category names by code, anything else is stored as 0. New names are appended so old journals keep their meaning **/
+	public final static String[] CATEGORIES = { "OTHER", "MISSING", "MALFORMED", "EXCEEDED", "SIGNATURE" };
+	
+	/** Severity names by code, anything else is stored as 0 **/
+	public final static String[] SEVERITIES = { "OTHER", "IGNORE", "CONTINUE", "FATAL" };
+	
+	public final static String DICTIONARY_SUFFIX = ".dict";
+	
+	public final static String SEGMENT_SUFFIX = ".sj";
+	
+	private JournalFormat() {
+	
+	}
+	
+	public static String segmentName(String prefix, int sequence) {
+		String number = String.valueOf(sequence);
+		
+		while(number.length() < 6) {
+			number = "0" + number;
+		}
+		
+		return prefix + "-" + number + SEGMENT_SUFFIX;
+	}
+	
+	/**
+	 * Index of name in names ignoring case, or 0
+	 */
+	public static byte code(String[] names, String name) {
+		for(int i=1; name != null && i<names.length; i++) {
+			if(names[i].equalsIgnoreCase(name)) {
+				return (byte)i;
+			}
+		}
+		
+		return 0;
+	}
+	
+	public static String name(String[] names, int code) {
+		return (code > 0 && code < names.length ? names[code] : names[0]);
+	}
+	
+	/**
+	 * 64 bit FNV-1a hash of the chars of s
+	 */
+	public static long hash(String s) {
+		long hash = 0xcbf29ce484222325L;
+		
+		for(int i=0; i<s.length(); i++) {
+			hash ^= s.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		
+		return hash;
+	}
+}
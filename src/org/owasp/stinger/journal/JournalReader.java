@@ -0,0 +1,304 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+
+package org.owasp.stinger.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Date;
+
+/**
+ * Command line reader for violation journals. Segments are mapped
+ * read-only and records are filtered on the mapped bytes; only matching
+ * records are turned into text.
+ *
+ * Usage: JournalReader directory [options]
+ *
+ *   -prefix name       journal prefix, default stinger-journal
+ *   -from time         records at or after time
+ *   -to time           records before time
+ *   -ip address        records from the IP address
+ *   -rule name         records for the rule, cookie or limit name
+ *   -uri prefix        records for rule set paths starting with prefix
+ *   -count             print the number of matching records only
+ *
+ * Times are milliseconds since the epoch or yyyy-MM-dd'T'HH:mm:ss.
+ */
+public class JournalReader {
+	
+	public final static String DEFAULT_PREFIX = "stinger-journal";
+	
+	private final static String TIME_FORMAT = "yyyy-MM-dd'T'HH:mm:ss";
+	
+	private File directory = null;
+	
+	private String prefix = DEFAULT_PREFIX;
+	
+	private long from = Long.MIN_VALUE;
+	
+	private long to = Long.MAX_VALUE;
+	
+	private byte[] ip = null;
+	
+	private String rule = null;
+	
+	private String uri = null;
+	
+	private boolean countOnly = false;
+	
+	/** Dictionary ids allowed by the rule and uri filters, null for any **/
+	private int ruleId = -1;
+	
+	private BitSet uriIds = null;
+	
+	private JournalDictionary dictionary = null;
+	
+	private final SimpleDateFormat format = new SimpleDateFormat(TIME_FORMAT);
+	
+	public static void main(String[] args) {
+		JournalReader reader = new JournalReader();
+		
+		try {
+			reader.parseArguments(args);
+			System.out.println(reader.scan() + " record(s)");
+		} catch (IllegalArgumentException iae) {
+			System.err.println(iae.getMessage());
+			System.err.println("Usage: JournalReader directory [-prefix name] [-from time] [-to time] [-ip address] [-rule name] [-uri prefix] [-count]");
+			System.exit(1);
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+			System.exit(2);
+		}
+	}
+	
+	private void parseArguments(String[] args) throws IOException {
+		for(int i=0; i<args.length; i++) {
+			String arg = args[i];
+			
+			if(arg.equals("-count")) {
+				countOnly = true;
+			} else if(arg.startsWith("-")) {
+				if(i + 1 >= args.length) {
+					throw new IllegalArgumentException("Missing value for " + arg);
+				}
+				
+				String value = args[++i];
+				
+				if(arg.equals("-prefix")) {
+					prefix = value;
+				} else if(arg.equals("-from")) {
+					from = parseTime(value);
+				} else if(arg.equals("-to")) {
+					to = parseTime(value);
+				} else if(arg.equals("-ip")) {
+					ip = InetAddress.getByName(value).getAddress();
+				} else if(arg.equals("-rule")) {
+					rule = value;
+				} else if(arg.equals("-uri")) {
+					uri = value;
+				} else {
+					throw new IllegalArgumentException("Unknown option " + arg);
+				}
+			} else if(directory == null) {
+				directory = new File(arg);
+			} else {
+				throw new IllegalArgumentException("Unexpected argument " + arg);
+			}
+		}
+		
+		if(directory == null) {
+			throw new IllegalArgumentException("No journal directory given");
+		}
+	}
+	
+	private long parseTime(String value) {
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException nfe) {
+			try {
+				return format.parse(value).getTime();
+			} catch (ParseException pe) {
+				throw new IllegalArgumentException("Invalid time " + value);
+			}
+		}
+	}
+	
+	/**
+	 * Print the matching records of all segments in order, returns how many matched
+	 */
+	public long scan() throws IOException {
+		String[] names = directory.list();
+		long matches = 0;
+		
+		if(names == null) {
+			throw new IllegalArgumentException("Not a directory: " + directory);
+		}
+		
+		dictionary = JournalDictionary.load(new File(directory, prefix + JournalFormat.DICTIONARY_SUFFIX));
+		
+		/** Resolve the string filters to dictionary ids once **/
+		if(rule != null) {
+			ruleId = dictionary.find(rule);
+			
+			if(ruleId < 0) {
+				return 0;
+			}
+		}
+		
+		if(uri != null) {
+			uriIds = new BitSet();
+			
+			for(int id=0; id<dictionary.size(); id++) {
+				String s = dictionary.getString(id);
+				
+				if(s != null && s.startsWith(uri)) {
+					uriIds.set(id);
+				}
+			}
+		}
+		
+		Arrays.sort(names);
+		
+		for(int i=0; i<names.length; i++) {
+			if(names[i].startsWith(prefix + "-") && names[i].endsWith(JournalFormat.SEGMENT_SUFFIX)) {
+				matches += scan(new File(directory, names[i]));
+			}
+		}
+		
+		return matches;
+	}
+	
+	private long scan(File segment) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(segment, "r");
+		MappedByteBuffer buffer = null;
+		long matches = 0;
+		
+		try {
+			buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+		} finally {
+			file.close();
+		}
+		
+		if(buffer.capacity() < JournalFormat.HEADER_SIZE || buffer.getLong(0) != JournalFormat.MAGIC || buffer.getInt(12) != JournalFormat.RECORD_SIZE) {
+			System.err.println("Skipping " + segment + ": not a journal segment");
+			return 0;
+		}
+		
+		for(int offset=JournalFormat.HEADER_SIZE; offset + JournalFormat.RECORD_SIZE <= buffer.capacity(); offset+=JournalFormat.RECORD_SIZE) {
+			if(buffer.getInt(offset + JournalFormat.OFFSET_MARKER) != JournalFormat.COMMITTED) {
+				/** Records are claimed in order, but a slot may still be unfinished, keep going **/
+				continue;
+			}
+			
+			if(matches(buffer, offset)) {
+				matches++;
+				
+				if(!countOnly) {
+					System.out.println(format(buffer, offset));
+				}
+			}
+		}
+		
+		return matches;
+	}
+	
+	private boolean matches(MappedByteBuffer buffer, int offset) {
+		long time = buffer.getLong(offset + JournalFormat.OFFSET_TIME);
+		
+		if(time < from || time >= to) {
+			return false;
+		}
+		
+		if(ruleId >= 0 && buffer.getInt(offset + JournalFormat.OFFSET_RULE) != ruleId) {
+			return false;
+		}
+		
+		if(uriIds != null && !uriIds.get(buffer.getInt(offset + JournalFormat.OFFSET_URI))) {
+			return false;
+		}
+		
+		if(ip != null) {
+			if(buffer.get(offset + JournalFormat.OFFSET_IP_LENGTH) != ip.length) {
+				return false;
+			}
+			
+			for(int i=0; i<ip.length; i++) {
+				if(buffer.get(offset + JournalFormat.OFFSET_IP + i) != ip[i]) {
+					return false;
+				}
+			}
+		}
+		
+		return true;
+	}
+	
+	private String format(MappedByteBuffer buffer, int offset) throws UnsupportedEncodingException {
+		StringBuffer buf = new StringBuffer();
+		int ipLength = buffer.get(offset + JournalFormat.OFFSET_IP_LENGTH);
+		int valueLength = buffer.get(offset + JournalFormat.OFFSET_VALUE_LENGTH) & 0xFF;
+		byte[] address = new byte[ipLength];
+		byte[] value = new byte[valueLength];
+		
+		for(int i=0; i<ipLength; i++) {
+			address[i] = buffer.get(offset + JournalFormat.OFFSET_IP + i);
+		}
+		
+		for(int i=0; i<valueLength; i++) {
+			value[i] = buffer.get(offset + JournalFormat.OFFSET_VALUE + i);
+		}
+		
+		buf.append(format.format(new Date(buffer.getLong(offset + JournalFormat.OFFSET_TIME)))).append('\t');
+		buf.append(JournalFormat.name(JournalFormat.SEVERITIES, buffer.get(offset + JournalFormat.OFFSET_SEVERITY))).append('\t');
+		buf.append(JournalFormat.name(JournalFormat.CATEGORIES, buffer.get(offset + JournalFormat.OFFSET_CATEGORY))).append('\t');
+		buf.append(dictionary.getString(buffer.getInt(offset + JournalFormat.OFFSET_RULE))).append('\t');
+		buf.append(dictionary.getString(buffer.getInt(offset + JournalFormat.OFFSET_URI))).append('\t');
+		
+		try {
+			buf.append(ipLength > 0 ? InetAddress.getByAddress(address).getHostAddress() : "NULL").append('\t');
+		} catch (IOException ioe) {
+			buf.append("NULL\t");
+		}
+		
+		buf.append(Long.toHexString(buffer.getLong(offset + JournalFormat.OFFSET_SESSION))).append('\t');
+		
+		/** Keep one record per line **/
+		String excerpt = new String(value, "UTF-8");
+		
+		for(int i=0; i<excerpt.length(); i++) {
+			char c = excerpt.charAt(i);
+			
+			buf.append(Character.isISOControl(c) ? '?' : c);
+		}
+		
+		return buf.toString();
+	}
+}
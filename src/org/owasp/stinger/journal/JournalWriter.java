@@ -0,0 +1,348 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+
+package org.owasp.stinger.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Appends violation records to memory-mapped journal segments. A writer
+ * claims a record slot with a single CAS on the segment's position and
+ * then fills the slot in place, so concurrent appends never wait on each
+ * other or on disk I/O. When a segment is full the next one is created.
+ *
+ * There is one writer per journal, shared by every Journal action that
+ * names the same directory and prefix.
+ */
+public class JournalWriter {
+	
+	public final static long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+	
+	private static ConcurrentHashMap writers = new ConcurrentHashMap();
+	
+	private final File directory;
+	
+	private final String prefix;
+	
+	private final int recordsPerSegment;
+	
+	private final JournalDictionary dictionary;
+	
+	private final AtomicLong appended = new AtomicLong();
+	
+	private volatile Segment current = null;
+	
+	private boolean closed = false;
+	
+	/** One mapped segment file **/
+	private static class Segment {
+		
+		private final int sequence;
+		
+		private final RandomAccessFile file;
+		
+		private final MappedByteBuffer buffer;
+		
+		private final int capacity;
+		
+		/** Next free record slot **/
+		private final AtomicLong position = new AtomicLong();
+		
+		private Segment(File path, int sequence, int capacity) throws IOException {
+			long size = JournalFormat.HEADER_SIZE + (long)capacity * JournalFormat.RECORD_SIZE;
+			
+			this.sequence = sequence;
+			this.capacity = capacity;
+			this.file = new RandomAccessFile(path, "rw");
+			this.file.setLength(size);
+			this.buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+			
+			buffer.putLong(0, JournalFormat.MAGIC);
+			buffer.putInt(8, JournalFormat.VERSION);
+			buffer.putInt(12, JournalFormat.RECORD_SIZE);
+			buffer.putLong(16, System.currentTimeMillis());
+		}
+		
+		/**
+		 * Claim the next slot, returns its offset or -1 if the segment is full
+		 */
+		private int claim() {
+			long slot = position.getAndIncrement();
+			
+			if(slot >= capacity) {
+				return -1;
+			}
+			
+			return JournalFormat.HEADER_SIZE + (int)slot * JournalFormat.RECORD_SIZE;
+		}
+		
+		private void close() throws IOException {
+			buffer.force();
+			file.close();
+		}
+	}
+	
+	private JournalWriter(File directory, String prefix, long segmentSize) throws IOException {
+		long records = (segmentSize - JournalFormat.HEADER_SIZE) / JournalFormat.RECORD_SIZE;
+		int sequence = 0;
+		
+		this.directory = directory;
+		this.prefix = prefix;
+		this.recordsPerSegment = (int)Math.max(1, Math.min(records, (Integer.MAX_VALUE - JournalFormat.HEADER_SIZE) / JournalFormat.RECORD_SIZE));
+		
+		directory.mkdirs();
+		dictionary = JournalDictionary.open(new File(directory, prefix + JournalFormat.DICTIONARY_SUFFIX));
+		sequence = nextSequence();
+		current = new Segment(new File(directory, JournalFormat.segmentName(prefix, sequence)), sequence, recordsPerSegment);
+	}
+	
+	/**
+	 * Returns the writer for the journal, opening it on first use. The
+	 * segment size of the first caller is kept.
+	 */
+	public static JournalWriter getWriter(String directory, String prefix, long segmentSize) throws IOException {
+		String key = new File(directory, prefix).getAbsolutePath();
+		JournalWriter writer = (JournalWriter)writers.get(key);
+		
+		if(writer == null) {
+			synchronized(writers) {
+				writer = (JournalWriter)writers.get(key);
+				
+				if(writer == null) {
+					writer = new JournalWriter(new File(directory), prefix, segmentSize);
+					writers.put(key, writer);
+				}
+			}
+		}
+		
+		return writer;
+	}
+	
+	public static void closeAll() {
+		synchronized(writers) {
+			Iterator itr = writers.values().iterator();
+			
+			while(itr.hasNext()) {
+				try {
+					((JournalWriter)itr.next()).close();
+				} catch (IOException ioe) {
+					ioe.printStackTrace();
+				}
+			}
+			
+			writers.clear();
+		}
+	}
+	
+	/**
+	 * The sequence number after the last existing segment, so a restart
+	 * never overwrites old records
+	 */
+	private int nextSequence() {
+		String[] names = directory.list();
+		int next = 0;
+		
+		for(int i=0; names != null && i<names.length; i++) {
+			String name = names[i];
+			
+			if(name.startsWith(prefix + "-") && name.endsWith(JournalFormat.SEGMENT_SUFFIX)) {
+				try {
+					int sequence = Integer.parseInt(name.substring(prefix.length() + 1, name.length() - JournalFormat.SEGMENT_SUFFIX.length()));
+					next = Math.max(next, sequence + 1);
+				} catch (NumberFormatException nfe) {
+					/** Not one of ours **/
+				}
+			}
+		}
+		
+		return next;
+	}
+	
+	/**
+	 * Append a record. Returns false if the journal is closed or could not
+	 * create a new segment.
+	 */
+	public boolean append(long time, String rule, String category, String severity, String uri, String ip, String session, String value) {
+		Segment segment = current;
+		int offset = -1;
+		
+		while(segment != null && (offset = segment.claim()) < 0) {
+			segment = roll(segment);
+		}
+		
+		if(segment == null) {
+			return false;
+		}
+		
+		MappedByteBuffer buffer = segment.buffer;
+		
+		buffer.putInt(offset + JournalFormat.OFFSET_RULE, dictionary.getId(rule));
+		buffer.putLong(offset + JournalFormat.OFFSET_TIME, time);
+		buffer.putInt(offset + JournalFormat.OFFSET_URI, dictionary.getId(uri));
+		buffer.put(offset + JournalFormat.OFFSET_CATEGORY, JournalFormat.code(JournalFormat.CATEGORIES, category));
+		buffer.put(offset + JournalFormat.OFFSET_SEVERITY, JournalFormat.code(JournalFormat.SEVERITIES, severity));
+		buffer.put(offset + JournalFormat.OFFSET_IP_LENGTH, (byte)putAddress(buffer, offset + JournalFormat.OFFSET_IP, ip));
+		buffer.put(offset + JournalFormat.OFFSET_VALUE_LENGTH, (byte)putExcerpt(buffer, offset + JournalFormat.OFFSET_VALUE, value));
+		buffer.putLong(offset + JournalFormat.OFFSET_SESSION, (session != null ? JournalFormat.hash(session) : 0));
+		/** Mark the record complete last **/
+		buffer.putInt(offset + JournalFormat.OFFSET_MARKER, JournalFormat.COMMITTED);
+		
+		appended.incrementAndGet();
+		
+		return true;
+	}
+	
+	/**
+	 * Replace the full segment with the next one, unless another thread
+	 * already did
+	 */
+	private synchronized Segment roll(Segment full) {
+		if(closed) {
+			return null;
+		}
+		
+		if(current == full) {
+			try {
+				int sequence = full.sequence + 1;
+				
+				current = new Segment(new File(directory, JournalFormat.segmentName(prefix, sequence)), sequence, recordsPerSegment);
+				/** Appends still filling the old segment write to the mapping, which stays valid after close **/
+				full.close();
+			} catch (IOException ioe) {
+				ioe.printStackTrace();
+				return null;
+			}
+		}
+		
+		return current;
+	}
+	
+	/**
+	 * Write an IPv4 or IPv6 literal as 4 or 16 bytes, returns the length
+	 */
+	private static int putAddress(MappedByteBuffer buffer, int offset, String ip) {
+		int length = 0;
+		int part = 0;
+		int digits = 0;
+		
+		if(ip == null) {
+			return 0;
+		}
+		
+		/** Parse dotted IPv4 by hand, it is by far the most common **/
+		for(int i=0; i<=ip.length(); i++) {
+			char c = (i < ip.length() ? ip.charAt(i) : '.');
+			
+			if(c >= '0' && c <= '9' && digits < 3) {
+				part = part * 10 + (c - '0');
+				digits++;
+			} else if(c == '.' && digits > 0 && part <= 255 && length < 4) {
+				buffer.put(offset + length++, (byte)part);
+				part = 0;
+				digits = 0;
+			} else {
+				length = -1;
+				break;
+			}
+		}
+		
+		if(length == 4) {
+			return 4;
+		}
+		
+		try {
+			/** Only literals reach this point, so there is no name lookup **/
+			byte[] address = (ip.indexOf(':') >= 0 ? InetAddress.getByName(ip).getAddress() : new byte[0]);
+			
+			for(int i=0; i<address.length && i<JournalFormat.IP_SIZE; i++) {
+				buffer.put(offset + i, address[i]);
+			}
+			
+			return Math.min(address.length, JournalFormat.IP_SIZE);
+		} catch (IOException ioe) {
+			return 0;
+		}
+	}
+	
+	/**
+	 * Write the start of value as UTF-8, returns the number of bytes
+	 */
+	private static int putExcerpt(MappedByteBuffer buffer, int offset, String value) {
+		int length = 0;
+		
+		if(value == null) {
+			return 0;
+		}
+		
+		for(int i=0; i<value.length(); i++) {
+			int c = value.charAt(i);
+			int size = (c < 0x80 ? 1 : (c < 0x800 ? 2 : 3));
+			
+			if(Character.isSurrogate((char)c)) {
+				/** Stored as '?' rather than split across the excerpt end **/
+				c = '?';
+				size = 1;
+			}
+			
+			if(length + size > JournalFormat.VALUE_SIZE) {
+				break;
+			}
+			
+			if(size == 1) {
+				buffer.put(offset + length, (byte)c);
+			} else if(size == 2) {
+				buffer.put(offset + length, (byte)(0xC0 | (c >> 6)));
+				buffer.put(offset + length + 1, (byte)(0x80 | (c & 0x3F)));
+			} else {
+				buffer.put(offset + length, (byte)(0xE0 | (c >> 12)));
+				buffer.put(offset + length + 1, (byte)(0x80 | ((c >> 6) & 0x3F)));
+				buffer.put(offset + length + 2, (byte)(0x80 | (c & 0x3F)));
+			}
+			
+			length += size;
+		}
+		
+		return length;
+	}
+	
+	public long getAppended() {
+		return appended.get();
+	}
+	
+	public synchronized void close() throws IOException {
+		if(!closed) {
+			closed = true;
+			current.close();
+			current = null;
+			dictionary.close();
+		}
+	}
+}
@@ -0,0 +1,91 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+package org.owasp.stinger.metrics;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Striped counters by name, such as violations by CATEGORY/SEVERITY.
+ */
+public class Counters {
+	
+	private final ConcurrentHashMap counters = new ConcurrentHashMap();
+	
+	public void increment(String name) {
+		LongAdder counter = (LongAdder)counters.get(name);
+		
+		if(counter == null) {
+			LongAdder created = new LongAdder();
+			
+			counter = (LongAdder)counters.putIfAbsent(name, created);
+			counter = (counter != null ? counter : created);
+		}
+		
+		counter.increment();
+	}
+	
+	public long get(String name) {
+		LongAdder counter = (LongAdder)counters.get(name);
+		
+		return (counter != null ? counter.sum() : 0);
+	}
+	
+	public long getTotal() {
+		long total = 0;
+		Iterator itr = counters.values().iterator();
+		
+		while(itr.hasNext()) {
+			total += ((LongAdder)itr.next()).sum();
+		}
+		
+		return total;
+	}
+	
+	/**
+	 * The current counts sorted by name
+	 */
+	public Map getCounts() {
+		TreeMap result = new TreeMap();
+		Iterator itr = counters.entrySet().iterator();
+		
+		while(itr.hasNext()) {
+			Map.Entry entry = (Map.Entry)itr.next();
+			
+			result.put(entry.getKey(), Long.valueOf(((LongAdder)entry.getValue()).sum()));
+		}
+		
+		return result;
+	}
+	
+	public void reset() {
+		counters.clear();
+	}
+	
+	public String toString() {
+		return getCounts().toString();
+	}
+}
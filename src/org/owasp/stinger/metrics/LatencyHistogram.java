@@ -0,0 +1,118 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+package org.owasp.stinger.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts durations in power of two buckets. Bucket i holds durations
+ * below 2^i nanoseconds, so percentiles are upper bounds within a factor
+ * of two. Recording only increments striped counters.
+ */
+public class LatencyHistogram {
+	
+	/** The last bucket also takes everything above 2^38 ns (about 4.5 minutes) **/
+	public final static int BUCKETS = 40;
+	
+	private final LongAdder[] buckets = new LongAdder[BUCKETS];
+	
+	private final LongAdder total = new LongAdder();
+	
+	public LatencyHistogram() {
+		for(int i=0; i<BUCKETS; i++) {
+			buckets[i] = new LongAdder();
+		}
+	}
+	
+	public void record(long nanos) {
+		int bucket = 64 - Long.numberOfLeadingZeros(Math.max(nanos, 0));
+		
+		buckets[Math.min(bucket, BUCKETS - 1)].increment();
+		total.add(nanos);
+	}
+	
+	public long getCount() {
+		long count = 0;
+		
+		for(int i=0; i<BUCKETS; i++) {
+			count += buckets[i].sum();
+		}
+		
+		return count;
+	}
+	
+	public long getTotalNanos() {
+		return total.sum();
+	}
+	
+	public long getMeanNanos() {
+		long count = getCount();
+		
+		return (count == 0 ? 0 : getTotalNanos() / count);
+	}
+	
+	/**
+	 * Upper bound of the duration below which the given fraction (0..1)
+	 * of the recorded durations fall, 0 if nothing was recorded
+	 */
+	public long getPercentileNanos(double fraction) {
+		long[] counts = new long[BUCKETS];
+		long count = 0;
+		long seen = 0;
+		
+		/** Read every bucket once so the result is consistent with itself **/
+		for(int i=0; i<BUCKETS; i++) {
+			counts[i] = buckets[i].sum();
+			count += counts[i];
+		}
+		
+		for(int i=0; i<BUCKETS && count > 0; i++) {
+			seen += counts[i];
+			
+			if(seen >= Math.ceil(fraction * count)) {
+				return 1L << i;
+			}
+		}
+		
+		return 0;
+	}
+	
+	public void reset() {
+		for(int i=0; i<BUCKETS; i++) {
+			buckets[i].reset();
+		}
+		
+		total.reset();
+	}
+	
+	/**
+	 * count, mean, p50, p99 and p999 in microseconds
+	 */
+	public String toString() {
+		return "count=" + getCount() + " mean=" + micros(getMeanNanos()) + "us p50<" + micros(getPercentileNanos(0.5)) + "us p99<" + micros(getPercentileNanos(0.99)) + "us p999<" + micros(getPercentileNanos(0.999)) + "us";
+	}
+	
+	private static String micros(long nanos) {
+		return String.valueOf(nanos / 1000.0);
+	}
+}
@@ -0,0 +1,266 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+package org.owasp.stinger.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.owasp.stinger.rules.Rule;
+import org.owasp.stinger.rules.RuleSet;
+import org.owasp.stinger.util.AsyncLogWriter;
+
+/**
+ * Runtime counters of the rules, the rule set paths and Stinger.validate
+ * as a whole. Stats are looked up once when a RuleSet is loaded and kept
+ * by the rules and plans, so recording is a few striped counter updates.
+ * The counters are exposed through the StingerMetricsMBean and as text.
+ */
+public class Metrics {
+	
+	/** Path under which cookie rules are counted **/
+	public final static String COOKIES = "cookie";
+	
+	public final static String OBJECT_NAME = "org.owasp.stinger:type=Metrics";
+	
+	private static volatile boolean enabled = true;
+	
+	/** RuleStats by path and name **/
+	private static ConcurrentHashMap rules = new ConcurrentHashMap();
+	
+	/** PathStats by path **/
+	private static ConcurrentHashMap paths = new ConcurrentHashMap();
+	
+	/** Every call of Stinger.validate **/
+	private static PathStats overall = new PathStats("*");
+	
+	private static ObjectName registered = null;
+	
+	private Metrics() {
+	
+	}
+	
+	public static boolean isEnabled() {
+		return enabled;
+	}
+	
+	public static void setEnabled(boolean enabledIn) {
+		enabled = enabledIn;
+	}
+	
+	public static RuleStats getRuleStats(String path, String name) {
+		String key = path + "\n" + name;
+		RuleStats stats = (RuleStats)rules.get(key);
+		
+		if(stats == null) {
+			RuleStats created = new RuleStats(path, name);
+			
+			stats = (RuleStats)rules.putIfAbsent(key, created);
+			stats = (stats != null ? stats : created);
+		}
+		
+		return stats;
+	}
+	
+	public static PathStats getPathStats(String path) {
+		PathStats stats = (PathStats)paths.get(path);
+		
+		if(stats == null) {
+			PathStats created = new PathStats(path);
+			
+			stats = (PathStats)paths.putIfAbsent(path, created);
+			stats = (stats != null ? stats : created);
+		}
+		
+		return stats;
+	}
+	
+	public static PathStats getOverall() {
+		return overall;
+	}
+	
+	/**
+	 * Count one call of Stinger.validate for the rule set path
+	 */
+	public static void recordValidation(PathStats path, long nanos) {
+		path.recordValidation(nanos);
+		overall.recordValidation(nanos);
+	}
+	
+	/**
+	 * Count one violation of the rule, which was found for the path
+	 */
+	public static void recordViolation(RuleStats rule, PathStats path, String category, String severity) {
+		if(rule != null) {
+			rule.recordViolation(category, severity);
+		}
+		
+		path.recordViolation(category, severity);
+		overall.recordViolation(category, severity);
+	}
+	
+	public static void reset() {
+		Iterator itr = rules.values().iterator();
+		
+		while(itr.hasNext()) {
+			((RuleStats)itr.next()).reset();
+		}
+		
+		itr = paths.values().iterator();
+		
+		while(itr.hasNext()) {
+			((PathStats)itr.next()).reset();
+		}
+		
+		overall.reset();
+	}
+	
+	/**
+	 * All counters as text: overall, per rule set path, per rule and per
+	 * log writer
+	 */
+	public static String getSnapshot() {
+		StringBuffer buf = new StringBuffer();
+		Iterator itr = null;
+		
+		buf.append("validate ").append(overall).append("\n");
+		
+		buf.append("paths:\n");
+		itr = new TreeMap(paths).values().iterator();
+		
+		while(itr.hasNext()) {
+			buf.append("  ").append(itr.next()).append("\n");
+		}
+		
+		buf.append("rules:\n");
+		itr = new TreeMap(rules).values().iterator();
+		
+		while(itr.hasNext()) {
+			buf.append("  ").append(itr.next()).append("\n");
+		}
+		
+		buf.append("log writers:\n");
+		itr = AsyncLogWriter.getWriters().iterator();
+		
+		while(itr.hasNext()) {
+			AsyncLogWriter writer = (AsyncLogWriter)itr.next();
+			
+			buf.append("  ").append(writer.getFile()).append(": enqueued=").append(writer.getEnqueued()).append(" written=").append(writer.getWritten()).append(" dropped=").append(writer.getDropped()).append(" pending=").append(writer.getPending()).append("/").append(writer.getCapacity()).append("\n");
+		}
+		
+		return buf.toString();
+	}
+	
+	/**
+	 * The rules of the rule set whose regex was never evaluated and the
+	 * rules that never produced a violation, candidates for pruning
+	 */
+	public static String getCoverage(RuleSet set) {
+		StringBuffer buf = new StringBuffer();
+		LinkedList all = new LinkedList();
+		LinkedList neverEvaluated = new LinkedList();
+		LinkedList neverFired = new LinkedList();
+		Iterator itr = set.getParameterRules().values().iterator();
+		
+		while(itr.hasNext()) {
+			all.addAll(((Map)itr.next()).values());
+		}
+		
+		all.addAll(set.getCookieRules());
+		itr = all.iterator();
+		
+		while(itr.hasNext()) {
+			RuleStats stats = ((Rule)itr.next()).getStats();
+			
+			if(stats == null) {
+				continue;
+			}
+			
+			if(stats.getEvaluations() == 0) {
+				neverEvaluated.add(stats.getPath() + " " + stats.getName());
+			}
+			
+			if(stats.getViolations().getTotal() == 0) {
+				neverFired.add(stats.getPath() + " " + stats.getName());
+			}
+		}
+		
+		buf.append("rules: ").append(all.size()).append("\n");
+		append(buf, "never evaluated", neverEvaluated);
+		append(buf, "never fired", neverFired);
+		
+		return buf.toString();
+	}
+	
+	private static void append(StringBuffer buf, String title, LinkedList names) {
+		Iterator itr = names.iterator();
+		
+		buf.append(title).append(": ").append(names.size()).append("\n");
+		
+		while(itr.hasNext()) {
+			buf.append("  ").append(itr.next()).append("\n");
+		}
+	}
+	
+	/**
+	 * Register the StingerMetricsMBean with the platform MBean server under
+	 * the given name, replacing an earlier registration
+	 */
+	public static synchronized void register(String name) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		
+		unregister();
+		
+		try {
+			ObjectName objectName = new ObjectName(OBJECT_NAME + ",name=" + ObjectName.quote(name != null ? name : "Stinger"));
+			
+			if(server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+			
+			server.registerMBean(new StingerMetrics(), objectName);
+			registered = objectName;
+		} catch (JMException jme) {
+			System.out.println("[Stinger-Filter] Unable to register metrics MBean: " + jme.getMessage());
+		}
+	}
+	
+	public static synchronized void unregister() {
+		if(registered != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(registered);
+			} catch (JMException jme) {
+				System.out.println("[Stinger-Filter] Unable to unregister metrics MBean: " + jme.getMessage());
+			}
+			
+			registered = null;
+		}
+	}
+}
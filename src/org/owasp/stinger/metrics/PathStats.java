@@ -0,0 +1,78 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+package org.owasp.stinger.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the requests validated against one rule set path.
+ */
+public class PathStats {
+	
+	private final String path;
+	
+	private final LongAdder validations = new LongAdder();
+	
+	private final Counters violations = new Counters();
+	
+	private final LatencyHistogram latency = new LatencyHistogram();
+	
+	PathStats(String path) {
+		this.path = path;
+	}
+	
+	public void recordValidation(long nanos) {
+		validations.increment();
+		latency.record(nanos);
+	}
+	
+	public void recordViolation(String category, String severity) {
+		violations.increment(category + "/" + severity);
+	}
+	
+	public String getPath() {
+		return path;
+	}
+	
+	public long getValidations() {
+		return validations.sum();
+	}
+	
+	public Counters getViolations() {
+		return violations;
+	}
+	
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+	
+	void reset() {
+		validations.reset();
+		violations.reset();
+		latency.reset();
+	}
+	
+	public String toString() {
+		return path + ": validations=" + getValidations() + " violations=" + violations + " " + latency;
+	}
+}
@@ -0,0 +1,100 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+package org.owasp.stinger.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of one rule, shared by every RuleSet loaded from the same
+ * SVDL path and rule name, so they survive a reload.
+ */
+public class RuleStats {
+	
+	private final String path;
+	
+	private final String name;
+	
+	private final LongAdder evaluations = new LongAdder();
+	
+	private final LongAdder failures = new LongAdder();
+	
+	private final Counters violations = new Counters();
+	
+	private final LatencyHistogram latency = new LatencyHistogram();
+	
+	RuleStats(String path, String name) {
+		this.path = path;
+		this.name = name;
+	}
+	
+	/**
+	 * One evaluation of the rule's regex
+	 */
+	public void recordEvaluation(long nanos, boolean valid) {
+		evaluations.increment();
+		latency.record(nanos);
+		
+		if(!valid) {
+			failures.increment();
+		}
+	}
+	
+	public void recordViolation(String category, String severity) {
+		violations.increment(category + "/" + severity);
+	}
+	
+	public String getPath() {
+		return path;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public long getEvaluations() {
+		return evaluations.sum();
+	}
+	
+	public long getFailures() {
+		return failures.sum();
+	}
+	
+	public Counters getViolations() {
+		return violations;
+	}
+	
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+	
+	void reset() {
+		evaluations.reset();
+		failures.reset();
+		violations.reset();
+		latency.reset();
+	}
+	
+	public String toString() {
+		return path + " " + name + ": evaluations=" + getEvaluations() + " failures=" + getFailures() + " violations=" + violations + " " + latency;
+	}
+}
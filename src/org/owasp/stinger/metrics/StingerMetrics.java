@@ -0,0 +1,70 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+package org.owasp.stinger.metrics;
+
+import org.owasp.stinger.Stinger;
+import org.owasp.stinger.rules.RuleSet;
+
+public class StingerMetrics implements StingerMetricsMBean {
+	
+	public boolean isEnabled() {
+		return Metrics.isEnabled();
+	}
+	
+	public void setEnabled(boolean enabled) {
+		Metrics.setEnabled(enabled);
+	}
+	
+	public long getValidations() {
+		return Metrics.getOverall().getValidations();
+	}
+	
+	public long getViolations() {
+		return Metrics.getOverall().getViolations().getTotal();
+	}
+	
+	public long getMeanValidateNanos() {
+		return Metrics.getOverall().getLatency().getMeanNanos();
+	}
+	
+	public long getValidateNanosP99() {
+		return Metrics.getOverall().getLatency().getPercentileNanos(0.99);
+	}
+	
+	public String getSnapshot() {
+		return Metrics.getSnapshot();
+	}
+	
+	/**
+	 * Coverage of the rule set currently in use
+	 */
+	public String getCoverage() {
+		RuleSet set = Stinger.getRuleSet();
+		
+		return (set != null ? Metrics.getCoverage(set) : "no rule set loaded\n");
+	}
+	
+	public void reset() {
+		Metrics.reset();
+	}
+}
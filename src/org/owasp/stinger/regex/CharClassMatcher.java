@@ -0,0 +1,142 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+
+package org.owasp.stinger.regex;
+
+/**
+ * Matches regexes of the form ^[class]{min,max}$ where the class only
+ * contains ASCII chars, e.g. ^[A-F0-9]{32}$ or ^[a-zA-Z ]*$. The class
+ * is a 128-bit bitset, so a match is a length check plus one bit test
+ * per char.
+ */
+public class CharClassMatcher implements ValueMatcher {
+	
+	public final static String ENGINE = "charclass";
+	
+	/** Bits for chars 0-63 and 64-127 **/
+	private final long low;
+	
+	private final long high;
+	
+	private final int min;
+	
+	/** Maximum length or RegexNode.UNBOUNDED **/
+	private final int max;
+	
+	private CharClassMatcher(CharSet set, int min, int max) {
+		int[] ranges = set.getRanges();
+		long lowBits = 0;
+		long highBits = 0;
+		
+		for(int i=0; i<ranges.length; i+=2) {
+			for(int c=ranges[i]; c<=ranges[i + 1]; c++) {
+				if(c < 64) {
+					lowBits |= 1L << c;
+				} else {
+					highBits |= 1L << (c - 64);
+				}
+			}
+		}
+		
+		this.low = lowBits;
+		this.high = highBits;
+		this.min = min;
+		this.max = max;
+	}
+	
+	/**
+	 * The matcher for node, or null if node does not have the shape
+	 */
+	public static CharClassMatcher create(RegexNode node) {
+		RegexNode[] children = node.getChildren();
+		RegexNode body = node;
+		
+		/** ^ and $ at the very ends mean nothing to a whole-value match **/
+		if(node.getType() == RegexNode.CONCAT) {
+			int first = 0;
+			int last = children.length - 1;
+			
+			if(first <= last && children[first].getType() == RegexNode.BEGIN) {
+				first++;
+			}
+			
+			if(first <= last && children[last].getType() == RegexNode.END) {
+				last--;
+			}
+			
+			if(first != last) {
+				return null;
+			}
+			
+			body = children[first];
+		}
+		
+		if(body.getType() == RegexNode.CHARS) {
+			return create(body.getChars(), 1, 1);
+		}
+		
+		if(body.getType() == RegexNode.REPEAT && body.getChildren()[0].getType() == RegexNode.CHARS) {
+			return create(body.getChildren()[0].getChars(), body.getMin(), body.getMax());
+		}
+		
+		return null;
+	}
+	
+	private static CharClassMatcher create(CharSet set, int min, int max) {
+		if(!set.isAscii()) {
+			return null;
+		}
+		
+		return new CharClassMatcher(set, min, max);
+	}
+	
+	public boolean matches(String value) {
+		int length = value.length();
+		
+		if(length < min || (max != RegexNode.UNBOUNDED && length > max)) {
+			return false;
+		}
+		
+		for(int i=0; i<length; i++) {
+			char c = value.charAt(i);
+			
+			if(c < 64) {
+				if((low & (1L << c)) == 0) {
+					return false;
+				}
+			} else if(c < 128) {
+				if((high & (1L << (c - 64))) == 0) {
+					return false;
+				}
+			} else {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	public String getEngine() {
+		return ENGINE;
+	}
+}
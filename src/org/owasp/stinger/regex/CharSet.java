@@ -0,0 +1,186 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+package org.owasp.stinger.regex;
+
+/**
+ * An immutable set of chars stored as sorted, disjoint, inclusive ranges.
+ * Above the chars the set has one more member, SUPPLEMENTARY, which
+ * stands for every code point above MAX. SVDL regexes never name such a
+ * code point, so a set contains either all of them, as negated classes
+ * do, or none.
+ */
+public class CharSet {
+	
+	public final static char MAX = '\uffff';
+	
+	/** Every code point beyond MAX, i.e. every surrogate pair **/
+	public final static int SUPPLEMENTARY = MAX + 1;
+	
+	public final static CharSet EMPTY = new CharSet(new int[0]);
+	
+	/** \d **/
+	public final static CharSet DIGIT = range('0', '9');
+	
+	/** \w **/
+	public final static CharSet WORD = range('a', 'z').union(range('A', 'Z')).union(range('0', '9')).union(of('_'));
+	
+	/** \s **/
+	public final static CharSet SPACE = of(' ').union(range('\t', '\r'));
+	
+	/** . without DOTALL matches anything but line terminators **/
+	public final static CharSet DOT = of('\n').union(of('\r')).union(of('\u0085')).union(range('\u2028', '\u2029')).negate();
+	
+	/** lo0, hi0, lo1, hi1, ... **/
+	private final int[] ranges;
+	
+	private CharSet(int[] ranges) {
+		this.ranges = ranges;
+	}
+	
+	public static CharSet of(char c) {
+		return new CharSet(new int[] { c, c });
+	}
+	
+	public static CharSet range(char lo, char hi) {
+		return new CharSet(new int[] { lo, hi });
+	}
+	
+	public CharSet union(CharSet other) {
+		int[] merged = new int[ranges.length + other.ranges.length];
+		int[] result = new int[merged.length];
+		int count = 0;
+		int i = 0;
+		int j = 0;
+		int k = 0;
+		
+		/** Merge both range lists by their lower bound **/
+		while(i < ranges.length || j < other.ranges.length) {
+			if(j >= other.ranges.length || (i < ranges.length && ranges[i] <= other.ranges[j])) {
+				merged[k++] = ranges[i++];
+				merged[k++] = ranges[i++];
+			} else {
+				merged[k++] = other.ranges[j++];
+				merged[k++] = other.ranges[j++];
+			}
+		}
+		
+		/** Join overlapping and adjacent ranges **/
+		for(i=0; i<merged.length; i+=2) {
+			if(count > 0 && merged[i] <= result[count - 1] + 1) {
+				result[count - 1] = Math.max(result[count - 1], merged[i + 1]);
+			} else {
+				result[count++] = merged[i];
+				result[count++] = merged[i + 1];
+			}
+		}
+		
+		return new CharSet(trim(result, count));
+	}
+	
+	public CharSet negate() {
+		int[] result = new int[ranges.length + 2];
+		int count = 0;
+		int next = 0;
+		
+		for(int i=0; i<ranges.length; i+=2) {
+			if(ranges[i] > next) {
+				result[count++] = next;
+				result[count++] = ranges[i] - 1;
+			}
+			
+			next = ranges[i + 1] + 1;
+		}
+		
+		if(next <= SUPPLEMENTARY) {
+			result[count++] = next;
+			result[count++] = SUPPLEMENTARY;
+		}
+		
+		return new CharSet(trim(result, count));
+	}
+	
+	private static int[] trim(int[] array, int length) {
+		int[] result = array;
+		
+		if(length != array.length) {
+			result = new int[length];
+			System.arraycopy(array, 0, result, 0, length);
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * True if the set contains the char, or for SUPPLEMENTARY every code
+	 * point beyond MAX
+	 */
+	public boolean contains(int c) {
+		int low = 0;
+		int high = (ranges.length / 2) - 1;
+		
+		while(low <= high) {
+			int mid = (low + high) >>> 1;
+			
+			if(ranges[mid * 2 + 1] < c) {
+				low = mid + 1;
+			} else if(ranges[mid * 2] > c) {
+				high = mid - 1;
+			} else {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	public boolean isEmpty() {
+		return ranges.length == 0;
+	}
+	
+	/**
+	 * True if every char in the set is below 128
+	 */
+	public boolean isAscii() {
+		return ranges.length == 0 || ranges[ranges.length - 1] < 128;
+	}
+	
+	/**
+	 * True if the set contains any UTF-16 surrogate
+	 */
+	public boolean hasSurrogates() {
+		for(int i=0; i<ranges.length; i+=2) {
+			if(ranges[i] <= Character.MAX_SURROGATE && ranges[i + 1] >= Character.MIN_SURROGATE) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * The ranges as lo0, hi0, lo1, hi1, ... The array must not be modified.
+	 */
+	int[] getRanges() {
+		return ranges;
+	}
+}
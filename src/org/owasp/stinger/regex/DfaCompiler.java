@@ -0,0 +1,414 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+package org.owasp.stinger.regex;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedList;
+
+/**
+ * Compiles a parsed regex into a DfaMatcher. The regex is first turned
+ * into a Thompson NFA, the chars are split into classes that every NFA
+ * transition treats alike, and the NFA is then determinized by subset
+ * construction.
+ */
+public class DfaCompiler {
+	
+	/** Regexes that need more NFA states than this fall back to java.util.regex **/
+	public final static int MAX_NFA_STATES = 20000;
+	
+	/** Regexes that need more DFA states than this fall back to java.util.regex **/
+	public final static int MAX_DFA_STATES = 2000;
+	
+	private final static int CHAR = 0;
+	
+	private final static int SPLIT = 1;
+	
+	private final static int BEGIN = 2;
+	
+	private final static int END = 3;
+	
+	private final static int MATCH = 4;
+	
+	/** NFA states **/
+	private int count = 0;
+	
+	private int[] types = new int[64];
+	
+	private CharSet[] sets = new CharSet[64];
+	
+	private int[] out1 = new int[64];
+	
+	private int[] out2 = new int[64];
+	
+	/** Scratch space for closures **/
+	private int[] stack = null;
+	
+	private int[] marks = null;
+	
+	private int mark = 0;
+	
+	private DfaCompiler() {
+	
+	}
+	
+	public static DfaMatcher compile(RegexNode node) throws UnsupportedRegexException {
+		DfaCompiler compiler = new DfaCompiler();
+		int match = compiler.add(MATCH, null, -1, -1);
+		int start = compiler.build(node, match);
+		
+		return compiler.determinize(start);
+	}
+	
+	private int add(int type, CharSet set, int o1, int o2) throws UnsupportedRegexException {
+		if(count >= MAX_NFA_STATES) {
+			throw new UnsupportedRegexException("automaton too large");
+		}
+		
+		if(count == types.length) {
+			types = grow(types);
+			out1 = grow(out1);
+			out2 = grow(out2);
+			
+			CharSet[] newSets = new CharSet[count * 2];
+			System.arraycopy(sets, 0, newSets, 0, count);
+			sets = newSets;
+		}
+		
+		types[count] = type;
+		sets[count] = set;
+		out1[count] = o1;
+		out2[count] = o2;
+		
+		return count++;
+	}
+	
+	private static int[] grow(int[] array) {
+		int[] result = new int[array.length * 2];
+		
+		System.arraycopy(array, 0, result, 0, array.length);
+		
+		return result;
+	}
+	
+	/**
+	 * Build the NFA for node backwards: returns the state that matches node
+	 * and then continues with next.
+	 */
+	private int build(RegexNode node, int next) throws UnsupportedRegexException {
+		RegexNode[] children = node.getChildren();
+		int result = next;
+		
+		switch(node.getType()) {
+			case RegexNode.CHARS:
+				result = add(CHAR, node.getChars(), next, -1);
+				break;
+			case RegexNode.CONCAT:
+				for(int i=children.length - 1; i>=0; i--) {
+					result = build(children[i], result);
+				}
+				break;
+			case RegexNode.ALTERNATE:
+				result = build(children[children.length - 1], next);
+				
+				for(int i=children.length - 2; i>=0; i--) {
+					result = add(SPLIT, null, build(children[i], next), result);
+				}
+				break;
+			case RegexNode.REPEAT:
+				if(node.getMax() == RegexNode.UNBOUNDED) {
+					/** Loop state: either run the body again or leave **/
+					int loop = add(SPLIT, null, -1, next);
+					/** build may grow out1, so store the body only once it is built **/
+					int body = build(children[0], loop);
+					
+					out1[loop] = body;
+					result = loop;
+				} else {
+					for(int i=node.getMin(); i<node.getMax(); i++) {
+						result = add(SPLIT, null, build(children[0], result), next);
+					}
+				}
+				
+				for(int i=0; i<node.getMin(); i++) {
+					result = build(children[0], result);
+				}
+				break;
+			case RegexNode.BEGIN:
+				result = add(BEGIN, null, next, -1);
+				break;
+			case RegexNode.END:
+				result = add(END, null, next, -1);
+				break;
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Collect the states reachable from the given ones without consuming
+	 * input. The result is sorted so equal sets compare equal.
+	 */
+	private int[] closure(int[] from, int length, boolean atStart, boolean atEnd) {
+		int[] result = new int[count];
+		int size = 0;
+		int top = 0;
+		
+		mark++;
+		
+		for(int i=0; i<length; i++) {
+			if(marks[from[i]] != mark) {
+				marks[from[i]] = mark;
+				stack[top++] = from[i];
+			}
+		}
+		
+		while(top > 0) {
+			int s = stack[--top];
+			int type = types[s];
+			
+			result[size++] = s;
+			
+			if(type == SPLIT) {
+				top = push(out1[s], top);
+				top = push(out2[s], top);
+			} else if((type == BEGIN && atStart) || (type == END && atEnd)) {
+				top = push(out1[s], top);
+			}
+		}
+		
+		Arrays.sort(result, 0, size);
+		
+		int[] trimmed = new int[size];
+		System.arraycopy(result, 0, trimmed, 0, size);
+		
+		return trimmed;
+	}
+	
+	private int push(int s, int top) {
+		if(marks[s] != mark) {
+			marks[s] = mark;
+			stack[top++] = s;
+		}
+		
+		return top;
+	}
+	
+	private boolean accepts(int[] states, boolean atStart) {
+		int[] reachable = closure(states, states.length, atStart, true);
+		
+		for(int i=0; i<reachable.length; i++) {
+			if(types[reachable[i]] == MATCH) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Java's $ also matches before a final line terminator, which only
+	 * matters if input can be consumed after it. Such regexes are left
+	 * to java.util.regex.
+	 */
+	private void checkEndAnchors() throws UnsupportedRegexException {
+		for(int s=0; s<count; s++) {
+			if(types[s] == END) {
+				int[] after = closure(new int[] { out1[s] }, 1, true, true);
+				
+				for(int i=0; i<after.length; i++) {
+					if(types[after[i]] == CHAR) {
+						throw new UnsupportedRegexException("input after $");
+					}
+				}
+			}
+		}
+	}
+	
+	private static String key(int[] states) {
+		char[] chars = new char[states.length];
+		
+		for(int i=0; i<states.length; i++) {
+			chars[i] = (char)states[i];
+		}
+		
+		return new String(chars);
+	}
+	
+	private DfaMatcher determinize(int start) throws UnsupportedRegexException {
+		LinkedList points = new LinkedList();
+		int[] bounds = null;
+		int[] intervalClass = null;
+		int[] ascii = new int[128];
+		int classCount = 0;
+		BitSet[] classMembers = null;
+		HashMap signatures = new HashMap();
+		LinkedList pending = new LinkedList();
+		LinkedList dfaSets = new LinkedList();
+		HashMap dfaIds = new HashMap();
+		int[] next = null;
+		boolean[] accept = null;
+		int states = 0;
+		
+		stack = new int[count];
+		marks = new int[count];
+		
+		checkEndAnchors();
+		
+		/** Split the chars into intervals on every range boundary of every transition **/
+		BitSet cuts = new BitSet(CharSet.SUPPLEMENTARY + 2);
+		cuts.set(0);
+		/** Code points beyond MAX are an interval of their own **/
+		cuts.set(CharSet.SUPPLEMENTARY);
+		
+		for(int s=0; s<count; s++) {
+			if(types[s] == CHAR) {
+				int[] ranges = sets[s].getRanges();
+				
+				for(int i=0; i<ranges.length; i+=2) {
+					cuts.set(ranges[i]);
+					cuts.set(ranges[i + 1] + 1);
+				}
+			}
+		}
+		
+		cuts.clear(CharSet.SUPPLEMENTARY + 1);
+		
+		for(int i=cuts.nextSetBit(0); i>=0; i=cuts.nextSetBit(i + 1)) {
+			points.add(Integer.valueOf(i));
+		}
+		
+		bounds = new int[points.size()];
+		intervalClass = new int[bounds.length];
+		
+		for(int i=0; i<bounds.length; i++) {
+			bounds[i] = ((Integer)points.get(i)).intValue();
+		}
+		
+		/** Intervals that every transition treats alike share one class **/
+		LinkedList members = new LinkedList();
+		
+		for(int i=0; i<bounds.length; i++) {
+			BitSet signature = new BitSet(count);
+			Integer id = null;
+			
+			for(int s=0; s<count; s++) {
+				if(types[s] == CHAR && sets[s].contains(bounds[i])) {
+					signature.set(s);
+				}
+			}
+			
+			id = (Integer)signatures.get(signature);
+			
+			if(id == null) {
+				id = Integer.valueOf(classCount++);
+				signatures.put(signature, id);
+				members.add(signature);
+			}
+			
+			intervalClass[i] = id.intValue();
+		}
+		
+		classMembers = (BitSet[])members.toArray(new BitSet[members.size()]);
+		
+		for(int c=0; c<128; c++) {
+			ascii[c] = intervalClass[interval(bounds, c)];
+		}
+		
+		/** State 0 is dead, state 1 is the start state and never shared **/
+		dfaSets.add(new int[0]);
+		dfaIds.put(key(new int[0]), Integer.valueOf(0));
+		dfaSets.add(closure(new int[] { start }, 1, true, false));
+		pending.add(Integer.valueOf(1));
+		states = 2;
+		
+		int[][] rows = new int[MAX_DFA_STATES][];
+		
+		rows[0] = new int[classCount];
+		
+		while(!pending.isEmpty()) {
+			int id = ((Integer)pending.removeFirst()).intValue();
+			int[] set = (int[])dfaSets.get(id);
+			int[] row = new int[classCount];
+			int[] moved = new int[set.length];
+			
+			for(int c=0; c<classCount; c++) {
+				int length = 0;
+				
+				for(int i=0; i<set.length; i++) {
+					if(types[set[i]] == CHAR && classMembers[c].get(set[i])) {
+						moved[length++] = out1[set[i]];
+					}
+				}
+				
+				int[] target = closure(moved, length, false, false);
+				String k = key(target);
+				Integer targetId = (Integer)dfaIds.get(k);
+				
+				if(targetId == null) {
+					if(states >= MAX_DFA_STATES) {
+						throw new UnsupportedRegexException("automaton too large");
+					}
+					
+					targetId = Integer.valueOf(states++);
+					dfaIds.put(k, targetId);
+					dfaSets.add(target);
+					pending.add(targetId);
+				}
+				
+				row[c] = targetId.intValue();
+			}
+			
+			rows[id] = row;
+		}
+		
+		next = new int[states * classCount];
+		accept = new boolean[states];
+		
+		for(int d=0; d<states; d++) {
+			System.arraycopy(rows[d], 0, next, d * classCount, classCount);
+			accept[d] = accepts((int[])dfaSets.get(d), d == 1);
+		}
+		
+		return new DfaMatcher(next, accept, classCount, ascii, bounds, intervalClass);
+	}
+	
+	static int interval(int[] bounds, int c) {
+		int low = 0;
+		int high = bounds.length - 1;
+		
+		/** Last interval starting at or before c **/
+		while(low < high) {
+			int mid = (low + high + 1) >>> 1;
+			
+			if(bounds[mid] <= c) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		
+		return low;
+	}
+}
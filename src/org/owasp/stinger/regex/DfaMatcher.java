@@ -0,0 +1,121 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+package org.owasp.stinger.regex;
+
+/**
+ * Matches values with a table-driven DFA in time linear in the length of
+ * the value, no matter how the regex is written. Like java.util.regex the
+ * DFA reads a surrogate pair as one code point, CharSet.SUPPLEMENTARY,
+ * and a lone surrogate as a char of its own.
+ */
+public class DfaMatcher implements ValueMatcher {
+	
+	public final static String ENGINE = "dfa";
+	
+	/** The dead state, no input leads out of it **/
+	private final static int DEAD = 0;
+	
+	private final static int START = 1;
+	
+	/** next[state * classCount + charClass] **/
+	private final int[] next;
+	
+	private final boolean[] accept;
+	
+	private final int classCount;
+	
+	/** Class of every ASCII char **/
+	private final int[] ascii;
+	
+	/** First char of every interval and the class of that interval **/
+	private final int[] bounds;
+	
+	private final int[] intervalClass;
+	
+	/** Class of the code points beyond CharSet.MAX **/
+	private final int supplementary;
+	
+	DfaMatcher(int[] next, boolean[] accept, int classCount, int[] ascii, int[] bounds, int[] intervalClass) {
+		this.next = next;
+		this.accept = accept;
+		this.classCount = classCount;
+		this.ascii = ascii;
+		this.bounds = bounds;
+		this.intervalClass = intervalClass;
+		this.supplementary = intervalClass[DfaCompiler.interval(bounds, CharSet.SUPPLEMENTARY)];
+	}
+	
+	public boolean matches(String value) {
+		int state = START;
+		int length = value.length();
+		
+		for(int i=0; i<length; i++) {
+			char c = value.charAt(i);
+			int charClass = 0;
+			
+			if(c < 128) {
+				charClass = ascii[c];
+			} else if(Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+				charClass = supplementary;
+				i++;
+			} else {
+				charClass = intervalClass[DfaCompiler.interval(bounds, c)];
+			}
+			
+			state = next[state * classCount + charClass];
+			
+			if(state == DEAD) {
+				return false;
+			}
+		}
+		
+		return accept[state];
+	}
+	
+	/**
+	 * Set the bit of every char that matches on its own. Chars of one
+	 * interval behave alike, so each interval is looked up once.
+	 */
+	void acceptedChars(long[] bits) {
+		for(int i=0; i<bounds.length; i++) {
+			/** The last interval is SUPPLEMENTARY, which is no char **/
+			int end = (i + 1 < bounds.length ? bounds[i + 1] : CharSet.SUPPLEMENTARY);
+			
+			if(!accept[next[START * classCount + intervalClass[i]]]) {
+				continue;
+			}
+			
+			for(int c=bounds[i]; c<end; c++) {
+				bits[c >> 6] |= 1L << c;
+			}
+		}
+	}
+	
+	public String getEngine() {
+		return ENGINE;
+	}
+	
+	public int getStateCount() {
+		return accept.length;
+	}
+}
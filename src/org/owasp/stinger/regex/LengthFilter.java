@@ -0,0 +1,74 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+
+package org.owasp.stinger.regex;
+
+/**
+ * Rejects values that are too short or too long for the regex before the
+ * regex itself is run. The bounds come from the parsed regex.
+ */
+public class LengthFilter implements ValueMatcher {
+	
+	private final ValueMatcher matcher;
+	
+	private final int min;
+	
+	/** Maximum length or RegexNode.UNBOUNDED **/
+	private final int max;
+	
+	public LengthFilter(ValueMatcher matcher, int min, int max) {
+		this.matcher = matcher;
+		this.min = min;
+		this.max = max;
+	}
+	
+	public boolean matches(String value) {
+		int length = value.length();
+		
+		/** Every char node consumes at least one char, so min always holds **/
+		if(length < min) {
+			return false;
+		}
+		
+		/** A surrogate pair may be consumed as one code point, so max only holds without them **/
+		if(max != RegexNode.UNBOUNDED && length > max && !hasSurrogates(value)) {
+			return false;
+		}
+		
+		return matcher.matches(value);
+	}
+	
+	private static boolean hasSurrogates(String value) {
+		for(int i=0; i<value.length(); i++) {
+			if(Character.isSurrogate(value.charAt(i))) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	public String getEngine() {
+		return matcher.getEngine();
+	}
+}
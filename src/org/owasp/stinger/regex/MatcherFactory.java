@@ -0,0 +1,154 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+package org.owasp.stinger.regex;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Picks the matching engine for an SVDL regex:
+ *
+ * 1. A single ASCII class with a length, e.g. ^[0-9]{1,10}$, becomes a CharClassMatcher
+ * 2. Anything else that fits a DFA of reasonable size becomes a DfaMatcher
+ * 3. The rest falls back to java.util.regex
+ *
+ * Whenever the regex could be parsed, the DFA and regex engines are
+ * guarded by a LengthFilter derived from it.
+ */
+public class MatcherFactory {
+	
+	private MatcherFactory() {
+	
+	}
+	
+	/**
+	 * Compile the regex. Invalid regexes throw the same
+	 * PatternSyntaxException as Pattern.compile.
+	 */
+	public static ValueMatcher compile(String regex) {
+		return compile(Pattern.compile(regex));
+	}
+	
+	public static ValueMatcher compile(Pattern pattern) {
+		ValueMatcher matcher = null;
+		RegexNode node = null;
+		
+		if(pattern.flags() != 0) {
+			return new PatternMatcher(pattern, "flags");
+		}
+		
+		try {
+			node = RegexParser.parse(pattern.pattern());
+		} catch (UnsupportedRegexException ure) {
+			return new PatternMatcher(pattern, ure.getMessage());
+		}
+		
+		matcher = CharClassMatcher.create(node);
+		
+		if(matcher != null) {
+			return matcher;
+		}
+		
+		try {
+			matcher = DfaCompiler.compile(node);
+		} catch (UnsupportedRegexException ure) {
+			matcher = new PatternMatcher(pattern, ure.getMessage());
+		}
+		
+		return withLength(matcher, node.minLength(), node.maxLength());
+	}
+	
+	/**
+	 * Returns a bitset over all 65536 chars of the chars c for which the
+	 * regex matches the value made of c alone. A DFA is asked once per
+	 * interval of chars; anything else goes through one reused Matcher
+	 * without creating a String per char.
+	 */
+	public static long[] acceptedChars(Pattern pattern) {
+		long[] bits = new long[(Character.MAX_VALUE + 1) >> 6];
+		DfaMatcher dfa = null;
+		
+		if(pattern.flags() == 0) {
+			try {
+				dfa = DfaCompiler.compile(RegexParser.parse(pattern.pattern()));
+			} catch (UnsupportedRegexException ure) {
+				dfa = null;
+			}
+		}
+		
+		if(dfa != null) {
+			dfa.acceptedChars(bits);
+		} else {
+			acceptedChars(pattern, Character.MIN_VALUE, Character.MAX_VALUE, bits);
+		}
+		
+		return bits;
+	}
+	
+	private static void acceptedChars(Pattern pattern, char from, char to, long[] bits) {
+		OneChar value = new OneChar();
+		Matcher matcher = pattern.matcher(value);
+		
+		for(int c=from; c<=to; c++) {
+			value.c = (char)c;
+			
+			if(matcher.reset().matches()) {
+				bits[c >> 6] |= 1L << c;
+			}
+		}
+	}
+	
+	/** A value of one char that can be changed in place **/
+	private static class OneChar implements CharSequence {
+		
+		private char c = 0;
+		
+		public int length() {
+			return 1;
+		}
+		
+		public char charAt(int index) {
+			if(index != 0) {
+				throw new IndexOutOfBoundsException(String.valueOf(index));
+			}
+			
+			return c;
+		}
+		
+		public CharSequence subSequence(int start, int end) {
+			return toString().subSequence(start, end);
+		}
+		
+		public String toString() {
+			return String.valueOf(c);
+		}
+	}
+	
+	private static ValueMatcher withLength(ValueMatcher matcher, int min, int max) {
+		if(min == 0 && max == RegexNode.UNBOUNDED) {
+			return matcher;
+		}
+		
+		return new LengthFilter(matcher, min, max);
+	}
+}
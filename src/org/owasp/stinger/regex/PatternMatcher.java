@@ -0,0 +1,56 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+package org.owasp.stinger.regex;
+
+import java.util.regex.Pattern;
+
+/**
+ * Matches values with java.util.regex. Used for every regex the DFA
+ * engine does not support.
+ */
+public class PatternMatcher implements ValueMatcher {
+	
+	public final static String ENGINE = "regex";
+	
+	private final Pattern pattern;
+	
+	/** Why the DFA engine was not used, or null **/
+	private final String reason;
+	
+	public PatternMatcher(Pattern pattern) {
+		this(pattern, null);
+	}
+	
+	public PatternMatcher(Pattern pattern, String reason) {
+		this.pattern = pattern;
+		this.reason = reason;
+	}
+	
+	public boolean matches(String value) {
+		return pattern.matcher(value).matches();
+	}
+	
+	public String getEngine() {
+		return (reason == null ? ENGINE : ENGINE + " (" + reason + ")");
+	}
+}
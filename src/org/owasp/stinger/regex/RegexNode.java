@@ -0,0 +1,191 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+package org.owasp.stinger.regex;
+
+/**
+ * A node of a parsed regex.
+ */
+public class RegexNode {
+	
+	/** Matches one char from a CharSet **/
+	public final static int CHARS = 0;
+	
+	/** Matches its children one after the other **/
+	public final static int CONCAT = 1;
+	
+	/** Matches one of its children **/
+	public final static int ALTERNATE = 2;
+	
+	/** Matches its only child between min and max times **/
+	public final static int REPEAT = 3;
+	
+	/** ^, matches at the start of the input **/
+	public final static int BEGIN = 4;
+	
+	/** $, matches at the end of the input **/
+	public final static int END = 5;
+	
+	/** Unbounded maximum of a REPEAT **/
+	public final static int UNBOUNDED = -1;
+	
+	private final int type;
+	
+	private final CharSet chars;
+	
+	private final RegexNode[] children;
+	
+	private final int min;
+	
+	private final int max;
+	
+	private RegexNode(int type, CharSet chars, RegexNode[] children, int min, int max) {
+		this.type = type;
+		this.chars = chars;
+		this.children = children;
+		this.min = min;
+		this.max = max;
+	}
+	
+	public static RegexNode chars(CharSet chars) {
+		return new RegexNode(CHARS, chars, null, 1, 1);
+	}
+	
+	public static RegexNode concat(RegexNode[] children) {
+		return new RegexNode(CONCAT, null, children, 0, 0);
+	}
+	
+	public static RegexNode alternate(RegexNode[] children) {
+		return new RegexNode(ALTERNATE, null, children, 0, 0);
+	}
+	
+	public static RegexNode repeat(RegexNode child, int min, int max) {
+		return new RegexNode(REPEAT, null, new RegexNode[] { child }, min, max);
+	}
+	
+	public static RegexNode anchor(int type) {
+		return new RegexNode(type, null, null, 0, 0);
+	}
+	
+	public int getType() {
+		return type;
+	}
+	
+	public CharSet getChars() {
+		return chars;
+	}
+	
+	public RegexNode[] getChildren() {
+		return children;
+	}
+	
+	public int getMin() {
+		return min;
+	}
+	
+	public int getMax() {
+		return max;
+	}
+	
+	/**
+	 * Fewest chars any match consumes
+	 */
+	public int minLength() {
+		int result = 0;
+
+		switch(type) {
+			case CHARS:
+				result = 1;
+				break;
+			case CONCAT:
+				for(int i=0; i<children.length; i++) {
+					result += children[i].minLength();
+				}
+				break;
+			case ALTERNATE:
+				result = Integer.MAX_VALUE;
+				for(int i=0; i<children.length; i++) {
+					result = Math.min(result, children[i].minLength());
+				}
+				result = (children.length == 0 ? 0 : result);
+				break;
+			case REPEAT:
+				result = (int)Math.min(Integer.MAX_VALUE, (long)min * children[0].minLength());
+				break;
+			default:
+				result = 0;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Most chars any match consumes or UNBOUNDED. Each CHARS node counts as
+	 * one char, so this is exact only for values without surrogate pairs.
+	 */
+	public int maxLength() {
+		long result = 0;
+
+		switch(type) {
+			case CHARS:
+				result = 1;
+				break;
+			case CONCAT:
+				for(int i=0; i<children.length; i++) {
+					int length = children[i].maxLength();
+
+					if(length == UNBOUNDED) {
+						return UNBOUNDED;
+					}
+
+					result += length;
+				}
+				break;
+			case ALTERNATE:
+				for(int i=0; i<children.length; i++) {
+					int length = children[i].maxLength();
+
+					if(length == UNBOUNDED) {
+						return UNBOUNDED;
+					}
+
+					result = Math.max(result, length);
+				}
+				break;
+			case REPEAT:
+				int length = children[0].maxLength();
+
+				if(length == 0) {
+					result = 0;
+				} else if(max == UNBOUNDED || length == UNBOUNDED) {
+					return UNBOUNDED;
+				} else {
+					result = (long)max * length;
+				}
+				break;
+			default:
+				result = 0;
+		}
+
+		return (result > Integer.MAX_VALUE ? UNBOUNDED : (int)result);
+	}
+}
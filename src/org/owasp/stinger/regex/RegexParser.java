@@ -0,0 +1,439 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+package org.owasp.stinger.regex;
+
+import java.util.LinkedList;
+
+/**
+ * Parses the subset of java.util.regex syntax that can be matched by a
+ * DFA: literals, escapes, '.', character classes, groups, alternation,
+ * greedy and lazy quantifiers, and the ^ and $ anchors.
+ *
+ * Back references, lookaround, possessive quantifiers, inline flags,
+ * nested or intersected classes, Unicode properties and the remaining
+ * boundary matchers are rejected with an UnsupportedRegexException. The
+ * regex is expected to have compiled with java.util.regex already.
+ */
+public class RegexParser {
+	
+	/** Largest repetition bound expanded into the automaton **/
+	public final static int MAX_REPEAT = 1000;
+	
+	private final String regex;
+	
+	private int pos = 0;
+	
+	private RegexParser(String regex) {
+		this.regex = regex;
+	}
+	
+	public static RegexNode parse(String regex) throws UnsupportedRegexException {
+		RegexParser parser = new RegexParser(regex);
+		RegexNode node = null;
+		
+		for(int i=0; i<regex.length(); i++) {
+			if(Character.isSurrogate(regex.charAt(i))) {
+				throw new UnsupportedRegexException("supplementary characters");
+			}
+		}
+		
+		node = parser.parseAlternate();
+		
+		if(parser.pos < regex.length()) {
+			throw new UnsupportedRegexException("unexpected " + regex.charAt(parser.pos) + " at " + parser.pos);
+		}
+		
+		return node;
+	}
+	
+	private boolean more() {
+		return pos < regex.length();
+	}
+	
+	private char peek() {
+		return regex.charAt(pos);
+	}
+	
+	private boolean lookingAt(String s) {
+		return regex.startsWith(s, pos);
+	}
+	
+	private RegexNode parseAlternate() throws UnsupportedRegexException {
+		LinkedList alternatives = new LinkedList();
+		
+		alternatives.add(parseConcat());
+		
+		while(more() && peek() == '|') {
+			pos++;
+			alternatives.add(parseConcat());
+		}
+		
+		if(alternatives.size() == 1) {
+			return (RegexNode)alternatives.getFirst();
+		}
+		
+		return RegexNode.alternate((RegexNode[])alternatives.toArray(new RegexNode[alternatives.size()]));
+	}
+	
+	private RegexNode parseConcat() throws UnsupportedRegexException {
+		LinkedList items = new LinkedList();
+		
+		while(more() && peek() != '|' && peek() != ')') {
+			items.add(parseRepeat());
+		}
+		
+		if(items.size() == 1) {
+			return (RegexNode)items.getFirst();
+		}
+		
+		return RegexNode.concat((RegexNode[])items.toArray(new RegexNode[items.size()]));
+	}
+	
+	private RegexNode parseRepeat() throws UnsupportedRegexException {
+		RegexNode node = parseAtom();
+		
+		while(more()) {
+			char c = peek();
+			int min = 0;
+			int max = 0;
+			
+			if(c == '*') {
+				min = 0;
+				max = RegexNode.UNBOUNDED;
+				pos++;
+			} else if(c == '+') {
+				min = 1;
+				max = RegexNode.UNBOUNDED;
+				pos++;
+			} else if(c == '?') {
+				min = 0;
+				max = 1;
+				pos++;
+			} else if(c == '{') {
+				pos++;
+				min = parseNumber();
+				max = min;
+				
+				if(more() && peek() == ',') {
+					pos++;
+					max = (more() && peek() == '}' ? RegexNode.UNBOUNDED : parseNumber());
+				}
+				
+				expect('}');
+			} else {
+				break;
+			}
+			
+			if(more() && peek() == '+') {
+				throw new UnsupportedRegexException("possessive quantifier");
+			} else if(more() && peek() == '?') {
+				/** Laziness does not change whether the whole input matches **/
+				pos++;
+			}
+			
+			if(min > MAX_REPEAT || max > MAX_REPEAT) {
+				throw new UnsupportedRegexException("repetition bound too large");
+			}
+			
+			/** java.util.regex treats empty iterations specially, which anchors make visible **/
+			if(containsAnchor(node)) {
+				throw new UnsupportedRegexException("quantified anchor");
+			}
+			
+			node = RegexNode.repeat(node, min, max);
+		}
+		
+		return node;
+	}
+	
+	private static boolean containsAnchor(RegexNode node) {
+		RegexNode[] children = node.getChildren();
+		
+		if(node.getType() == RegexNode.BEGIN || node.getType() == RegexNode.END) {
+			return true;
+		}
+		
+		for(int i=0; children != null && i<children.length; i++) {
+			if(containsAnchor(children[i])) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	private int parseNumber() throws UnsupportedRegexException {
+		int start = pos;
+		
+		while(more() && peek() >= '0' && peek() <= '9') {
+			pos++;
+		}
+		
+		if(start == pos || pos - start > 6) {
+			throw new UnsupportedRegexException("bad repetition at " + start);
+		}
+		
+		return Integer.parseInt(regex.substring(start, pos));
+	}
+	
+	private void expect(char c) throws UnsupportedRegexException {
+		if(!more() || peek() != c) {
+			throw new UnsupportedRegexException("expected " + c + " at " + pos);
+		}
+		
+		pos++;
+	}
+	
+	private RegexNode parseAtom() throws UnsupportedRegexException {
+		char c = peek();
+		RegexNode node = null;
+		
+		switch(c) {
+			case '(':
+				pos++;
+				parseGroupPrefix();
+				node = parseAlternate();
+				expect(')');
+				break;
+			case '[':
+				node = RegexNode.chars(parseClass());
+				break;
+			case '.':
+				pos++;
+				node = RegexNode.chars(CharSet.DOT);
+				break;
+			case '^':
+				pos++;
+				node = RegexNode.anchor(RegexNode.BEGIN);
+				break;
+			case '$':
+				pos++;
+				node = RegexNode.anchor(RegexNode.END);
+				break;
+			case '\\':
+				pos++;
+				node = RegexNode.chars(parseEscape(false));
+				break;
+			case '*':
+			case '+':
+			case '?':
+			case '{':
+				throw new UnsupportedRegexException("dangling " + c + " at " + pos);
+			default:
+				pos++;
+				node = RegexNode.chars(CharSet.of(c));
+		}
+		
+		return node;
+	}
+	
+	/**
+	 * Accept capturing, non-capturing and named groups
+	 */
+	private void parseGroupPrefix() throws UnsupportedRegexException {
+		if(!more() || peek() != '?') {
+			return;
+		}
+		
+		if(lookingAt("?:")) {
+			pos += 2;
+		} else if(lookingAt("?<") && !lookingAt("?<=") && !lookingAt("?<!")) {
+			int end = regex.indexOf('>', pos);
+			
+			if(end < 0) {
+				throw new UnsupportedRegexException("bad group name");
+			}
+			
+			pos = end + 1;
+		} else {
+			throw new UnsupportedRegexException("lookaround, atomic group or inline flags at " + pos);
+		}
+	}
+	
+	private CharSet parseClass() throws UnsupportedRegexException {
+		CharSet set = CharSet.EMPTY;
+		boolean negate = false;
+		boolean first = true;
+		
+		pos++;
+		
+		if(more() && peek() == '^') {
+			negate = true;
+			pos++;
+		}
+		
+		while(true) {
+			char c = 0;
+			CharSet item = null;
+			boolean single = false;
+			
+			if(!more()) {
+				throw new UnsupportedRegexException("unclosed class");
+			}
+			
+			c = peek();
+			
+			if(c == ']' && !first) {
+				pos++;
+				break;
+			} else if(c == '[' || c == ']') {
+				throw new UnsupportedRegexException("nested class");
+			} else if(lookingAt("&&")) {
+				throw new UnsupportedRegexException("class intersection");
+			} else if(c == '\\') {
+				pos++;
+				item = parseEscape(true);
+				single = isSingle(item);
+			} else {
+				pos++;
+				item = CharSet.of(c);
+				single = true;
+			}
+			
+			/** A range needs a single char on both sides, otherwise '-' is literal **/
+			if(single && more() && peek() == '-' && pos + 1 < regex.length() && regex.charAt(pos + 1) != ']') {
+				char lo = (char)item.getRanges()[0];
+				char hi = 0;
+				
+				pos++;
+				
+				if(peek() == '[') {
+					throw new UnsupportedRegexException("nested class");
+				} else if(peek() == '\\') {
+					pos++;
+					CharSet end = parseEscape(true);
+					
+					if(!isSingle(end)) {
+						throw new UnsupportedRegexException("bad range");
+					}
+					
+					hi = (char)end.getRanges()[0];
+				} else {
+					hi = peek();
+					pos++;
+				}
+				
+				if(hi < lo) {
+					throw new UnsupportedRegexException("bad range");
+				}
+				
+				item = CharSet.range(lo, hi);
+			}
+			
+			set = set.union(item);
+			first = false;
+		}
+		
+		return (negate ? set.negate() : set);
+	}
+	
+	private static boolean isSingle(CharSet set) {
+		int[] ranges = set.getRanges();
+		
+		return ranges.length == 2 && ranges[0] == ranges[1];
+	}
+	
+	private CharSet parseEscape(boolean inClass) throws UnsupportedRegexException {
+		char c = 0;
+		
+		if(!more()) {
+			throw new UnsupportedRegexException("trailing backslash");
+		}
+		
+		c = peek();
+		pos++;
+		
+		switch(c) {
+			case 'd':
+				return CharSet.DIGIT;
+			case 'D':
+				return CharSet.DIGIT.negate();
+			case 'w':
+				return CharSet.WORD;
+			case 'W':
+				return CharSet.WORD.negate();
+			case 's':
+				return CharSet.SPACE;
+			case 'S':
+				return CharSet.SPACE.negate();
+			case 't':
+				return CharSet.of('\t');
+			case 'n':
+				return CharSet.of('\n');
+			case 'r':
+				return CharSet.of('\r');
+			case 'f':
+				return CharSet.of('\f');
+			case 'a':
+				return CharSet.of('\u0007');
+			case 'e':
+				return CharSet.of('\u001B');
+			case '0':
+				return CharSet.of((char)parseDigits(8, 1, 3));
+			case 'x':
+				if(more() && peek() == '{') {
+					throw new UnsupportedRegexException("code point escape");
+				}
+				return CharSet.of((char)parseDigits(16, 2, 2));
+			case 'u':
+				c = (char)parseDigits(16, 4, 4);
+				
+				/** java.util.regex joins escaped surrogates into one code point **/
+				if(Character.isSurrogate(c)) {
+					throw new UnsupportedRegexException("supplementary characters");
+				}
+				
+				return CharSet.of(c);
+			default:
+				if(Character.isLetterOrDigit(c)) {
+					/** Back references, boundaries, properties, quoting, ... **/
+					throw new UnsupportedRegexException("escape \\" + c);
+				}
+				
+				return CharSet.of(c);
+		}
+	}
+	
+	private int parseDigits(int radix, int minDigits, int maxDigits) throws UnsupportedRegexException {
+		int start = pos;
+		int value = 0;
+		
+		while(more() && pos - start < maxDigits && Character.digit(peek(), radix) >= 0) {
+			int next = value * radix + Character.digit(peek(), radix);
+			
+			/** \0 takes a third octal digit only if the result stays below 0377 **/
+			if(radix == 8 && next > 0377) {
+				break;
+			}
+			
+			value = next;
+			pos++;
+		}
+		
+		if(pos - start < minDigits) {
+			throw new UnsupportedRegexException("bad escape at " + start);
+		}
+		
+		return value;
+	}
+}
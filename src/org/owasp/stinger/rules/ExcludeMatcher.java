@@ -0,0 +1,164 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+package org.owasp.stinger.rules;
+
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.regex.Pattern;
+
+import org.owasp.stinger.util.PrefixTrie;
+import org.owasp.stinger.util.RegexLiterals;
+
+/**
+ * The compiled exclude-set. Each exclude pattern is reduced to the
+ * cheapest equivalent check when the RuleSet is built:
+ *
+ * 1. Literal URIs, e.g. /index.jsp, are looked up in a hash set
+ * 2. Patterns such as /static/.* become a prefix trie lookup
+ * 3. Patterns such as .*\.css or .*.html become a suffix trie lookup
+ * 4. Anything else is matched by a single combined regular expression
+ */
+public class ExcludeMatcher {
+	
+	private final Pattern[] patterns;
+	
+	private final HashSet literals = new HashSet();
+	
+	private final PrefixTrie prefixes = new PrefixTrie();
+	
+	private final PrefixTrie suffixes = new PrefixTrie();
+	
+	/** The irregular patterns joined into one alternation, or null **/
+	private final Pattern combined;
+	
+	/** Irregular patterns that cannot be joined **/
+	private final Pattern[] separate;
+	
+	public ExcludeMatcher(Pattern[] patterns) {
+		StringBuffer buf = new StringBuffer();
+		LinkedList separateList = new LinkedList();
+		Pattern joined = null;
+		
+		this.patterns = patterns;
+		
+		for(int i=0; i<patterns.length; i++) {
+			String regex = patterns[i].pattern();
+			String literal = RegexLiterals.literal(regex);
+			String prefix = RegexLiterals.prefix(regex);
+			
+			if(literal != null) {
+				literals.add(literal);
+			} else if(prefix != null) {
+				prefixes.put(prefix, regex);
+			} else if(!addSuffix(regex)) {
+				if(RegexLiterals.hasBackReference(regex)) {
+					separateList.add(patterns[i]);
+				} else {
+					if(buf.length() > 0) {
+						buf.append('|');
+					}
+					
+					buf.append("(?:").append(regex).append(')');
+				}
+			}
+		}
+		
+		if(buf.length() > 0) {
+			joined = Pattern.compile(buf.toString());
+		}
+		
+		combined = joined;
+		separate = (Pattern[])separateList.toArray(new Pattern[separateList.size()]);
+	}
+	
+	/**
+	 * Recognize .* followed by any number of '.' and then a literal. The
+	 * leading dots only require that many extra characters in the URI.
+	 */
+	private boolean addSuffix(String regex) {
+		String rest = null;
+		String literal = null;
+		int dots = 0;
+		
+		if(!regex.startsWith(RegexLiterals.ANY)) {
+			return false;
+		}
+		
+		rest = regex.substring(RegexLiterals.ANY.length());
+		
+		while(dots < rest.length() && rest.charAt(dots) == '.') {
+			dots++;
+		}
+		
+		literal = RegexLiterals.literal(rest.substring(dots));
+		
+		if(literal == null) {
+			return false;
+		}
+		
+		suffixes.putSuffix(literal, literal.length() + dots);
+		
+		return true;
+	}
+	
+	public boolean matches(String uri) {
+		if(RegexLiterals.hasLineTerminator(uri)) {
+			/** '.' does not match line terminators, only the patterns themselves get this right **/
+			return matchesAll(uri);
+		}
+		
+		if(literals.contains(uri)) {
+			return true;
+		}
+		
+		if(prefixes.size() > 0 && prefixes.matchesPrefix(uri)) {
+			return true;
+		}
+		
+		if(suffixes.size() > 0 && suffixes.matchesSuffix(uri)) {
+			return true;
+		}
+		
+		if(combined != null && combined.matcher(uri).matches()) {
+			return true;
+		}
+		
+		for(int i=0; i<separate.length; i++) {
+			if(separate[i].matcher(uri).matches()) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	private boolean matchesAll(String uri) {
+		for(int i=0; i<patterns.length; i++) {
+			if(patterns[i].matcher(uri).matches()) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+}
@@ -0,0 +1,146 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+package org.owasp.stinger.rules;
+
+import org.owasp.stinger.Category;
+import org.owasp.stinger.Severity;
+
+/**
+ * Size and count limits of a request, checked before any regex runs. A
+ * rule set's limits override the global ones field by field; fields that
+ * neither sets are unlimited.
+ */
+public class Limits {
+	
+	/** Value of a field without a limit **/
+	public final static long NONE = -1;
+	
+	/** No limits at all, for SVDL files without a limits element **/
+	public final static Limits UNLIMITED = new Limits(NONE, NONE, NONE, NONE, NONE, NONE, null);
+	
+	/** Names of the limits, as in the SVDL file and in violations **/
+	public final static String[] NAMES = { "max-parameters", "max-name-length", "max-value-length", "max-query-size", "max-body-size", "max-cookies" };
+	
+	private final static Category DEFAULT_EXCEEDED = new Category(Category.EXCEEDED, Severity.FATAL);
+	
+	private final long maxParameters;
+	
+	private final long maxNameLength;
+	
+	private final long maxValueLength;
+	
+	private final long maxQuerySize;
+	
+	private final long maxBodySize;
+	
+	private final long maxCookies;
+	
+	/** Null until a limits element names one **/
+	private final Category exceeded;
+	
+	/** The exceeded actions, always fatal **/
+	private final Category bodyExceeded;
+	
+	/**
+	 * @param exceeded the category of a violation, null for fatal without actions
+	 */
+	public Limits(long maxParameters, long maxNameLength, long maxValueLength, long maxQuerySize, long maxBodySize, long maxCookies, Category exceeded) {
+		this.maxParameters = maxParameters;
+		this.maxNameLength = maxNameLength;
+		this.maxValueLength = maxValueLength;
+		this.maxQuerySize = maxQuerySize;
+		this.maxBodySize = maxBodySize;
+		this.maxCookies = maxCookies;
+		this.exceeded = exceeded;
+		this.bodyExceeded = new Category(Category.EXCEEDED, Severity.FATAL);
+		
+		if(exceeded != null) {
+			bodyExceeded.getActions().addAll(exceeded.getActions());
+		}
+	}
+	
+	/**
+	 * These limits with the fields they leave open taken from parent
+	 */
+	public Limits inherit(Limits parent) {
+		return new Limits(
+			pick(maxParameters, parent.maxParameters),
+			pick(maxNameLength, parent.maxNameLength),
+			pick(maxValueLength, parent.maxValueLength),
+			pick(maxQuerySize, parent.maxQuerySize),
+			pick(maxBodySize, parent.maxBodySize),
+			pick(maxCookies, parent.maxCookies),
+			(exceeded != null ? exceeded : parent.exceeded));
+	}
+	
+	private static long pick(long value, long parent) {
+		return (value != NONE ? value : parent);
+	}
+	
+	/**
+	 * True if value is over the limit
+	 */
+	public static boolean exceeds(long value, long limit) {
+		return limit != NONE && value > limit;
+	}
+	
+	public long getMaxParameters() {
+		return maxParameters;
+	}
+	
+	public long getMaxNameLength() {
+		return maxNameLength;
+	}
+	
+	public long getMaxValueLength() {
+		return maxValueLength;
+	}
+	
+	public long getMaxQuerySize() {
+		return maxQuerySize;
+	}
+	
+	public long getMaxBodySize() {
+		return maxBodySize;
+	}
+	
+	public long getMaxCookies() {
+		return maxCookies;
+	}
+	
+	/**
+	 * The category of a violation, fatal without actions unless the SVDL
+	 * file says otherwise
+	 */
+	public Category getExceeded() {
+		return (exceeded != null ? exceeded : DEFAULT_EXCEEDED);
+	}
+	
+	/**
+	 * The category of a body over max-body-size. It is fatal whatever the
+	 * SVDL file says, since such a body is never read to the end and can
+	 * neither be validated nor passed on in full.
+	 */
+	public Category getBodyExceeded() {
+		return bodyExceeded;
+	}
+}
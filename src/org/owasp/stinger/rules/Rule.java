@@ -26,6 +26,10 @@ import java.util.LinkedList;
 import java.util.regex.Pattern;
 
 import org.owasp.stinger.Category;
+import org.owasp.stinger.metrics.Metrics;
+import org.owasp.stinger.metrics.RuleStats;
+import org.owasp.stinger.regex.MatcherFactory;
+import org.owasp.stinger.regex.ValueMatcher;
 
 public class Rule {
 	
@@ -33,10 +37,20 @@ public class Rule {
 	
 	private Pattern pattern = null;
 	
+	private ValueMatcher matcher = null;
+	
 	private Category missing = null;
 	
 	private Category malformed = null;
 	
+	private RuleStats stats = null;
+	
+	/** Largest uploaded file in bytes, -1 for no limit **/
+	private long maxSize = -1;
+	
+	/** Allowed content types of uploaded files, null for any **/
+	private Pattern contentType = null;
+	
 	public Rule() {
 		
 	}
@@ -55,6 +69,11 @@ public class Rule {
 	
 	public void setPattern(String regex) {
 		this.pattern = Pattern.compile(regex);
+		this.matcher = MatcherFactory.compile(pattern);
+	}
+	
+	public String getEngine() {
+		return matcher.getEngine();
 	}
 	
 	public Category getMissing() {
@@ -81,7 +100,58 @@ public class Rule {
 		return malformed.getActions();
 	}
 	
+	public RuleStats getStats() {
+		return stats;
+	}
+	
+	public void setStats(RuleStats stats) {
+		this.stats = stats;
+	}
+	
+	public long getMaxSize() {
+		return maxSize;
+	}
+	
+	public void setMaxSize(long maxSize) {
+		this.maxSize = maxSize;
+	}
+	
+	public String getContentType() {
+		return (contentType != null ? contentType.pattern() : null);
+	}
+	
+	public void setContentType(String regex) {
+		this.contentType = (regex != null ? Pattern.compile(regex) : null);
+	}
+	
+	/**
+	 * Checks an uploaded file. The file name is matched against the regex of
+	 * the rule, the content type and size against the optional limits.
+	 */
+	public boolean isValidFile(String filename, String type, long size) {
+		if(maxSize >= 0 && size > maxSize) {
+			return false;
+		}
+		
+		if(contentType != null && (type == null || !contentType.matcher(type).matches())) {
+			return false;
+		}
+		
+		return isValid(filename);
+	}
+	
 	public boolean isValid(String value) {
-		return pattern.matcher(value).matches();
+		long start = 0;
+		boolean valid = false;
+		
+		if(stats == null || !Metrics.isEnabled()) {
+			return matcher.matches(value);
+		}
+		
+		start = System.nanoTime();
+		valid = matcher.matches(value);
+		stats.recordEvaluation(System.nanoTime() - start, valid);
+		
+		return valid;
 	}
 }
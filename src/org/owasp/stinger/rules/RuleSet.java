@@ -22,13 +22,23 @@
 
 package org.owasp.stinger.rules;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
 
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -41,8 +51,19 @@ import org.w3c.dom.NodeList;
 import org.owasp.stinger.Category;
 import org.owasp.stinger.Severity;
 import org.owasp.stinger.actions.AbstractAction;
+import org.owasp.stinger.metrics.Metrics;
+import org.owasp.stinger.regex.CharClassMatcher;
+import org.owasp.stinger.regex.DfaMatcher;
+import org.owasp.stinger.regex.PatternMatcher;
 
 
+/**
+ * The compiled form of an SVDL file. A RuleSet is fully built by its
+ * constructor and never modified afterwards (apart from its cache of
+ * resolved validation plans), so a single instance can be shared by all
+ * request threads without locking. Reloading the SVDL file
+ * produces a new RuleSet rather than changing an existing one.
+ */
 public class RuleSet {
 	
 	/** Denotes a default ruleset **/
@@ -52,18 +73,50 @@ public class RuleSet {
 	public final static String STINGER_ALL = "STINGER_ALL";
 	
 	/** The exclude-set which no protection will be applied **/
-	private LinkedList excludeSet = new LinkedList();
+	private final ExcludeMatcher excludeSet;
+	
+	/** Double-Map of all parameter rules for a particular URI, in document order **/
+	private final Map pRules;
+	
+	/** Index from request URI to the plan of the matching rule set **/
+	private final RuleSetRouter router;
+	
+	/** Plan for URIs without a rule set of their own **/
+	private final ValidationPlan defaultPlan;
+	
+	/** Resolved plans of recently requested URIs, as CachedPlans by URI **/
+	private final ConcurrentHashMap planCache = new ConcurrentHashMap();
 	
-	/** Double-Map of all parameter rules for a particular URI **/
-	private HashMap pRules = new HashMap();
+	/** Maximum number of URIs in the plan cache **/
+	public final static int PLAN_CACHE_SIZE = 1024;
+	
+	/** The cached URIs by slot, the clock of the plan cache. Guards planHand **/
+	private final String[] planKeys = new String[PLAN_CACHE_SIZE];
+	
+	/** Next slot the clock looks at **/
+	private int planHand = 0;
+	
+	/** Longer URIs are resolved on every request rather than cached **/
+	public final static int PLAN_CACHE_MAX_URI = 512;
 	
 	/** Map of all cookie rules **/
-	private HashMap cRules = new HashMap();
+	private final Map cRules;
+	
+	private final CookieRule[] cookieRules;
 	
 	/** Map of all regular expressions **/
-	private HashMap regexs = new HashMap();
+	private final Map regexs;
+	
+	/** Limits of rule sets without limits of their own **/
+	private final Limits limits;
+	
+	/** Attack signatures scanned for in every value **/
+	private final SignatureSet signatures;
 	
-	private boolean debug = false;
+	/** Names of all parameter and cookie rules and of the limits **/
+	private final Set ruleNames;
+	
+	private final boolean debug;
 	
 	private Document parseXmlFile(String fileName) {
 		Document doc = null;
@@ -80,13 +133,74 @@ public class RuleSet {
 		return doc;
 	}
 	
-	private RuleSet() {
+	public RuleSet(String config, boolean debugIn) {
+		LinkedList excludes = new LinkedList();
+		LinkedHashMap parameterRules = new LinkedHashMap();
+		LinkedHashMap cookies = new LinkedHashMap();
+		HashMap pathLimits = new HashMap();
+		HashMap regexMap = new HashMap();
+		LinkedList signatureSets = new LinkedList();
+		Iterator itr = null;
+		Pattern[] paths = null;
+		Map[] pathRules = null;
+		ValidationPlan[] plans = null;
+		Map defaultRules = null;
+		Rule globalDefault = null;
+		int i = 0;
+		
+		debug = debugIn;
+		limits = parseRules(config, excludes, parameterRules, cookies, regexMap, pathLimits, signatureSets);
+		signatures = (signatureSets.isEmpty() ? SignatureSet.NONE : (SignatureSet)signatureSets.getFirst());
+		
+		/** Freeze everything that was parsed **/
+		excludeSet = new ExcludeMatcher((Pattern[])excludes.toArray(new Pattern[excludes.size()]));
+		
+		paths = new Pattern[parameterRules.size()];
+		pathRules = new Map[parameterRules.size()];
+		itr = parameterRules.keySet().iterator();
+		
+		while(itr.hasNext()) {
+			paths[i] = (Pattern)itr.next();
+			pathRules[i] = Collections.unmodifiableMap((Map)parameterRules.get(paths[i]));
+			parameterRules.put(paths[i], pathRules[i]);
+			i++;
+		}
+		
+		pRules = Collections.unmodifiableMap(parameterRules);
+		cRules = Collections.unmodifiableMap(cookies);
+		cookieRules = (CookieRule[])cookies.values().toArray(new CookieRule[cookies.size()]);
+		regexs = Collections.unmodifiableMap(regexMap);
+		ruleNames = collectRuleNames(pathRules, cookies.keySet());
 		
+		/** Resolve the global default once so every plan can fall back to it **/
+		defaultRules = (Map)new RuleSetRouter(paths, pathRules).route(STINGER_DEFAULT);
+		
+		if(defaultRules != null) {
+			globalDefault = (Rule)defaultRules.get(STINGER_ALL);
+		}
+		
+		plans = new ValidationPlan[paths.length];
+		
+		for(i=0; i<paths.length; i++) {
+			Limits pathLimit = (Limits)pathLimits.get(paths[i]);
+			
+			plans[i] = new ValidationPlan(paths[i].pattern(), pathRules[i], globalDefault, cRules, cookieRules, pathLimit != null ? pathLimit.inherit(limits) : limits);
+		}
+		
+		router = new RuleSetRouter(paths, plans);
+		defaultPlan = new ValidationPlan(STINGER_DEFAULT, null, globalDefault, cRules, cookieRules, limits);
 	}
 	
-	public RuleSet(String config, boolean debugIn) {
-		debug = debugIn;
-		parseRules(config);
+	private static Set collectRuleNames(Map[] pathRules, Set cookieNames) {
+		HashSet names = new HashSet(cookieNames);
+		
+		for(int i=0; i<pathRules.length; i++) {
+			names.addAll(pathRules[i].keySet());
+		}
+		
+		names.addAll(Arrays.asList(Limits.NAMES));
+		
+		return Collections.unmodifiableSet(names);
 	}
 	
 	private String getField(Element e, String key) {
@@ -106,6 +220,31 @@ public class RuleSet {
 		return field;
 	}
 	
+	/**
+	 * Like getField, but returns null rather than failing when the element
+	 * has no such child
+	 */
+	private String getOptionalField(Element e, String key) {
+		return (e.getElementsByTagName(key).getLength() > 0 ? getField(e, key) : null);
+	}
+	
+	/**
+	 * The first child element of e with the name, not looking any deeper
+	 */
+	private Element getChild(Element e, String name) {
+		NodeList children = e.getChildNodes();
+		
+		for(int i=0; i<children.getLength(); i++) {
+			Node n = children.item(i);
+			
+			if(n.getNodeType() == Node.ELEMENT_NODE && n.getNodeName().equals(name)) {
+				return (Element)n;
+			}
+		}
+		
+		return null;
+	}
+	
 	private String getValue(Element e) {
 		return e.getFirstChild().getNodeValue().trim();
 	}
@@ -159,6 +298,11 @@ public class RuleSet {
 						action = (AbstractAction)possibleAction;
 						
 						parseParameters(ae, action);
+						action.init();
+						
+						if(rule != null) {
+							action.init(rule);
+						}
 						
 						c.addAction(action);
 					}
@@ -199,6 +343,125 @@ public class RuleSet {
 		rule.setMalformed(malformed);
 	}
 	
+	/**
+	 * Parse the limits element directly below e, null if there is none
+	 */
+	private Limits parseLimits(Element e) {
+		Element le = getChild(e, "limits");
+		Element ee = null;
+		Category exceeded = null;
+		Severity severity = null;
+		
+		if(le == null) {
+			return null;
+		}
+		
+		ee = getChild(le, "exceeded");
+		
+		if(ee != null) {
+			severity = Severity.valueOf(getOptionalField(ee, "severity"));
+			exceeded = new Category(Category.EXCEEDED, severity != null ? severity : Severity.FATAL);
+			
+			parseActions(ee, null, exceeded);
+		}
+		
+		return new Limits(
+			getLimit(le, "max-parameters"),
+			getLimit(le, "max-name-length"),
+			getLimit(le, "max-value-length"),
+			getLimit(le, "max-query-size"),
+			getLimit(le, "max-body-size"),
+			getLimit(le, "max-cookies"),
+			exceeded);
+	}
+	
+	private long getLimit(Element e, String key) {
+		String value = getOptionalField(e, key);
+		
+		return (value != null ? Long.parseLong(value) : Limits.NONE);
+	}
+	
+	/**
+	 * Parse the signature-set element directly below e, null if there is
+	 * none. Signature files are read relative to the SVDL file.
+	 */
+	private SignatureSet parseSignatures(Element e, String config) {
+		Element se = getChild(e, "signature-set");
+		Element me = null;
+		NodeList children = null;
+		LinkedList signatures = new LinkedList();
+		Category matched = null;
+		Severity severity = null;
+		
+		if(se == null) {
+			return null;
+		}
+		
+		children = se.getElementsByTagName("signature");
+		
+		for(int i=0; i<children.getLength(); i++) {
+			Node n = children.item(i);
+			
+			if(n.getNodeType() == Node.ELEMENT_NODE && n.getFirstChild() != null) {
+				signatures.add(getValue((Element)n));
+			}
+		}
+		
+		children = se.getElementsByTagName("file");
+		
+		for(int i=0; i<children.getLength(); i++) {
+			File file = new File(getValue((Element)children.item(i)));
+			
+			if(!file.isAbsolute()) {
+				file = new File(new File(config).getAbsoluteFile().getParentFile(), file.getPath());
+			}
+			
+			readSignatures(file, signatures);
+		}
+		
+		me = getChild(se, "matched");
+		
+		if(me != null) {
+			severity = Severity.valueOf(getOptionalField(me, "severity"));
+			matched = new Category(Category.SIGNATURE, severity != null ? severity : Severity.FATAL);
+			
+			parseActions(me, null, matched);
+		}
+		
+		if (debug) System.out.println("[Stinger-Filter] " + signatures.size() + " signature(s) loaded");
+		
+		return new SignatureSet((String[])signatures.toArray(new String[signatures.size()]), "true".equalsIgnoreCase(getOptionalField(se, "case-fold")), matched);
+	}
+	
+	/**
+	 * Add the signatures of a UTF-8 file, one per line. Empty lines and
+	 * lines starting with # are skipped.
+	 */
+	private void readSignatures(File file, LinkedList signatures) {
+		BufferedReader reader = null;
+		String line = null;
+		
+		try {
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+			
+			while((line = reader.readLine()) != null) {
+				if(line.length() > 0 && !line.startsWith("#")) {
+					signatures.add(line);
+				}
+			}
+		} catch (IOException ioe) {
+			throw new IllegalArgumentException("Unable to read signature file " + file + ": " + ioe.getMessage());
+		} finally {
+			if(reader != null) {
+				try {
+					reader.close();
+				} catch (IOException ioe) {
+					/** Nothing left to read **/
+				}
+			}
+		}
+	}
+	
 	private Pattern getPath(Element e) {
 		String path = getField(e, "path");
 		
@@ -207,9 +470,18 @@ public class RuleSet {
 		return p;
 	}
 	
-	private void parseRules(String config) {
+	/**
+	 * Parse the SVDL file into the collections, returns the global limits
+	 */
+	private Limits parseRules(String config, LinkedList excludeSet, Map pRules, Map cRules, Map regexs, Map pathLimits, LinkedList signatureSets) {
 		Document d = parseXmlFile(config);
 		if (debug) System.out.println(config);
+		
+		/** Let the caller decide what to do with an unreadable SVDL file **/
+		if(d == null) {
+			throw new IllegalArgumentException("Unable to parse SVDL file " + config);
+		}
+		
 		Element root = d.getDocumentElement();
 		Element regexset = null;
 		Element e = null;
@@ -224,6 +496,8 @@ public class RuleSet {
 		Rule pRule = null;
 		CookieRule cRule = null;
 		Pattern path = null;
+		Limits limits = null;
+		SignatureSet signatureSet = null;
 		
 		/** Parse Exclude Set **/
 		if(root.getElementsByTagName("exclude-set").getLength() > 0) {
@@ -274,6 +548,7 @@ public class RuleSet {
 				cRule.setPattern((String)regexs.get(getField(cookie, "regex")));
 				cRule.setCreated(getField(cookie, "created"));
 				cRule.setEnforced(getField(cookie, "enforce"));
+				cRule.setStats(Metrics.getRuleStats(Metrics.COOKIES, cRule.getName()));
 				
 				/** Parse Missing **/
 				parseMissing(cookie, cRule);
@@ -319,6 +594,14 @@ public class RuleSet {
 						
 						pRule.setPattern(pattern);
 						
+						/** Limits for uploaded files **/
+						if(getOptionalField(e, "max-size") != null) {
+							pRule.setMaxSize(Long.parseLong(getOptionalField(e, "max-size")));
+						}
+						
+						pRule.setContentType(getOptionalField(e, "content-type"));
+						pRule.setStats(Metrics.getRuleStats(path.pattern(), pRule.getName()));
+						
 						/** Parse Missing **/
 						parseMissing(e, pRule);
 						
@@ -331,57 +614,160 @@ public class RuleSet {
 				}
 				
 				pRules.put(path, rules);
+				
+				/** Parse Rule Set Limits **/
+				limits = parseLimits(ruleSet);
+				
+				if(limits != null) {
+					pathLimits.put(path, limits);
+				}
 			}
 		}
+		
+		/** Parse Signature Set **/
+		signatureSet = parseSignatures(root, config);
+		
+		if(signatureSet != null) {
+			signatureSets.add(signatureSet);
+		}
+		
+		/** Parse Global Limits **/
+		limits = parseLimits(root);
+		
+		return (limits != null ? limits : Limits.UNLIMITED);
 	}
 	
 	public Rule getParameterRule(String uri, String parameterName) {
-		Rule rule = null;
-		HashMap uriRules = null;
+		return getPlan(uri).getRule(parameterName);
+	}
+	
+	public Map getRules(String uri) {
+		ValidationPlan plan = (ValidationPlan)router.route(stripPathParameters(uri));
 		
-		uriRules = getRules(uri);
+		return (plan != null ? plan.getRules() : null);
+	}
+	
+	/**
+	 * Returns the validation plan for the uri. Path parameters such as
+	 * ;jsessionid=... are removed before the uri is routed, so they neither
+	 * pick another rule set nor split the cache. Plans of recently seen
+	 * URIs are cached, so repeated requests skip rule set resolution and
+	 * cookie rule matching entirely.
+	 */
+	public ValidationPlan getPlan(String uri) {
+		String path = stripPathParameters(uri);
+		CachedPlan cached = (CachedPlan)planCache.get(path);
+		ValidationPlan plan = null;
+		
+		if(cached != null) {
+			/** Only write the shared flag when it changes **/
+			if(!cached.used) {
+				cached.used = true;
+			}
+			
+			return cached.plan;
+		}
 		
-		if(uriRules == null) {
-			if (debug) System.out.println("[Stinger-Filter](Warning): using default parameter rule for parameter " + parameterName);
-			uriRules = getRules(STINGER_DEFAULT);
-			rule = (Rule)uriRules.get(STINGER_ALL);
-		} else {
-			rule = (Rule)uriRules.get(parameterName);
+		plan = (ValidationPlan)router.route(path);
+		
+		if(plan == null) {
+			if (debug) System.out.println("[Stinger-Filter](WARNING): using default rules for uri " + uri);
+			plan = defaultPlan;
+		}
+		
+		/** Resolve the cookie rules that apply to this uri **/
+		plan = plan.forUri(path);
+		
+		if(path.length() <= PLAN_CACHE_MAX_URI) {
+			cachePlan(path, plan);
+		}
+		
+		return plan;
+	}
+	
+	/**
+	 * Put the plan into the slot of the first cached URI that was not
+	 * requested again since the clock last passed it. URIs seen once, such
+	 * as scanner traffic or REST ids, are evicted before the hot ones.
+	 */
+	private void cachePlan(String path, ValidationPlan plan) {
+		synchronized(planKeys) {
+			if(planCache.containsKey(path)) {
+				return;
+			}
 			
-			/** If no rule exists for this particular URI, then get defaults **/
-			if(rule == null) {
-				rule = (Rule)uriRules.get(STINGER_ALL);
+			/** After a full turn every flag is cleared, stop there in any case **/
+			for(int i=0; ; i++) {
+				String key = planKeys[planHand];
+				CachedPlan cached = (key != null ? (CachedPlan)planCache.get(key) : null);
 				
-				/** No STINGER_ALL rule was defined for this URI, get Global Default **/
-				if(rule == null) {
-					uriRules = getRules(STINGER_DEFAULT);
-					rule = (Rule)uriRules.get(STINGER_ALL);
+				if(cached != null && cached.used && i < PLAN_CACHE_SIZE) {
+					cached.used = false;
+					planHand = (planHand + 1) % PLAN_CACHE_SIZE;
+					continue;
 				}
+				
+				if(key != null) {
+					planCache.remove(key);
+				}
+				
+				planKeys[planHand] = path;
+				planCache.put(path, new CachedPlan(plan));
+				planHand = (planHand + 1) % PLAN_CACHE_SIZE;
+				
+				return;
 			}
 		}
-		
-		return rule;
 	}
 	
-	public HashMap getRules(String uri) {
-		HashMap rules = null;
-		Enumeration e = Collections.enumeration(pRules.keySet());
+	/**
+	 * Remove the path parameters, the part of each segment from a ';' on
+	 */
+	public static String stripPathParameters(String uri) {
+		int semicolon = uri.indexOf(';');
+		int start = 0;
+		StringBuffer buf = null;
+		
+		if(semicolon < 0) {
+			return uri;
+		}
+		
+		buf = new StringBuffer(uri.length());
 		
-		while(e.hasMoreElements()) {
-			Pattern p = (Pattern)e.nextElement();
+		while(semicolon >= 0) {
+			buf.append(uri, start, semicolon);
+			start = uri.indexOf('/', semicolon);
 			
-			if(p.matcher(uri).matches()) {
-				rules = (HashMap)pRules.get(p);
+			if(start < 0) {
+				return buf.toString();
 			}
+			
+			semicolon = uri.indexOf(';', start);
 		}
 		
-		return rules;
+		buf.append(uri, start, uri.length());
+		
+		return buf.toString();
+	}
+	
+	/**
+	 * A plan in the cache, with the flag the clock clears and a request sets
+	 */
+	private static class CachedPlan {
+		
+		private final ValidationPlan plan;
+		
+		private volatile boolean used = false;
+		
+		private CachedPlan(ValidationPlan plan) {
+			this.plan = plan;
+		}
 	}
 	
 	public LinkedList getParameterRules(String uri) {
 		LinkedList result = null;
 		Iterator itr = null;
-		HashMap uriRules = null;
+		Map uriRules = null;
 		String name = null;
 		Rule rule = null;
 		
@@ -413,65 +799,98 @@ public class RuleSet {
 	}
 	
 	public LinkedList getCookieRules() {
-		LinkedList result = null;
-		Iterator itr = null;
-		String name = null;
-		
-		result = new LinkedList();
-		itr = cRules.keySet().iterator();
+		LinkedList result = new LinkedList();
 		
-		while(itr.hasNext()) {
-			name = (String)itr.next();
-			
-			result.add(cRules.get(name));
+		for(int i=0; i<cookieRules.length; i++) {
+			result.add(cookieRules[i]);
 		}
 		
 		return result;
 	}
 	
-	public HashMap getRegexs() {
+	public Map getRegexs() {
 		return regexs;
 	}
 	
-	public void addParameterRule(String uri, Rule newRule) {
-		Enumeration e = Collections.enumeration(pRules.keySet());
-		boolean isSet = false;
-		HashMap ruleSet = null;
-		
-		while(e.hasMoreElements()) {
-			Pattern p = (Pattern)e.nextElement();
-			
-			if(p.matcher(uri).matches()) {
-				ruleSet = (HashMap)pRules.get(p);
-				ruleSet.put(newRule.getName(), newRule);
-				isSet = true;
-			}
-		}
-		
-		if(isSet == false) {
-			ruleSet = new HashMap();
-			ruleSet.put(newRule.getName(), newRule);
-			pRules.put(Pattern.compile(uri), ruleSet);
-		}
+	public Map getParameterRules() {
+		return pRules;
 	}
 	
-	public HashMap getParameterRules() {
-		return pRules;
+	/**
+	 * The global limits
+	 */
+	public Limits getLimits() {
+		return limits;
+	}
+	
+	/**
+	 * The attack signatures, empty if the SVDL file has none
+	 */
+	public SignatureSet getSignatures() {
+		return signatures;
+	}
+	
+	/**
+	 * True if name is the name of a parameter rule, cookie rule or limit,
+	 * i.e. it comes from the SVDL file rather than from a request
+	 */
+	public boolean isRuleName(String name) {
+		return ruleNames.contains(name);
 	}
 	
 	public boolean isExcluded(String uri) {
-		Iterator itr = excludeSet.iterator();
-		boolean isExcluded = false;
+		return excludeSet.matches(uri);
+	}
+	
+	/**
+	 * How many rules each engine matches. Rules left to java.util.regex
+	 * are listed with the reason.
+	 */
+	public String getEngineReport() {
+		StringBuffer buf = new StringBuffer();
+		StringBuffer fallbacks = new StringBuffer();
+		IdentityHashMap seen = new IdentityHashMap();
+		LinkedHashMap counts = new LinkedHashMap();
+		LinkedList rules = new LinkedList();
+		Iterator itr = pRules.values().iterator();
+		
+		counts.put(CharClassMatcher.ENGINE, Integer.valueOf(0));
+		counts.put(DfaMatcher.ENGINE, Integer.valueOf(0));
+		counts.put(PatternMatcher.ENGINE, Integer.valueOf(0));
+		
+		while(itr.hasNext()) {
+			rules.addAll(((Map)itr.next()).values());
+		}
+		
+		rules.addAll(cRules.values());
+		itr = rules.iterator();
 		
 		while(itr.hasNext()) {
-			Pattern p = (Pattern)itr.next();
+			Rule rule = (Rule)itr.next();
+			String engine = rule.getEngine();
+			
+			if(seen.put(rule, rule) != null) {
+				continue;
+			}
 			
-			if(p.matcher(uri).matches()) {
-				isExcluded = true;
-				break;
+			if(engine.startsWith(PatternMatcher.ENGINE)) {
+				fallbacks.append("\n  ").append(rule.getName()).append(" ").append(rule.getPattern()).append(": ").append(engine);
+				engine = PatternMatcher.ENGINE;
 			}
+			
+			counts.put(engine, Integer.valueOf(((Integer)counts.get(engine)).intValue() + 1));
 		}
 		
-		return isExcluded;
+		itr = counts.keySet().iterator();
+		
+		while(itr.hasNext()) {
+			String engine = (String)itr.next();
+			
+			buf.append(buf.length() > 0 ? ", " : "rules per engine: ").append(engine).append("=").append(counts.get(engine));
+		}
+		
+		buf.append(fallbacks);
+		
+		return buf.toString();
 	}
 }
@@ -0,0 +1,180 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+package org.owasp.stinger.rules;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.owasp.stinger.util.PrefixTrie;
+import org.owasp.stinger.util.RegexLiterals;
+
+/**
+ * Maps a request URI to the rule set whose path matches it. Paths are
+ * sorted into three indexes when the RuleSet is built:
+ *
+ * 1. Literal paths, looked up in a hash map
+ * 2. Paths of the form literal.*, looked up in a prefix trie
+ * 3. Everything else, matched by one combined regular expression
+ *
+ * An exact path wins over a prefix path, the longest prefix wins over a
+ * shorter one, and prefix paths win over the remaining regular expressions.
+ * Among regular expressions the first one in the SVDL file wins.
+ */
+public class RuleSetRouter {
+	
+	/** Literal path -> target **/
+	private final HashMap exact = new HashMap();
+	
+	/** Literal prefix -> target **/
+	private final PrefixTrie prefixes = new PrefixTrie();
+	
+	/** Remaining paths, in document order **/
+	private final Pattern[] regexPaths;
+	
+	private final Object[] regexTargets;
+	
+	/** All combinable regex paths as (p1)|(p2)|..., or null **/
+	private final Pattern combined;
+	
+	/** Group number of each combined path, -1 if it must be matched on its own **/
+	private final int[] groups;
+	
+	/**
+	 * @param paths the rule set paths in document order
+	 * @param targets the object to return for each path
+	 */
+	public RuleSetRouter(Pattern[] paths, Object[] targets) {
+		LinkedList regexList = new LinkedList();
+		LinkedList targetList = new LinkedList();
+		
+		for(int i=0; i<paths.length; i++) {
+			String regex = paths[i].pattern();
+			String literal = RegexLiterals.literal(regex);
+			String prefix = RegexLiterals.prefix(regex);
+			
+			if(literal != null) {
+				if(!exact.containsKey(literal)) {
+					exact.put(literal, targets[i]);
+				}
+			} else if(prefix != null) {
+				prefixes.put(prefix, targets[i]);
+			} else {
+				regexList.add(paths[i]);
+				targetList.add(targets[i]);
+			}
+		}
+		
+		regexPaths = (Pattern[])regexList.toArray(new Pattern[regexList.size()]);
+		regexTargets = targetList.toArray();
+		groups = new int[regexPaths.length];
+		combined = combine(regexPaths, groups);
+	}
+	
+	/**
+	 * Build one alternation of all paths that can safely be wrapped in a
+	 * capturing group. Paths using back references would see their group
+	 * numbers shift, so they are matched separately.
+	 */
+	private static Pattern combine(Pattern[] paths, int[] groups) {
+		StringBuffer buf = new StringBuffer();
+		Pattern result = null;
+		int group = 1;
+		
+		for(int i=0; i<paths.length; i++) {
+			String regex = paths[i].pattern();
+			
+			if(RegexLiterals.hasBackReference(regex)) {
+				groups[i] = -1;
+				continue;
+			}
+			
+			if(buf.length() > 0) {
+				buf.append('|');
+			}
+			
+			buf.append('(').append(regex).append(')');
+			groups[i] = group;
+			group += 1 + paths[i].matcher("").groupCount();
+		}
+		
+		if(buf.length() > 0) {
+			try {
+				result = Pattern.compile(buf.toString());
+			} catch (PatternSyntaxException pse) {
+				/** e.g. duplicate named groups, fall back to matching each path **/
+				for(int i=0; i<groups.length; i++) {
+					groups[i] = -1;
+				}
+			}
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Returns the target of the path matching the uri, or null.
+	 */
+	public Object route(String uri) {
+		Object target = exact.get(uri);
+		
+		if(target == null && prefixes.size() > 0 && !RegexLiterals.hasLineTerminator(uri)) {
+			target = prefixes.longestPrefix(uri);
+		}
+		
+		if(target == null && regexPaths.length > 0) {
+			target = routeRegex(uri);
+		}
+		
+		return target;
+	}
+	
+	private Object routeRegex(String uri) {
+		int first = regexPaths.length;
+		
+		if(combined != null) {
+			Matcher m = combined.matcher(uri);
+			
+			if(m.matches()) {
+				for(int i=0; i<groups.length; i++) {
+					if(groups[i] > 0 && m.start(groups[i]) >= 0) {
+						first = i;
+						break;
+					}
+				}
+			}
+		}
+		
+		/** Paths that could not be combined only matter if they come first **/
+		for(int i=0; i<first; i++) {
+			if(groups[i] < 0 && regexPaths[i].matcher(uri).matches()) {
+				first = i;
+				break;
+			}
+		}
+		
+		return (first < regexPaths.length ? regexTargets[first] : null);
+	}
+}
@@ -0,0 +1,79 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+package org.owasp.stinger.rules;
+
+import org.owasp.stinger.Category;
+import org.owasp.stinger.Severity;
+import org.owasp.stinger.util.SignatureMatcher;
+
+/**
+ * Known attack substrings that no parameter value, cookie or URI may
+ * contain. The signatures are compiled into one SignatureMatcher when the
+ * SVDL file is loaded, so a value is scanned once whatever the number of
+ * signatures.
+ */
+public class SignatureSet {
+	
+	/** No signatures, for SVDL files without a signature-set element **/
+	public final static SignatureSet NONE = new SignatureSet(new String[0], false, null);
+	
+	private final static Category DEFAULT_MATCHED = new Category(Category.SIGNATURE, Severity.FATAL);
+	
+	private final SignatureMatcher matcher;
+	
+	/** Null unless the signature-set element names one **/
+	private final Category matched;
+	
+	/**
+	 * @param matched the category of a violation, null for fatal without actions
+	 */
+	public SignatureSet(String[] signatures, boolean caseFold, Category matched) {
+		this.matcher = new SignatureMatcher(signatures, caseFold);
+		this.matched = matched;
+	}
+	
+	/**
+	 * Returns the first signature found in the value, or null
+	 */
+	public String find(String value) {
+		int index = (value != null ? matcher.find(value) : -1);
+		
+		return (index >= 0 ? matcher.getSignature(index) : null);
+	}
+	
+	public boolean isEmpty() {
+		return matcher.size() == 0;
+	}
+	
+	public int size() {
+		return matcher.size();
+	}
+	
+	/**
+	 * The category of a violation, fatal without actions unless the SVDL
+	 * file says otherwise
+	 */
+	public Category getMatched() {
+		return (matched != null ? matched : DEFAULT_MATCHED);
+	}
+}
@@ -0,0 +1,303 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+package org.owasp.stinger.rules;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+
+import org.owasp.stinger.metrics.Metrics;
+import org.owasp.stinger.metrics.PathStats;
+
+/**
+ * Everything Stinger needs to validate a request for one rule set, resolved
+ * when the RuleSet is built: the required parameters, the parameter rules
+ * with the STINGER_ALL and global default fallback already chosen, and the
+ * cookie rules.
+ *
+ * Rules whose name starts with / target a JSON pointer in a JSON body
+ * instead of a parameter. A * segment in such a name matches any array
+ * index, so /items/* matches /items/0, /items/1 and so on.
+ *
+ * The plans built with the RuleSet are shared by every URI of a rule set.
+ * RuleSet.getPlan hands out a copy made by forUri, which also knows which
+ * cookie rules apply to that one URI.
+ */
+public class ValidationPlan {
+	
+	private final String path;
+	
+	/** Rules for this rule set, by parameter name **/
+	private final Map rules;
+	
+	/** Rule for parameters and JSON values without a rule of their own **/
+	private final Rule fallback;
+	
+	/** Rules checked by the missing parameter pass **/
+	private final Rule[] required;
+	
+	/** Rules for JSON pointers by name **/
+	private final Map jsonRules;
+	
+	/** JSON pointer rules checked by the missing value pass **/
+	private final Rule[] jsonRequired;
+	
+	/** True if a JSON pointer rule has a * segment **/
+	private final boolean jsonWildcards;
+	
+	private final Map cookieRules;
+	
+	private final CookieRule[] cookieRuleArray;
+	
+	/** The URI the cookie rules were resolved for, null in a shared plan **/
+	private final String uri;
+	
+	/** Cookie rules enforced on the URI **/
+	private final CookieRule[] enforcedCookies;
+	
+	/** True where the enforced cookie must be present, i.e. it is not created on the URI **/
+	private final boolean[] requiredCookies;
+	
+	/** Index into enforcedCookies by cookie name **/
+	private final Map cookieIndex;
+	
+	private final PathStats stats;
+	
+	private final Limits limits;
+	
+	/**
+	 * @param path the rule set path
+	 * @param rules the rules of the rule set by name, or null for the default plan
+	 * @param globalDefault the STINGER_ALL rule of the default rule set
+	 * @param cookieRules all cookie rules by name
+	 * @param cookieRuleArray all cookie rules
+	 * @param limits the limits of the rule set, merged with the global ones
+	 */
+	ValidationPlan(String path, Map rules, Rule globalDefault, Map cookieRules, CookieRule[] cookieRuleArray, Limits limits) {
+		LinkedList requiredList = new LinkedList();
+		LinkedList jsonList = new LinkedList();
+		HashMap json = new HashMap();
+		boolean wildcards = false;
+		Rule all = null;
+		
+		if(rules != null) {
+			Iterator itr = rules.values().iterator();
+			
+			while(itr.hasNext()) {
+				Rule rule = (Rule)itr.next();
+				
+				if(isJsonPointer(rule.getName())) {
+					json.put(rule.getName(), rule);
+					jsonList.add(rule);
+					wildcards |= (rule.getName().indexOf("/*") >= 0);
+				} else if(!RuleSet.STINGER_ALL.equals(rule.getName())) {
+					requiredList.add(rule);
+				}
+			}
+			
+			all = (Rule)rules.get(RuleSet.STINGER_ALL);
+		} else {
+			/** URIs without a rule set only ever use the global default **/
+			rules = Collections.EMPTY_MAP;
+		}
+		
+		this.path = path;
+		this.rules = rules;
+		this.fallback = (all != null ? all : globalDefault);
+		this.required = (Rule[])requiredList.toArray(new Rule[requiredList.size()]);
+		this.jsonRules = json;
+		this.jsonRequired = (Rule[])jsonList.toArray(new Rule[jsonList.size()]);
+		this.jsonWildcards = wildcards;
+		this.cookieRules = cookieRules;
+		this.cookieRuleArray = cookieRuleArray;
+		this.uri = null;
+		this.enforcedCookies = null;
+		this.requiredCookies = null;
+		this.cookieIndex = null;
+		this.stats = Metrics.getPathStats(path);
+		this.limits = limits;
+	}
+	
+	private ValidationPlan(ValidationPlan plan, String uri) {
+		LinkedList enforced = new LinkedList();
+		HashMap index = new HashMap();
+		
+		for(int i=0; i<plan.cookieRuleArray.length; i++) {
+			CookieRule cRule = plan.cookieRuleArray[i];
+			
+			if(cRule.isEnforced(uri)) {
+				index.put(cRule.getName(), Integer.valueOf(enforced.size()));
+				enforced.add(cRule);
+			}
+		}
+		
+		this.path = plan.path;
+		this.rules = plan.rules;
+		this.fallback = plan.fallback;
+		this.required = plan.required;
+		this.jsonRules = plan.jsonRules;
+		this.jsonRequired = plan.jsonRequired;
+		this.jsonWildcards = plan.jsonWildcards;
+		this.cookieRules = plan.cookieRules;
+		this.cookieRuleArray = plan.cookieRuleArray;
+		this.uri = uri;
+		this.enforcedCookies = (CookieRule[])enforced.toArray(new CookieRule[enforced.size()]);
+		this.requiredCookies = new boolean[enforcedCookies.length];
+		this.cookieIndex = index;
+		this.stats = plan.stats;
+		this.limits = plan.limits;
+		
+		for(int i=0; i<enforcedCookies.length; i++) {
+			requiredCookies[i] = !enforcedCookies[i].isCreatedUri(uri);
+		}
+	}
+	
+	/**
+	 * A copy of this plan with the cookie rules resolved for the URI
+	 */
+	ValidationPlan forUri(String uri) {
+		return new ValidationPlan(this, uri);
+	}
+	
+	public PathStats getStats() {
+		return stats;
+	}
+	
+	public Limits getLimits() {
+		return limits;
+	}
+	
+	public String getPath() {
+		return path;
+	}
+	
+	/**
+	 * Returns the rule for the parameter, falling back to the STINGER_ALL
+	 * rule of the rule set and then to the global default.
+	 */
+	public Rule getRule(String parameterName) {
+		Rule rule = (Rule)rules.get(parameterName);
+		
+		return (rule != null ? rule : fallback);
+	}
+	
+	public static boolean isJsonPointer(String name) {
+		return name.startsWith("/");
+	}
+	
+	/**
+	 * Returns the rule for a value of a JSON body. Values without a pointer
+	 * rule of their own fall back to the STINGER_ALL rule of the rule set
+	 * and then to the global default, as parameters do.
+	 */
+	public Rule getJsonRule(String pointer) {
+		Rule rule = (Rule)jsonRules.get(pointer);
+		
+		if(rule == null && jsonWildcards) {
+			rule = (Rule)jsonRules.get(toWildcards(pointer));
+		}
+		
+		return (rule != null ? rule : fallback);
+	}
+	
+	/**
+	 * Replace every segment that is an array index by *
+	 */
+	private static String toWildcards(String pointer) {
+		StringBuffer buf = new StringBuffer(pointer.length());
+		int start = 0;
+		
+		while(start < pointer.length()) {
+			int end = pointer.indexOf('/', start + 1);
+			boolean index = true;
+			
+			end = (end < 0 ? pointer.length() : end);
+			
+			for(int i=start + 1; i<end; i++) {
+				index &= (pointer.charAt(i) >= '0' && pointer.charAt(i) <= '9');
+			}
+			
+			if(index && end > start + 1) {
+				buf.append("/*");
+			} else {
+				buf.append(pointer, start, end);
+			}
+			
+			start = end;
+		}
+		
+		return buf.toString();
+	}
+	
+	public Rule[] getJsonRequired() {
+		return jsonRequired;
+	}
+	
+	public Map getRules() {
+		return rules;
+	}
+	
+	public Rule[] getRequired() {
+		return required;
+	}
+	
+	public CookieRule getCookieRule(String cookieName) {
+		return (CookieRule)cookieRules.get(cookieName);
+	}
+	
+	public CookieRule[] getCookieRules() {
+		return cookieRuleArray;
+	}
+	
+	public String getUri() {
+		return uri;
+	}
+	
+	/**
+	 * Returns the cookie rules enforced on the URI of this plan. The array
+	 * must not be modified.
+	 */
+	public CookieRule[] getEnforcedCookies() {
+		return enforcedCookies;
+	}
+	
+	/**
+	 * Returns which of the enforced cookies must be present. The array
+	 * must not be modified.
+	 */
+	public boolean[] getRequiredCookies() {
+		return requiredCookies;
+	}
+	
+	/**
+	 * Returns the index of the cookie in getEnforcedCookies(), or -1 if no
+	 * rule for it is enforced on the URI of this plan.
+	 */
+	public int getCookieIndex(String cookieName) {
+		Integer index = (Integer)cookieIndex.get(cookieName);
+		
+		return (index != null ? index.intValue() : -1);
+	}
+}
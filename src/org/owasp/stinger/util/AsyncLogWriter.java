@@ -0,0 +1,248 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+package org.owasp.stinger.util;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.FileHandler;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+/**
+ * Writes log records to a file on a background thread. Request threads
+ * only put the record into a RingBuffer; the writer thread publishes
+ * records to the FileHandler in batches and flushes once enough records
+ * were written or enough time went by.
+ *
+ * There is one writer per log file, shared by every Log action that
+ * names the file, so each file is opened exactly once.
+ */
+public class AsyncLogWriter implements Runnable {
+	
+	/** Drop records when the buffer is full **/
+	public final static String DROP = "drop";
+	
+	/** Make the request thread wait when the buffer is full **/
+	public final static String BLOCK = "block";
+	
+	public final static int DEFAULT_CAPACITY = 8192;
+	
+	public final static int DEFAULT_FLUSH_SIZE = 256;
+	
+	public final static long DEFAULT_FLUSH_INTERVAL = 1000;
+	
+	/** How long the writer sleeps when there is nothing to write **/
+	private final static long IDLE_NANOS = 10L * 1000 * 1000;
+	
+	/** How long a blocked request thread waits before trying again **/
+	private final static long BLOCK_NANOS = 100L * 1000;
+	
+	private static ConcurrentHashMap writers = new ConcurrentHashMap();
+	
+	private final String file;
+	
+	private final Handler handler;
+	
+	private final RingBuffer buffer;
+	
+	private final boolean block;
+	
+	private final int flushSize;
+	
+	private final long flushInterval;
+	
+	private final AtomicLong enqueued = new AtomicLong();
+	
+	private final AtomicLong dropped = new AtomicLong();
+	
+	private final AtomicLong written = new AtomicLong();
+	
+	private final Thread thread;
+	
+	private volatile boolean running = true;
+	
+	private AsyncLogWriter(String file, Handler handler, int capacity, String policy, int flushSize, long flushInterval) {
+		this.file = file;
+		this.handler = handler;
+		this.buffer = new RingBuffer(capacity > 0 ? capacity : DEFAULT_CAPACITY);
+		this.block = BLOCK.equalsIgnoreCase(policy);
+		this.flushSize = (flushSize > 0 ? flushSize : DEFAULT_FLUSH_SIZE);
+		this.flushInterval = (flushInterval > 0 ? flushInterval : DEFAULT_FLUSH_INTERVAL);
+		
+		thread = new Thread(this, "Stinger-LogWriter " + file);
+		thread.setDaemon(true);
+	}
+	
+	/**
+	 * Returns the writer for the file, opening the file on first use. The
+	 * settings of the first caller for a file are kept.
+	 */
+	public static AsyncLogWriter getWriter(String file, int limit, int count, boolean append, int capacity, String policy, int flushSize, long flushInterval) throws IOException {
+		AsyncLogWriter writer = (AsyncLogWriter)writers.get(file);
+		
+		if(writer == null) {
+			synchronized(writers) {
+				writer = (AsyncLogWriter)writers.get(file);
+				
+				if(writer == null) {
+					writer = new AsyncLogWriter(file, new FileHandler(file, limit, count, append), capacity, policy, flushSize, flushInterval);
+					writer.thread.start();
+					writers.put(file, writer);
+				}
+			}
+		}
+		
+		return writer;
+	}
+	
+	/**
+	 * All open writers, e.g. to report their counters
+	 */
+	public static Collection getWriters() {
+		return Collections.unmodifiableCollection(writers.values());
+	}
+	
+	/**
+	 * Write out what is buffered and close every writer
+	 */
+	public static void closeAll() {
+		synchronized(writers) {
+			Iterator itr = writers.values().iterator();
+			
+			while(itr.hasNext()) {
+				((AsyncLogWriter)itr.next()).close();
+			}
+			
+			writers.clear();
+		}
+	}
+	
+	/**
+	 * Queue the record. Returns false if it was dropped because the buffer
+	 * is full or the writer is closed.
+	 */
+	public boolean write(LogRecord record) {
+		while(running) {
+			if(buffer.offer(record)) {
+				enqueued.incrementAndGet();
+				return true;
+			}
+			
+			if(!block) {
+				break;
+			}
+			
+			LockSupport.parkNanos(BLOCK_NANOS);
+		}
+		
+		dropped.incrementAndGet();
+		
+		return false;
+	}
+	
+	public void run() {
+		long lastFlush = System.currentTimeMillis();
+		int unflushed = 0;
+		
+		while(running) {
+			int batch = drain();
+			long now = System.currentTimeMillis();
+			
+			unflushed += batch;
+			
+			if(unflushed > 0 && (unflushed >= flushSize || now - lastFlush >= flushInterval)) {
+				handler.flush();
+				unflushed = 0;
+				lastFlush = now;
+			}
+			
+			if(batch == 0) {
+				LockSupport.parkNanos(IDLE_NANOS);
+			}
+		}
+	}
+	
+	/**
+	 * Publish up to flushSize records, returns how many were published
+	 */
+	private int drain() {
+		int count = 0;
+		LogRecord record = null;
+		
+		while(count < flushSize && (record = (LogRecord)buffer.poll()) != null) {
+			handler.publish(record);
+			count++;
+		}
+		
+		written.addAndGet(count);
+		
+		return count;
+	}
+	
+	private void close() {
+		running = false;
+		LockSupport.unpark(thread);
+		
+		try {
+			thread.join();
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+		
+		/** The writer thread has stopped, write whatever is left **/
+		while(drain() > 0) {
+		
+		}
+		
+		handler.close();
+	}
+	
+	public String getFile() {
+		return file;
+	}
+	
+	public long getEnqueued() {
+		return enqueued.get();
+	}
+	
+	public long getWritten() {
+		return written.get();
+	}
+	
+	public long getDropped() {
+		return dropped.get();
+	}
+	
+	public int getPending() {
+		return buffer.size();
+	}
+	
+	public int getCapacity() {
+		return buffer.capacity();
+	}
+}
@@ -22,20 +22,218 @@
 
 package org.owasp.stinger.util;
 
+import java.io.IOException;
+
+/**
+ * Encodes untrusted values for one of several output contexts. Every
+ * ASCII char has a precomputed replacement per context, or none if it is
+ * safe as is; chars above ASCII are encoded numerically. The encoder
+ * keeps no state, so it needs no locking.
+ *
+ * HTML - everything but letters and digits becomes &#N;
+ * ATTRIBUTE - everything but letters and digits becomes &#xH;
+ * JAVASCRIPT - everything but letters and digits becomes a hex escape
+ * URL - everything but letters, digits and -._~ is percent encoded as UTF-8
+ */
 public class EntityEncoder {
 	
-	public static synchronized String HTMLEntityEncode(String s) {
-		StringBuffer buf = new StringBuffer();
+	public final static int HTML = 0;
+	
+	public final static int ATTRIBUTE = 1;
+	
+	public final static int JAVASCRIPT = 2;
+	
+	public final static int URL = 3;
+	
+	private final static String[] CONTEXTS = { "html", "attribute", "javascript", "url" };
+	
+	private final static char[] HEX = "0123456789ABCDEF".toCharArray();
+	
+	/** TABLES[context][c] is the replacement of ASCII char c, null if c is safe **/
+	private final static String[][] TABLES = new String[CONTEXTS.length][128];
+	
+	static {
+		for(int c=0; c<128; c++) {
+			boolean alphanumeric = (c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9');
+			
+			if(!alphanumeric) {
+				TABLES[HTML][c] = "&#" + c + ";";
+				TABLES[ATTRIBUTE][c] = "&#x" + Integer.toHexString(c).toUpperCase() + ";";
+				TABLES[JAVASCRIPT][c] = "\\x" + HEX[c >> 4] + HEX[c & 0xF];
+			}
+			
+			if(!alphanumeric && c != '-' && c != '.' && c != '_' && c != '~') {
+				TABLES[URL][c] = "%" + HEX[c >> 4] + HEX[c & 0xF];
+			}
+		}
+	}
+	
+	private EntityEncoder() {
 		
-		for (int i = 0; i < s.length(); i++) {
+	}
+	
+	/**
+	 * Returns the context constant for a name such as "html" or "url",
+	 * ignoring case, or -1
+	 */
+	public static int getContext(String name) {
+		for(int i=0; name != null && i<CONTEXTS.length; i++) {
+			if(CONTEXTS[i].equalsIgnoreCase(name.trim())) {
+				return i;
+			}
+		}
+		
+		return -1;
+	}
+	
+	public static String getContextName(int context) {
+		return CONTEXTS[context];
+	}
+	
+	/**
+	 * Index of the first char of s that needs encoding, or -1
+	 */
+	private static int firstUnsafe(String s, String[] table) {
+		for(int i=0; i<s.length(); i++) {
 			char c = s.charAt(i);
-			if (c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9') {
-				buf.append(c);
-			} else {
-				buf.append("&#" + (int) c + ";");
+			
+			if(c >= 128 || table[c] != null) {
+				return i;
 			}
 		}
 		
+		return -1;
+	}
+	
+	/**
+	 * Returns s encoded for the context. If nothing needs encoding s itself
+	 * is returned.
+	 */
+	public static String encode(String s, int context) {
+		int first = firstUnsafe(s, TABLES[context]);
+		StringBuilder buf = null;
+		
+		if(first < 0) {
+			return s;
+		}
+		
+		buf = new StringBuilder(s.length() + 16);
+		buf.append(s, 0, first);
+		
+		try {
+			encode(s, first, context, buf);
+		} catch (IOException ioe) {
+			/** StringBuilder does not throw **/
+		}
+		
 		return buf.toString();
 	}
+	
+	public static void encode(String s, int context, StringBuilder out) {
+		try {
+			encode(s, 0, context, out);
+		} catch (IOException ioe) {
+			/** StringBuilder does not throw **/
+		}
+	}
+	
+	public static void encode(String s, int context, Appendable out) throws IOException {
+		encode(s, 0, context, out);
+	}
+	
+	private static void encode(String s, int start, int context, Appendable out) throws IOException {
+		String[] table = TABLES[context];
+		int safe = start;
+		
+		for(int i=start; i<s.length(); i++) {
+			char c = s.charAt(i);
+			
+			if(c < 128 && table[c] == null) {
+				continue;
+			}
+			
+			/** Copy the run of safe chars before c in one go **/
+			out.append(s, safe, i);
+			
+			if(c < 128) {
+				out.append(table[c]);
+			} else {
+				i = encodeNonAscii(s, i, context, out);
+			}
+			
+			safe = i + 1;
+		}
+		
+		out.append(s, safe, s.length());
+	}
+	
+	/**
+	 * Encode the non-ASCII char at i, returns the index of the last char consumed
+	 */
+	private static int encodeNonAscii(String s, int i, int context, Appendable out) throws IOException {
+		char c = s.charAt(i);
+		int codePoint = c;
+		int last = i;
+		
+		if(Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+			codePoint = Character.toCodePoint(c, s.charAt(i + 1));
+		}
+		
+		switch(context) {
+			case HTML:
+				/** Each char on its own, as HTMLEntityEncode always did **/
+				out.append("&#").append(String.valueOf((int)c)).append(';');
+				break;
+			case ATTRIBUTE:
+				out.append("&#x").append(Integer.toHexString(codePoint).toUpperCase()).append(';');
+				last = i + Character.charCount(codePoint) - 1;
+				break;
+			case JAVASCRIPT:
+				out.append("\\u").append(HEX[(c >> 12) & 0xF]).append(HEX[(c >> 8) & 0xF]).append(HEX[(c >> 4) & 0xF]).append(HEX[c & 0xF]);
+				break;
+			case URL:
+				if(Character.isSurrogate(c) && codePoint == c) {
+					/** A lone surrogate has no UTF-8 form **/
+					codePoint = 0xFFFD;
+				}
+				
+				appendUtf8(codePoint, out);
+				last = i + Character.charCount(codePoint) - 1;
+				break;
+		}
+		
+		return last;
+	}
+	
+	private static void appendUtf8(int codePoint, Appendable out) throws IOException {
+		if(codePoint < 0x800) {
+			appendByte(0xC0 | (codePoint >> 6), out);
+			appendByte(0x80 | (codePoint & 0x3F), out);
+		} else if(codePoint < 0x10000) {
+			appendByte(0xE0 | (codePoint >> 12), out);
+			appendByte(0x80 | ((codePoint >> 6) & 0x3F), out);
+			appendByte(0x80 | (codePoint & 0x3F), out);
+		} else {
+			appendByte(0xF0 | (codePoint >> 18), out);
+			appendByte(0x80 | ((codePoint >> 12) & 0x3F), out);
+			appendByte(0x80 | ((codePoint >> 6) & 0x3F), out);
+			appendByte(0x80 | (codePoint & 0x3F), out);
+		}
+	}
+	
+	private static void appendByte(int b, Appendable out) throws IOException {
+		out.append('%').append(HEX[b >> 4]).append(HEX[b & 0xF]);
+	}
+	
+	public static String HTMLEntityEncode(String s) {
+		return encode(s, HTML);
+	}
+	
+	/**
+	 * Append the encoded string to buf, encoding the same chars as
+	 * HTMLEntityEncode(String)
+	 */
+	public static void HTMLEntityEncode(String s, StringBuilder buf) {
+		encode(s, HTML, buf);
+	}
 }
@@ -0,0 +1,206 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+package org.owasp.stinger.util;
+
+/**
+ * A character trie mapping string prefixes to values. Lookups walk the
+ * input once and never allocate. The trie is built up front and must not
+ * be modified once it is shared between threads.
+ *
+ * A trie filled with putSuffix stores its keys reversed and is queried
+ * with matchesSuffix instead.
+ */
+public class PrefixTrie {
+	
+	private Node root = new Node();
+	
+	private int size = 0;
+	
+	private static class Node {
+		
+		private char[] labels = new char[0];
+		
+		private Node[] children = new Node[0];
+		
+		private Object value = null;
+		
+		private boolean terminal = false;
+		
+		/** Shortest input that may match at this node **/
+		private int minLength = Integer.MAX_VALUE;
+		
+		private Node child(char c) {
+			int low = 0;
+			int high = labels.length - 1;
+			
+			while(low <= high) {
+				int mid = (low + high) >>> 1;
+				
+				if(labels[mid] < c) {
+					low = mid + 1;
+				} else if(labels[mid] > c) {
+					high = mid - 1;
+				} else {
+					return children[mid];
+				}
+			}
+			
+			return null;
+		}
+		
+		private Node addChild(char c) {
+			Node node = child(c);
+			
+			if(node == null) {
+				int pos = 0;
+				char[] newLabels = new char[labels.length + 1];
+				Node[] newChildren = new Node[children.length + 1];
+				
+				while(pos < labels.length && labels[pos] < c) {
+					pos++;
+				}
+				
+				System.arraycopy(labels, 0, newLabels, 0, pos);
+				System.arraycopy(children, 0, newChildren, 0, pos);
+				System.arraycopy(labels, pos, newLabels, pos + 1, labels.length - pos);
+				System.arraycopy(children, pos, newChildren, pos + 1, children.length - pos);
+				
+				node = new Node();
+				newLabels[pos] = c;
+				newChildren[pos] = node;
+				labels = newLabels;
+				children = newChildren;
+			}
+			
+			return node;
+		}
+	}
+	
+	/**
+	 * Associate the value with the prefix. An existing value for the same
+	 * prefix is kept, so the first definition wins.
+	 */
+	public void put(String prefix, Object value) {
+		Node node = root;
+		
+		for(int i=0; i<prefix.length(); i++) {
+			node = node.addChild(prefix.charAt(i));
+		}
+		
+		if(!node.terminal) {
+			node.terminal = true;
+			node.value = value;
+			node.minLength = prefix.length();
+			size++;
+		}
+	}
+	
+	/**
+	 * Add a suffix that only matches inputs of at least minLength chars.
+	 */
+	public void putSuffix(String suffix, int minLength) {
+		Node node = root;
+		
+		for(int i=suffix.length() - 1; i>=0; i--) {
+			node = node.addChild(suffix.charAt(i));
+		}
+		
+		if(!node.terminal) {
+			node.terminal = true;
+			size++;
+		}
+		
+		node.minLength = Math.min(node.minLength, Math.max(minLength, suffix.length()));
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Returns the value of the longest prefix of s present in the trie,
+	 * or null if no prefix matches.
+	 */
+	public Object longestPrefix(String s) {
+		Node node = root;
+		Object result = root.value;
+		
+		for(int i=0; i<s.length() && node != null; i++) {
+			node = node.child(s.charAt(i));
+			
+			if(node != null && node.terminal) {
+				result = node.value;
+			}
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * True if any prefix in the trie is a prefix of s.
+	 */
+	public boolean matchesPrefix(String s) {
+		Node node = root;
+		
+		if(root.terminal) {
+			return true;
+		}
+		
+		for(int i=0; i<s.length(); i++) {
+			node = node.child(s.charAt(i));
+			
+			if(node == null) {
+				return false;
+			} else if(node.terminal) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * True if any suffix added with putSuffix is a suffix of s and s is
+	 * long enough for it.
+	 */
+	public boolean matchesSuffix(String s) {
+		Node node = root;
+		int length = s.length();
+		
+		if(root.terminal && length >= root.minLength) {
+			return true;
+		}
+		
+		for(int i=length - 1; i>=0; i--) {
+			node = node.child(s.charAt(i));
+			
+			if(node == null) {
+				return false;
+			} else if(node.terminal && length >= node.minLength) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+}
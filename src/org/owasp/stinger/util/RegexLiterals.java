@@ -0,0 +1,117 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+package org.owasp.stinger.util;
+
+/**
+ * Helpers for recognizing SVDL regular expressions that are really just
+ * literal strings, so they can be matched with hash or trie lookups.
+ */
+public class RegexLiterals {
+	
+	private final static String META = "\\^$.|?*+()[]{}";
+	
+	/** Suffix that turns a literal into a prefix pattern **/
+	public final static String ANY = ".*";
+	
+	private RegexLiterals() {
+	
+	}
+	
+	/**
+	 * Returns the string matched by the regex if it contains no
+	 * metacharacters other than escaped punctuation, otherwise null.
+	 */
+	public static String literal(String regex) {
+		StringBuffer buf = new StringBuffer(regex.length());
+		
+		for(int i=0; i<regex.length(); i++) {
+			char c = regex.charAt(i);
+			
+			if(c == '\\') {
+				/** Escaped punctuation is literal, escaped letters/digits are classes or references **/
+				if(i + 1 >= regex.length() || Character.isLetterOrDigit(regex.charAt(i + 1))) {
+					return null;
+				}
+				
+				buf.append(regex.charAt(++i));
+			} else if(META.indexOf(c) >= 0) {
+				return null;
+			} else {
+				buf.append(c);
+			}
+		}
+		
+		return buf.toString();
+	}
+	
+	/**
+	 * Returns the literal prefix of a regex of the form literal.* or null
+	 * if the regex does not have that shape.
+	 */
+	public static String prefix(String regex) {
+		String prefix = null;
+		
+		if(regex.endsWith(ANY)) {
+			prefix = literal(regex.substring(0, regex.length() - ANY.length()));
+		}
+		
+		return prefix;
+	}
+	
+	/**
+	 * True if the value contains a character that '.' does not match.
+	 * Literal fast paths only reproduce regex semantics for such values
+	 * when this returns false.
+	 */
+	public static boolean hasLineTerminator(String value) {
+		for(int i=0; i<value.length(); i++) {
+			char c = value.charAt(i);
+			
+			if(c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * True if the regex refers back to a capturing group. Such a regex
+	 * cannot be wrapped in another group without changing its meaning.
+	 */
+	public static boolean hasBackReference(String regex) {
+		for(int i=0; i<regex.length() - 1; i++) {
+			if(regex.charAt(i) == '\\') {
+				char c = regex.charAt(i + 1);
+				
+				if((c >= '1' && c <= '9') || c == 'k') {
+					return true;
+				}
+				
+				i++;
+			}
+		}
+		
+		return false;
+	}
+}
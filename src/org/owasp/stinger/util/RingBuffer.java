@@ -0,0 +1,128 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+
+package org.owasp.stinger.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded lock-free queue for many producers and a single consumer.
+ * Every slot carries a sequence number telling producers and the consumer
+ * whose turn it is, so offer() only needs one CAS to claim a slot and
+ * poll() needs none.
+ */
+public class RingBuffer {
+	
+	private final int mask;
+	
+	private final AtomicReferenceArray items;
+	
+	/** Slot i is free for the producer at position p when sequences[i] == p, and full when it is p + 1 **/
+	private final AtomicLongArray sequences;
+	
+	/** Next position to claim by a producer **/
+	private final AtomicLong tail = new AtomicLong();
+	
+	/** Next position to take, only touched by the consumer **/
+	private long head = 0;
+	
+	/**
+	 * @param capacity the capacity, rounded up to a power of two
+	 */
+	public RingBuffer(int capacity) {
+		int size = 1;
+		
+		while(size < capacity) {
+			size <<= 1;
+		}
+		
+		mask = size - 1;
+		items = new AtomicReferenceArray(size);
+		sequences = new AtomicLongArray(size);
+		
+		for(int i=0; i<size; i++) {
+			sequences.set(i, i);
+		}
+	}
+	
+	public int capacity() {
+		return mask + 1;
+	}
+	
+	/**
+	 * Add the item, returns false without waiting if the buffer is full
+	 */
+	public boolean offer(Object item) {
+		while(true) {
+			long position = tail.get();
+			int index = (int)position & mask;
+			long difference = sequences.get(index) - position;
+			
+			if(difference == 0) {
+				if(tail.compareAndSet(position, position + 1)) {
+					items.lazySet(index, item);
+					/** Publish the item to the consumer **/
+					sequences.set(index, position + 1);
+					return true;
+				}
+			} else if(difference < 0) {
+				/** The consumer has not freed this slot yet **/
+				return false;
+			}
+			
+			/** Another producer claimed the position, try the next one **/
+		}
+	}
+	
+	/**
+	 * Take the oldest item or return null if there is none. Must only be
+	 * called from the consumer thread.
+	 */
+	public Object poll() {
+		int index = (int)head & mask;
+		Object item = null;
+		
+		if(sequences.get(index) != head + 1) {
+			return null;
+		}
+		
+		item = items.get(index);
+		items.lazySet(index, null);
+		/** Hand the slot to the producer one lap ahead **/
+		sequences.set(index, head + mask + 1);
+		head++;
+		
+		return item;
+	}
+	
+	/**
+	 * Approximate number of items in the buffer
+	 */
+	public int size() {
+		long size = tail.get() - head;
+		
+		return (int)Math.max(0, Math.min(size, mask + 1));
+	}
+}
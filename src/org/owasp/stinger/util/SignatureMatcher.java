@@ -0,0 +1,203 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+package org.owasp.stinger.util;
+
+import java.util.LinkedList;
+
+/**
+ * An Aho-Corasick automaton over a fixed set of substrings. All
+ * signatures are searched for in a single pass over the input, so a scan
+ * takes time linear in the input however many signatures there are. The
+ * automaton is built by the constructor and never modified afterwards,
+ * so it can be shared between threads.
+ *
+ * With case folding both the signatures and the input are lower cased
+ * char by char before they are compared.
+ */
+public class SignatureMatcher {
+	
+	private final Node root = new Node();
+	
+	private final String[] signatures;
+	
+	private final boolean caseFold;
+	
+	private static class Node {
+		
+		private char[] labels = new char[0];
+		
+		private Node[] children = new Node[0];
+		
+		/** Node of the longest proper suffix that is also in the trie **/
+		private Node fail = null;
+		
+		/** Index of a signature ending here or at a fail node, -1 if none **/
+		private int output = -1;
+		
+		private Node child(char c) {
+			int low = 0;
+			int high = labels.length - 1;
+			
+			while(low <= high) {
+				int mid = (low + high) >>> 1;
+				
+				if(labels[mid] < c) {
+					low = mid + 1;
+				} else if(labels[mid] > c) {
+					high = mid - 1;
+				} else {
+					return children[mid];
+				}
+			}
+			
+			return null;
+		}
+		
+		private Node addChild(char c) {
+			Node node = child(c);
+			
+			if(node == null) {
+				int pos = 0;
+				char[] newLabels = new char[labels.length + 1];
+				Node[] newChildren = new Node[children.length + 1];
+				
+				while(pos < labels.length && labels[pos] < c) {
+					pos++;
+				}
+				
+				System.arraycopy(labels, 0, newLabels, 0, pos);
+				System.arraycopy(children, 0, newChildren, 0, pos);
+				System.arraycopy(labels, pos, newLabels, pos + 1, labels.length - pos);
+				System.arraycopy(children, pos, newChildren, pos + 1, children.length - pos);
+				
+				node = new Node();
+				newLabels[pos] = c;
+				newChildren[pos] = node;
+				labels = newLabels;
+				children = newChildren;
+			}
+			
+			return node;
+		}
+	}
+	
+	/**
+	 * Build the automaton. Empty signatures are ignored, of duplicates the
+	 * first one is reported.
+	 */
+	public SignatureMatcher(String[] signatures, boolean caseFold) {
+		LinkedList queue = new LinkedList();
+		
+		this.signatures = signatures.clone();
+		this.caseFold = caseFold;
+		
+		/** Build the trie **/
+		for(int i=0; i<signatures.length; i++) {
+			Node node = root;
+			
+			if(signatures[i].length() == 0) {
+				continue;
+			}
+			
+			for(int j=0; j<signatures[i].length(); j++) {
+				node = node.addChild(fold(signatures[i].charAt(j)));
+			}
+			
+			if(node.output < 0) {
+				node.output = i;
+			}
+		}
+		
+		/** Link the fail nodes breadth first, so a node's fail node is done before the node **/
+		root.fail = root;
+		
+		for(int i=0; i<root.children.length; i++) {
+			root.children[i].fail = root;
+			queue.add(root.children[i]);
+		}
+		
+		while(!queue.isEmpty()) {
+			Node node = (Node)queue.removeFirst();
+			
+			for(int i=0; i<node.children.length; i++) {
+				Node child = node.children[i];
+				Node fail = node.fail;
+				Node next = null;
+				
+				while((next = fail.child(node.labels[i])) == null && fail != root) {
+					fail = fail.fail;
+				}
+				
+				child.fail = (next != null ? next : root);
+				
+				/** A signature ending at the fail node also ends here **/
+				if(child.output < 0) {
+					child.output = child.fail.output;
+				}
+				
+				queue.add(child);
+			}
+		}
+	}
+	
+	private char fold(char c) {
+		return (caseFold ? Character.toLowerCase(c) : c);
+	}
+	
+	/**
+	 * Returns the index of the first signature found in s, -1 if s
+	 * contains none. The signature that ends first in s wins.
+	 */
+	public int find(String s) {
+		Node node = root;
+		
+		for(int i=0; i<s.length(); i++) {
+			char c = fold(s.charAt(i));
+			Node next = null;
+			
+			while((next = node.child(c)) == null && node != root) {
+				node = node.fail;
+			}
+			
+			node = (next != null ? next : root);
+			
+			if(node.output >= 0) {
+				return node.output;
+			}
+		}
+		
+		return -1;
+	}
+	
+	public String getSignature(int index) {
+		return signatures[index];
+	}
+	
+	public int size() {
+		return signatures.length;
+	}
+	
+	public boolean isCaseFold() {
+		return caseFold;
+	}
+}
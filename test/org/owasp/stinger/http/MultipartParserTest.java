@@ -0,0 +1,133 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+
+package org.owasp.stinger.http;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Checks that MultipartParser reports the same parts however the body is
+ * split across reads, skips the preamble and epilogue, and rejects a body
+ * without its closing boundary.
+ *
+ * Usage: MultipartParserTest
+ */
+public class MultipartParserTest {
+	
+	private final static String BOUNDARY = "bound";
+	
+	/** Part data holds prefixes of the delimiter that must not end the part **/
+	private final static String BODY =
+		"preamble\r\n--boun\r\n" +
+		"--bound\r\n" +
+		"Content-Disposition: form-data; name=\"title\"\r\n" +
+		"\r\n" +
+		"Hello\r\n--boun\r\n--bounx\r\r\n" +
+		"--bound\r\n" +
+		"Content-Disposition: form-data; name=\"upload\"; filename=\"a.txt\"\r\n" +
+		"Content-Type: text/plain\r\n" +
+		"\r\n" +
+		"x\r\n-\r\n--bou\r\n--boun\r\n" +
+		"--bound--\r\n" +
+		"epilogue\r\n--bound\r\n";
+	
+	private final static String PARTS =
+		"[title|null|null|null]Hello\r\n--boun\r\n--bounx\r[end]" +
+		"[upload|a.txt|text/plain|text/plain]x\r\n-\r\n--bou\r\n--boun[end]";
+	
+	/** Records the parts as text **/
+	private static class Recorder implements MultipartHandler {
+		
+		private final StringBuffer parts = new StringBuffer();
+		
+		public void startPart(String name, String filename, String contentType, Map headers) {
+			parts.append("[" + name + "|" + filename + "|" + contentType + "|" + headers.get("content-type") + "]");
+		}
+		
+		public void partData(byte[] b, int off, int len) throws IOException {
+			parts.append(new String(b, off, len, "ISO-8859-1"));
+		}
+		
+		public void endPart() {
+			parts.append("[end]");
+		}
+	}
+	
+	/**
+	 * Parse the body in reads of the given size, returning the parts or the
+	 * error
+	 */
+	private static String parse(String body, int size) throws IOException {
+		byte[] bytes = body.getBytes("ISO-8859-1");
+		Recorder recorder = new Recorder();
+		MultipartParser parser = new MultipartParser(BOUNDARY, recorder);
+		
+		try {
+			for(int off=0; off<bytes.length; off+=size) {
+				parser.update(bytes, off, Math.min(size, bytes.length - off));
+			}
+			
+			parser.finish();
+		} catch (MalformedRequestException mre) {
+			return "MalformedRequestException";
+		}
+		
+		return recorder.parts.toString();
+	}
+	
+	public static void main(String[] args) throws IOException {
+		int failures = 0;
+		int checks = 0;
+		String truncated = BODY.substring(0, BODY.indexOf("--bound--"));
+		
+		for(int size=1; size<=BODY.length(); size++) {
+			String parts = parse(BODY, size);
+			
+			checks++;
+			
+			if(!PARTS.equals(parts)) {
+				failures++;
+				System.out.println("FAILED: reads of " + size + " byte(s) gave \"" + parts + "\"");
+			}
+		}
+		
+		/** Without its closing boundary the last part may be cut short **/
+		for(int size=1; size<=truncated.length(); size++) {
+			String parts = parse(truncated, size);
+			
+			checks++;
+			
+			if(!"MalformedRequestException".equals(parts)) {
+				failures++;
+				System.out.println("FAILED: a body without its closing boundary in reads of " + size + " byte(s) gave \"" + parts + "\"");
+			}
+		}
+		
+		System.out.println(checks + " parse(s) checked, " + failures + " failure(s)");
+		
+		if(failures > 0) {
+			System.exit(1);
+		}
+	}
+}
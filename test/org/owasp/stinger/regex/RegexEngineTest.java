@@ -0,0 +1,294 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+package org.owasp.stinger.regex;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * Differential test of the matching engines: every regex is compiled
+ * with MatcherFactory and must accept exactly the inputs Pattern.matches
+ * accepts. Runs a fixed list of regexes, then randomly generated ones.
+ * The chars MatcherFactory.acceptedChars finds for the fixed regexes are
+ * checked one by one as well. Inputs include surrogate pairs and lone
+ * surrogates, and a long value must be matched by the DFA alone.
+ *
+ * Usage: RegexEngineTest [seed] [regexes]
+ */
+public class RegexEngineTest {
+	
+	private final static String[] REGEXES = {
+		"^[A-F0-9]{32}$",
+		"^[a-zA-Z0-9\\s.\\-]+$",
+		"^(zero|one|two|three|four|five|six|seven|eight|nine)$",
+		"^[\\w-]+(?:\\.[\\w-]+)*@(?:[\\w-]+\\.)+[a-zA-Z]{2,7}$",
+		"^(?:[a-z0-9-]{1,63}\\.)+[a-z]{2,6}$",
+		"(?:(?:(\\w{2,}){2,})+){1,3}",
+		"(^(?:^|.){2,}$)",
+		"((?:(^|\\.)){1,3}){2}",
+		"(?:a|)*b?",
+		"(a*)*$",
+		"^$",
+		"a$",
+		"[^.]{0,3}\\.?",
+		".*",
+		"^.{1,3}$",
+		"^[^@]{2}$",
+		"^\\W+$",
+		"^[\\u0000-\\uffff]*$",
+		"^[^\\u0000-\\uffff]$",
+	};
+	
+	private final static String[] INPUTS = {
+		"", "_", ".", "a", "ab", "a.b", "www.example.com", "x@y.org", "0123456789ABCDEF0123456789ABCDEF", "one", "a\n", "\n", "abab ba",
+		"\ud83d\ude00", "a\ud83d\ude00", "\ud83d\ude00\ud83d\ude00", "x@y.org\ud83d\ude00", "\ud83d", "\ude00", "\ude00\ud83d", "a\ud83d.",
+	};
+	
+	/** Chars of the random inputs, kept small so matches are frequent. The surrogates form pairs or stay alone **/
+	private final static String ALPHABET = "ab._\n\ud83d\ude00";
+	
+	/** The email rule of the template, with a long value ending in a surrogate pair **/
+	private final static String EMAIL = "^[\\w-]+(?:\\.[\\w-]+)*@(?:[\\w-]+\\.)+[a-zA-Z]{2,7}$";
+	
+	private Random random = null;
+	
+	private int checked = 0;
+	
+	private int failures = 0;
+	
+	public static void main(String[] args) {
+		RegexEngineTest test = new RegexEngineTest(args.length > 0 ? Long.parseLong(args[0]) : 1);
+		int count = (args.length > 1 ? Integer.parseInt(args[1]) : 2000);
+		
+		for(int i=0; i<REGEXES.length; i++) {
+			for(int j=0; j<INPUTS.length; j++) {
+				test.check(REGEXES[i], INPUTS[j]);
+			}
+			
+			test.checkAcceptedChars(REGEXES[i]);
+		}
+		
+		test.checkLong();
+		
+		for(int i=0; i<count; i++) {
+			test.checkRandom();
+		}
+		
+		System.out.println(test.checked + " regex(es) checked, " + test.failures + " failure(s)");
+		
+		if(test.failures > 0) {
+			System.exit(1);
+		}
+	}
+	
+	private RegexEngineTest(long seed) {
+		random = new Random(seed);
+	}
+	
+	private void checkRandom() {
+		String regex = alternate(0);
+		
+		try {
+			Pattern.compile(regex);
+		} catch (Exception e) {
+			return;
+		}
+		
+		for(int i=0; i<10; i++) {
+			StringBuffer input = new StringBuffer();
+			int length = random.nextInt(6);
+			
+			for(int j=0; j<length; j++) {
+				input.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+			}
+			
+			if(!check(regex, input.toString())) {
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Compare both engines on one input, returns false on a failure
+	 */
+	private boolean check(String regex, String input) {
+		ValueMatcher matcher = null;
+		boolean expected = Pattern.matches(regex, input);
+		
+		checked++;
+		
+		try {
+			matcher = MatcherFactory.compile(regex);
+		} catch (RuntimeException re) {
+			fail(regex + " does not compile: " + re);
+			return false;
+		}
+		
+		if(matcher.matches(input) != expected) {
+			fail(regex + " on \"" + escape(input) + "\": " + matcher.getEngine() + " says " + !expected + ", java.util.regex says " + expected);
+			return false;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * java.util.regex overflows its stack on this value, the DFA must
+	 * reject it without falling back
+	 */
+	private void checkLong() {
+		StringBuffer value = new StringBuffer("a@");
+		ValueMatcher matcher = MatcherFactory.compile(EMAIL);
+		
+		for(int i=0; i<16000; i++) {
+			value.append("a.");
+		}
+		
+		value.append("\ud83d\ude00");
+		checked++;
+		
+		if(!DfaMatcher.ENGINE.equals(matcher.getEngine())) {
+			fail(EMAIL + " is matched by " + matcher.getEngine());
+			return;
+		}
+		
+		try {
+			if(matcher.matches(value.toString())) {
+				fail(EMAIL + " accepts a value ending in a surrogate pair");
+			}
+		} catch (StackOverflowError soe) {
+			fail(EMAIL + " overflows the stack on a " + value.length() + " char value");
+		}
+	}
+	
+	private void checkAcceptedChars(String regex) {
+		Pattern pattern = Pattern.compile(regex);
+		long[] bits = MatcherFactory.acceptedChars(pattern);
+		
+		for(int c=Character.MIN_VALUE; c<=Character.MAX_VALUE; c++) {
+			boolean expected = pattern.matcher(String.valueOf((char)c)).matches();
+			
+			if(((bits[c >> 6] & (1L << c)) != 0) != expected) {
+				fail(regex + " accepted chars: char " + c + " should " + (expected ? "" : "not ") + "be accepted");
+				return;
+			}
+		}
+	}
+	
+	private void fail(String message) {
+		failures++;
+		System.out.println("FAILED: " + message);
+	}
+	
+	private static String escape(String s) {
+		StringBuffer buf = new StringBuffer();
+		
+		for(int i=0; i<s.length(); i++) {
+			char c = s.charAt(i);
+			
+			buf.append(c == '\n' ? "\\n" : String.valueOf(c));
+		}
+		
+		return buf.toString();
+	}
+	
+	private String alternate(int depth) {
+		String result = concat(depth);
+		
+		if(random.nextInt(3) == 0) {
+			result += "|" + concat(depth);
+		}
+		
+		return result;
+	}
+	
+	private String concat(int depth) {
+		StringBuffer buf = new StringBuffer();
+		int length = random.nextInt(4);
+		
+		for(int i=0; i<length; i++) {
+			buf.append(repeat(depth));
+		}
+		
+		return buf.toString();
+	}
+	
+	private String repeat(int depth) {
+		String atom = atom(depth);
+		String quantifier = "";
+		int min = random.nextInt(3);
+		
+		switch(random.nextInt(8)) {
+			case 0:
+				quantifier = "*";
+				break;
+			case 1:
+				quantifier = "+";
+				break;
+			case 2:
+				quantifier = "?";
+				break;
+			case 3:
+				quantifier = "{" + min + "}";
+				break;
+			case 4:
+				quantifier = "{" + min + "," + (random.nextBoolean() ? "" : String.valueOf(min + random.nextInt(3))) + "}";
+				break;
+		}
+		
+		if(quantifier.length() > 0 && random.nextInt(4) == 0) {
+			quantifier += "?";
+		}
+		
+		return atom + quantifier;
+	}
+	
+	private String atom(int depth) {
+		/** Deep regexes get no more groups **/
+		switch(random.nextInt(depth > 3 ? 8 : 12)) {
+			case 0:
+				return "a";
+			case 1:
+				return "b";
+			case 2:
+				return ".";
+			case 3:
+				return "[ab]";
+			case 4:
+				return "[^a.]";
+			case 5:
+				return "\\.";
+			case 6:
+				return "^";
+			case 7:
+				return "$";
+			case 8:
+			case 9:
+				return "(" + alternate(depth + 1) + ")";
+			case 10:
+				return "(?:" + alternate(depth + 1) + ")";
+			default:
+				return "(?:" + alternate(depth + 1) + "|)";
+		}
+	}
+}
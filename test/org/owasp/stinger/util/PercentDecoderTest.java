@@ -0,0 +1,66 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+
+package org.owasp.stinger.util;
+
+/**
+ * Checks that PercentDecoder decodes valid escapes as UTF-8 and keeps the
+ * raw text of values with an invalid or truncated escape.
+ *
+ * Usage: PercentDecoderTest
+ */
+public class PercentDecoderTest {
+	
+	private final static String[][] CASES = {
+		{ "/api/%2e%2e%2fetc", "/api/../etc" },
+		{ "/api/%2E%2E%2F", "/api/../" },
+		{ "a+b", "a b" },
+		{ "%E2%82%AC", "\u20ac" },
+		{ "plain", "plain" },
+		{ "", "" },
+		/** Invalid or truncated escapes keep the raw text **/
+		{ "/api/%zz", "/api/%zz" },
+		{ "100%", "100%" },
+		{ "a%2", "a%2" },
+		{ "%2e%2e%2f%g0", "%2e%2e%2f%g0" },
+	};
+	
+	public static void main(String[] args) {
+		int failures = 0;
+		
+		for(int i=0; i<CASES.length; i++) {
+			String decoded = PercentDecoder.decode(CASES[i][0]);
+			
+			if(!CASES[i][1].equals(decoded)) {
+				failures++;
+				System.out.println("FAILED: \"" + CASES[i][0] + "\" decoded to \"" + decoded + "\", expected \"" + CASES[i][1] + "\"");
+			}
+		}
+		
+		System.out.println(CASES.length + " value(s) checked, " + failures + " failure(s)");
+		
+		if(failures > 0) {
+			System.exit(1);
+		}
+	}
+}
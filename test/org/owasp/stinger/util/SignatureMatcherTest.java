@@ -0,0 +1,102 @@
+/**
+ * Stinger is an HTTP Request Validation Engine
+ * Copyright (C) 2006  Aspect Security, Inc.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact us at info@aspectsecurity.com or www.aspectsecurity.com
+ *
+ */
+
+
+package org.owasp.stinger.util;
+
+/**
+ * Checks that SignatureMatcher reports the signature that ends first in
+ * the input, including signatures that are only reached through a fail
+ * link, with and without case folding.
+ *
+ * Usage: SignatureMatcherTest
+ */
+public class SignatureMatcherTest {
+	
+	private final static String[] CLASSIC = { "he", "she", "hers", "his" };
+	
+	private int checked = 0;
+	
+	private int failures = 0;
+	
+	public static void main(String[] args) {
+		SignatureMatcherTest test = new SignatureMatcherTest();
+		
+		/** Overlapping signatures, the one that ends first wins **/
+		test.check(CLASSIC, false, "ushers", "she");
+		test.check(CLASSIC, false, "hers", "he");
+		test.check(CLASSIC, false, "ahishers", "his");
+		test.check(CLASSIC, false, "hi there", "he");
+		test.check(CLASSIC, false, "shh", null);
+		test.check(CLASSIC, false, "", null);
+		
+		/** Case folding applies to the signatures and the input **/
+		test.check(new String[] { "<SCRIPT", "union select" }, true, "a<script>", "<SCRIPT");
+		test.check(new String[] { "<SCRIPT", "union select" }, true, "1 UNION Select 2", "union select");
+		test.check(new String[] { "<SCRIPT", "union select" }, false, "a<script>", null);
+		test.check(new String[] { "<SCRIPT", "union select" }, false, "a<SCRIPT>", "<SCRIPT");
+		
+		/** abc has no output of its own, bc is found through its fail link **/
+		test.check(new String[] { "abcd", "bc" }, false, "abce", "bc");
+		/** After abc the scan has to fall back to bc to find bce **/
+		test.check(new String[] { "abcd", "bce" }, false, "abce", "bce");
+		test.check(new String[] { "aab" }, false, "aaab", "aab");
+		
+		/** Empty signatures are ignored, of duplicates the first one is reported **/
+		test.check(new String[] { "", "x" }, false, "abc", null);
+		test.check(new String[] { "x", "x" }, false, "axb", "x");
+		test.checkIndex(new String[] { "x", "x" }, "axb", 0);
+		
+		System.out.println(test.checked + " scan(s) checked, " + test.failures + " failure(s)");
+		
+		if(test.failures > 0) {
+			System.exit(1);
+		}
+	}
+	
+	private void check(String[] signatures, boolean caseFold, String input, String expected) {
+		SignatureMatcher matcher = new SignatureMatcher(signatures, caseFold);
+		int index = matcher.find(input);
+		String found = (index >= 0 ? matcher.getSignature(index) : null);
+		
+		checked++;
+		
+		if(expected == null ? found != null : !expected.equals(found)) {
+			fail("\"" + input + "\" (case-fold " + caseFold + "): expected " + expected + ", found " + found);
+		}
+	}
+	
+	private void checkIndex(String[] signatures, String input, int expected) {
+		int index = new SignatureMatcher(signatures, false).find(input);
+		
+		checked++;
+		
+		if(index != expected) {
+			fail("\"" + input + "\": expected index " + expected + ", found " + index);
+		}
+	}
+	
+	private void fail(String message) {
+		failures++;
+		System.out.println("FAILED: " + message);
+	}
+}